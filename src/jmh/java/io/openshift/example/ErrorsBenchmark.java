@@ -0,0 +1,38 @@
+package io.openshift.example;
+
+import io.vertx.core.buffer.Buffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the construction of the error payloads built by {@link Errors}, encoded as {@link Errors#error} sends them:
+ * compact by default, indented when the request asks for it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ErrorsBenchmark {
+
+  @Benchmark
+  public int error() {
+    // the string is then written to the connection as UTF-8
+    return Buffer.buffer(Errors.toJson(404, "Item '42' not found", "/api/fruits/42").encode()).length();
+  }
+
+  @Benchmark
+  public int pretty() {
+    return Buffer.buffer(Errors.toJson(404, "Item '42' not found", "/api/fruits/42").encodePrettily()).length();
+  }
+}
@@ -0,0 +1,52 @@
+package io.openshift.example;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the pretty and the compact encoding of list responses.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonEncodingBenchmark {
+
+  @Param({"10", "100", "1000"})
+  public int size;
+
+  private JsonArray items;
+
+  @Setup
+  public void setup() {
+    items = new JsonArray();
+    for (int i = 0; i < size; i++) {
+      items.add(new JsonObject().put("id", (long) i).put("name", "fruit-" + i).put("stock", i));
+    }
+  }
+
+  @Benchmark
+  public String encodePrettily() {
+    return items.encodePrettily();
+  }
+
+  @Benchmark
+  public String encode() {
+    return items.encode();
+  }
+}
@@ -0,0 +1,101 @@
+package io.openshift.example;
+
+import io.netty.buffer.ByteBuf;
+import io.openshift.example.service.impl.JdbcProductStore;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the building of the compact JSON bodies, from the rows returned by the database to the bytes handed to the
+ * connection.
+ * <p>
+ * Both variants first map each row to an item, as the JDBC store does. {@code tree} then copies the items into a
+ * {@link JsonArray}, encodes it as a string, then as bytes, as the responses used to. {@code direct} writes the items
+ * into a pooled buffer with {@link Json#write(ByteBuf, JsonObject)}, then releases it, as done once written to the
+ * connection. The {@code One} variants read a single item, and compute its entity tag. Run with {@code -prof gc} to
+ * get the bytes allocated per request ({@code gc.alloc.rate.norm}).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResponseBodyBenchmark {
+
+  @Param({"100", "1000"})
+  public int items;
+
+  /**
+   * The rows as returned by the JDBC row stream.
+   */
+  private final List<JsonArray> rows = new ArrayList<>();
+
+  @Setup
+  public void setup() {
+    for (int i = 0; i < items; i++) {
+      rows.add(new JsonArray()
+        .add((long) i + 1)
+        .add("fruit-" + i)
+        .add((long) i * 37 % 1000)
+        .add((long) i % 5));
+    }
+  }
+
+  @Benchmark
+  public int tree() {
+    JsonArray array = new JsonArray();
+    for (JsonArray row : rows) {
+      array.add(JdbcProductStore.toJson(row));
+    }
+    return Buffer.buffer(array.encode()).length();
+  }
+
+  @Benchmark
+  public int direct() {
+    ByteBuf body = Json.allocate();
+    body.writeByte('[');
+    for (int i = 0; i < rows.size(); i++) {
+      if (i > 0) {
+        body.writeByte(',');
+      }
+      Json.write(body, JdbcProductStore.toJson(rows.get(i)));
+    }
+    body.writeByte(']');
+    int length = body.readableBytes();
+    body.release();
+    return length;
+  }
+
+  @Benchmark
+  public int treeOne() {
+    JsonObject item = JdbcProductStore.toJson(rows.get(0));
+    return ETags.of(item.getLong("version")).length() + Buffer.buffer(item.encode()).length();
+  }
+
+  @Benchmark
+  public int directOne() {
+    JsonObject item = JdbcProductStore.toJson(rows.get(0));
+    ByteBuf body = Json.allocate();
+    Json.write(body, item);
+    int length = ETags.of(item.getLong("version")).length() + body.readableBytes();
+    body.release();
+    return length;
+  }
+}
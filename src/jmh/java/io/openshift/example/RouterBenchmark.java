@@ -0,0 +1,78 @@
+package io.openshift.example;
+
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.rxjava.core.Vertx;
+import io.vertx.rxjava.core.http.HttpClient;
+import io.vertx.rxjava.core.http.HttpServer;
+import io.vertx.rxjava.ext.web.Router;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a request going through the router and the validation of the {@code :id} parameter, over a local
+ * keep-alive connection. The store is left out: the route ends right after the validation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RouterBenchmark {
+
+  private Vertx vertx;
+
+  private HttpClient client;
+
+  @Setup
+  public void setup() {
+    vertx = Vertx.vertx();
+    Router router = Router.router(vertx);
+    router.route("/api/fruits/:id").handler(CrudApplication::validateId);
+    router.get("/api/fruits/:id").handler(ctx -> ctx.response().end(String.valueOf(ctx.<Long>get("fruitId"))));
+    HttpServer server = vertx.createHttpServer()
+      .requestHandler(router)
+      .rxListen(0)
+      .toBlocking()
+      .value();
+    client = vertx.createHttpClient(new HttpClientOptions()
+      .setDefaultPort(server.actualPort())
+      .setKeepAlive(true)
+      .setMaxPoolSize(1));
+  }
+
+  @TearDown
+  public void tearDown() {
+    vertx.close();
+  }
+
+  @Benchmark
+  public int validId() {
+    return send("/api/fruits/42");
+  }
+
+  @Benchmark
+  public int invalidId() {
+    return send("/api/fruits/apple");
+  }
+
+  private int send(String uri) {
+    CompletableFuture<Integer> status = new CompletableFuture<>();
+    client.get(uri, response -> response.bodyHandler(body -> status.complete(response.statusCode())))
+      .exceptionHandler(status::completeExceptionally)
+      .end();
+    return status.join();
+  }
+}
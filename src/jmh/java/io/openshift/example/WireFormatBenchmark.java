@@ -0,0 +1,88 @@
+package io.openshift.example;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the encoding of a list of items, as written by {@code GET /api/fruits}, and its decoding by a client, in
+ * JSON and in each {@link BinaryFormat}.
+ * <p>
+ * {@code json} builds a {@link JsonArray} of the items and encodes it, as the JSON responses do. The size of the
+ * payloads is printed at setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WireFormatBenchmark {
+
+  private static final String[] NAMES = {"Apple", "Orange", "Pear", "Cherry", "Strawberry", "Pineapple"};
+
+  @Param({"json", "cbor", "msgpack", "records"})
+  public String format;
+
+  @Param({"1000"})
+  public int items;
+
+  private final List<JsonObject> list = new ArrayList<>();
+
+  private BinaryFormat binary;
+
+  private Buffer encoded;
+
+  @Setup
+  public void setup() {
+    for (int i = 0; i < items; i++) {
+      list.add(new JsonObject()
+        .put("id", (long) i + 1)
+        .put("name", NAMES[i % NAMES.length] + " " + i)
+        .put("stock", (long) (i * 37 % 1000))
+        .put("version", (long) i % 5));
+    }
+    binary = "json".equals(format) ? null : BinaryFormat.valueOf(format.toUpperCase());
+    encoded = encode();
+    System.out.printf("%n%s: %d bytes for %d items%n", format, encoded.length(), items);
+  }
+
+  @Benchmark
+  public Buffer encode() {
+    if (binary == null) {
+      JsonArray array = new JsonArray();
+      list.forEach(array::add);
+      return Buffer.buffer(array.encode());
+    }
+    Buffer buffer = Buffer.buffer();
+    binary.beginList(buffer);
+    for (JsonObject item : list) {
+      binary.writeItem(buffer, item);
+    }
+    binary.endList(buffer, 0, list.size());
+    return buffer;
+  }
+
+  @Benchmark
+  public int decode() {
+    if (binary == null) {
+      return new JsonArray(encoded).size();
+    }
+    return binary.decodeList(encoded).size();
+  }
+}
@@ -0,0 +1,41 @@
+package io.openshift.example.service;
+
+import io.vertx.core.json.JsonObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the validation of the items sent to the create and update endpoints.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ValidationBenchmark {
+
+  private final JsonObject valid = new JsonObject().put("name", "apple").put("stock", 10);
+
+  private final JsonObject invalid = new JsonObject().put("name", "apple").put("stock", -1);
+
+  @Benchmark
+  public Optional<Exception> validItem() {
+    return ProductValidator.validateRequestBody(valid);
+  }
+
+  @Benchmark
+  public Optional<Exception> invalidItem() {
+    return ProductValidator.validateRequestBody(invalid);
+  }
+}
@@ -0,0 +1,117 @@
+package io.openshift.example.service.impl;
+
+import io.vertx.core.json.JsonObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a single read, as made by the JDBC store: getting a connection, preparing the statement, executing it and
+ * releasing the connection.
+ * <p>
+ * {@code unpooled} opens a connection per read, {@code pooled} gets it from the pool configured by
+ * {@link PooledDataSourceProvider}, with or without the cache of prepared statements ({@code statementCacheSize}).
+ * <p>
+ * The reads go to an in-memory H2 database, which already keeps the parsed statements of a connection, so the cache
+ * only pays off against PostgreSQL, where it saves the parsing and the planning on the server. The {@code db.url},
+ * {@code db.user} and {@code db.password} system properties of the forked JVM ({@code -jvmArgsAppend}) select another
+ * database, for instance {@code jdbc:postgresql://localhost:5432/my_data?prepareThreshold=1}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JdbcStatementBenchmark {
+
+  private static final String URL = System.getProperty("db.url",
+    "jdbc:h2:mem:statements;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1");
+
+  private static final String USER = System.getProperty("db.user", "sa");
+
+  private static final String PASSWORD = System.getProperty("db.password", "");
+
+  private static final String SELECT_ONE = "SELECT id, name, stock, version FROM products WHERE id = ?";
+
+  @Param({"0", "32"})
+  public int statementCacheSize;
+
+  private final PooledDataSourceProvider provider = new PooledDataSourceProvider();
+
+  private DataSource pool;
+
+  private Connection keepAlive;
+
+  private long id;
+
+  @Setup
+  public void setup() throws SQLException {
+    keepAlive = DriverManager.getConnection(URL, USER, PASSWORD);
+    try (Statement statement = keepAlive.createStatement()) {
+      statement.execute("CREATE TABLE IF NOT EXISTS products (id SERIAL PRIMARY KEY, name VARCHAR(40) NOT NULL,"
+        + " stock BIGINT, version BIGINT NOT NULL DEFAULT 0)");
+      statement.execute("INSERT INTO products (name, stock) VALUES ('Apple', 10)");
+      try (ResultSet rs = statement.executeQuery("SELECT MAX(id) FROM products")) {
+        rs.next();
+        id = rs.getLong(1);
+      }
+    }
+    pool = provider.getDataSource(new JsonObject()
+      .put("url", URL)
+      .put("driver_class", DriverManager.getDriver(URL).getClass().getName())
+      .put("user", USER)
+      .put("password", PASSWORD)
+      .put("min_pool_size", 1)
+      .put("max_pool_size", 1)
+      .put("statement_cache_size", statementCacheSize));
+  }
+
+  @TearDown
+  public void tearDown() throws SQLException {
+    provider.close(pool);
+    keepAlive.close();
+  }
+
+  @Benchmark
+  public long unpooled() throws SQLException {
+    try (Connection connection = DriverManager.getConnection(URL, USER, PASSWORD)) {
+      return read(connection);
+    }
+  }
+
+  @Benchmark
+  public long pooled() throws SQLException {
+    try (Connection connection = pool.getConnection()) {
+      return read(connection);
+    }
+  }
+
+  private long read(Connection connection) throws SQLException {
+    try (PreparedStatement statement = connection.prepareStatement(SELECT_ONE)) {
+      statement.setLong(1, id);
+      try (ResultSet rs = statement.executeQuery()) {
+        rs.next();
+        return rs.getLong(3);
+      }
+    }
+  }
+}
@@ -0,0 +1,294 @@
+package io.openshift.example;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+import io.vertx.rxjava.core.Vertx;
+import io.vertx.rxjava.ext.web.RoutingContext;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static io.openshift.example.Errors.error;
+
+/**
+ * Rejects the requests the application cannot serve in time, instead of letting them queue for a database connection.
+ * <p>
+ * A request is rejected with a {@code 429} when its client has no token left in its bucket, and with a {@code 503}
+ * when too many requests are in flight, or when the requests already in flight would make it wait longer than the
+ * deadline. The wait is estimated from the number of requests queued beyond the concurrency of the store and the
+ * average duration of the requests. Both responses carry a {@code Retry-After} header.
+ * <p>
+ * Clients are identified by their remote address. Behind proxies, such as the OpenShift router, the number of trusted
+ * proxies must be given: the client is then the address appended to the {@code X-Forwarded-For} header by the
+ * outermost of them, as the addresses before it are sent by the client and can be anything. One instance is shared by
+ * all the verticle instances, see {@link #createShared(Vertx, Options, MeterRegistry)}.
+ */
+public class AdmissionControl {
+
+  private static final String SHARED_MAP = "admission.control";
+
+  /**
+   * Above this number of clients, the buckets of the idle clients are dropped.
+   */
+  private static final int MAX_CLIENTS = 10_000;
+
+  /**
+   * The number of buckets checked for eviction for each new client, above {@link #MAX_CLIENTS}.
+   */
+  private static final int EVICTIONS = 2;
+
+  private final Options options;
+
+  private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+
+  /**
+   * The clients having a bucket, the oldest first, checked in turn for eviction.
+   */
+  private final Queue<String> clients = new ConcurrentLinkedQueue<>();
+
+  private final AtomicInteger inFlight = new AtomicInteger();
+
+  /**
+   * The moving average of the request durations, in nanoseconds.
+   */
+  private final AtomicLong averageDuration = new AtomicLong();
+
+  private final Counter rateLimited;
+
+  private final Counter overloaded;
+
+  public AdmissionControl(Options options, MeterRegistry registry) {
+    this.options = options;
+    this.rateLimited = counter(registry, "rate_limited");
+    this.overloaded = counter(registry, "overloaded");
+  }
+
+  /**
+   * Gets the admission control shared by the verticle instances of the given Vert.x instance, creating it if needed.
+   */
+  public static AdmissionControl createShared(Vertx vertx, Options options, MeterRegistry registry) {
+    LocalMap<String, Holder> map = vertx.getDelegate().sharedData().getLocalMap(SHARED_MAP);
+    synchronized (AdmissionControl.class) {
+      Holder holder = map.get(SHARED_MAP);
+      if (holder == null) {
+        holder = new Holder(new AdmissionControl(options, registry));
+        map.put(SHARED_MAP, holder);
+      }
+      return holder.control;
+    }
+  }
+
+  private static Counter counter(MeterRegistry registry, String reason) {
+    return Counter.builder("http.server.rejected")
+      .description("Requests rejected by the admission control")
+      .tag("reason", reason)
+      .register(registry);
+  }
+
+  /**
+   * The handler to declare in front of the routes to protect.
+   */
+  public void admit(RoutingContext ctx) {
+    if (options.rate > 0) {
+      long wait = bucket(client(ctx)).acquire(System.nanoTime());
+      if (wait > 0) {
+        rateLimited.increment();
+        reject(ctx, 429, wait, "too many requests");
+        return;
+      }
+    }
+
+    int current = inFlight.incrementAndGet();
+    long queueWait = (current - options.concurrency) * averageDuration.get() / options.concurrency;
+    if (current > options.maxInFlight || queueWait > options.deadline) {
+      inFlight.decrementAndGet();
+      overloaded.increment();
+      reject(ctx, 503, Math.max(queueWait, 0), "the service is overloaded");
+      return;
+    }
+
+    long start = System.nanoTime();
+    // called when the response ends or the connection is closed
+    ctx.addEndHandler(ar -> {
+      inFlight.decrementAndGet();
+      record(System.nanoTime() - start);
+    });
+    ctx.next();
+  }
+
+  private void record(long duration) {
+    long average;
+    long next;
+    do {
+      average = averageDuration.get();
+      next = average == 0 ? duration : average + (duration - average) / 16;
+    } while (!averageDuration.compareAndSet(average, next));
+  }
+
+  private static void reject(RoutingContext ctx, int status, long wait, String cause) {
+    ctx.response().putHeader("Retry-After", String.valueOf(Math.max(1, TimeUnit.NANOSECONDS.toSeconds(wait) + 1)));
+    error(ctx, status, cause);
+  }
+
+  private String client(RoutingContext ctx) {
+    String forwarded = options.trustedProxies > 0 ? ctx.request().getHeader("X-Forwarded-For") : null;
+    if (forwarded == null) {
+      return ctx.request().remoteAddress().host();
+    }
+    // each trusted proxy appended the address it received the request from
+    String[] hops = forwarded.split(",");
+    return hops[Math.max(0, hops.length - options.trustedProxies)].trim();
+  }
+
+  private Bucket bucket(String client) {
+    Bucket bucket = buckets.get(client);
+    if (bucket == null) {
+      if (buckets.size() >= MAX_CLIENTS) {
+        evict(System.nanoTime());
+      }
+      bucket = buckets.computeIfAbsent(client, c -> {
+        clients.add(c);
+        return new Bucket(options.rate, options.burst);
+      });
+    }
+    return bucket;
+  }
+
+  /**
+   * Drops the buckets of the oldest clients when they are idle, checking a few of them only so the request does not
+   * wait for a scan of all the clients.
+   */
+  private void evict(long now) {
+    for (int i = 0; i < EVICTIONS; i++) {
+      String oldest = clients.poll();
+      if (oldest == null) {
+        return;
+      }
+      Bucket bucket = buckets.get(oldest);
+      if (bucket != null && bucket.isFull(now)) {
+        buckets.remove(oldest, bucket);
+      } else if (bucket != null) {
+        clients.add(oldest);
+      }
+    }
+  }
+
+  /**
+   * A token bucket, refilled lazily when a token is requested.
+   */
+  private static final class Bucket {
+
+    private final double rate;
+
+    private final double capacity;
+
+    private double tokens;
+
+    private long refilled = System.nanoTime();
+
+    private Bucket(double rate, double capacity) {
+      this.rate = rate;
+      this.capacity = capacity;
+      this.tokens = capacity;
+    }
+
+    /**
+     * @return {@code 0} when a token was taken, otherwise the time, in nanoseconds, until the next token
+     */
+    private synchronized long acquire(long now) {
+      refill(now);
+      if (tokens >= 1) {
+        tokens--;
+        return 0;
+      }
+      return (long) ((1 - tokens) / rate * TimeUnit.SECONDS.toNanos(1));
+    }
+
+    private synchronized boolean isFull(long now) {
+      refill(now);
+      return tokens >= capacity;
+    }
+
+    private void refill(long now) {
+      tokens = Math.min(capacity, tokens + (now - refilled) * rate / TimeUnit.SECONDS.toNanos(1));
+      refilled = now;
+    }
+  }
+
+  /**
+   * The limits of the admission control.
+   */
+  public static class Options {
+
+    private double rate;
+
+    private double burst;
+
+    private int concurrency = 15;
+
+    private int maxInFlight = 60;
+
+    private long deadline = TimeUnit.MILLISECONDS.toNanos(500);
+
+    private int trustedProxies;
+
+    /**
+     * @param rate  the number of requests per second allowed for each client, {@code 0} to not limit the clients
+     * @param burst the number of requests a client can send at once
+     */
+    public Options setRate(double rate, double burst) {
+      this.rate = rate;
+      this.burst = burst;
+      return this;
+    }
+
+    /**
+     * @param concurrency the number of requests the store serves at the same time, usually the size of its pool
+     */
+    public Options setConcurrency(int concurrency) {
+      this.concurrency = concurrency;
+      return this;
+    }
+
+    /**
+     * @param maxInFlight the maximum number of requests being served or waiting
+     */
+    public Options setMaxInFlight(int maxInFlight) {
+      this.maxInFlight = maxInFlight;
+      return this;
+    }
+
+    /**
+     * @param deadline the maximum time, in milliseconds, a request should wait before being served
+     */
+    public Options setDeadline(long deadline) {
+      this.deadline = TimeUnit.MILLISECONDS.toNanos(deadline);
+      return this;
+    }
+
+    /**
+     * @param trustedProxies the number of proxies in front of the application appending to the
+     *                       {@code X-Forwarded-For} header, {@code 0} to identify the clients by their remote address
+     */
+    public Options setTrustedProxies(int trustedProxies) {
+      this.trustedProxies = trustedProxies;
+      return this;
+    }
+  }
+
+  private static final class Holder implements Shareable {
+
+    private final AdmissionControl control;
+
+    private Holder(AdmissionControl control) {
+      this.control = control;
+    }
+  }
+}
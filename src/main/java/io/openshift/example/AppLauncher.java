@@ -0,0 +1,25 @@
+package io.openshift.example;
+
+import io.vertx.core.Launcher;
+import io.vertx.core.VertxOptions;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * The launcher of the application, configuring Vert.x before it starts.
+ * <p>
+ * Vert.x uses the native transport (epoll on Linux) when it is on the classpath (see the {@code epoll} profile), unless
+ * {@code NATIVE_TRANSPORT} is {@code false}. The native transport enables the TCP options the JDK does not support,
+ * such as {@code TCP_FASTOPEN} and {@code TCP_QUICKACK}, and saves some system calls and garbage on each read and write.
+ */
+public class AppLauncher extends Launcher {
+
+  public static void main(String[] args) {
+    new AppLauncher().dispatch(args);
+  }
+
+  @Override
+  public void beforeStartingVertx(VertxOptions options) {
+    // only the environment is available before the verticle configuration is read
+    options.setPreferNativeTransport(new Settings(new JsonObject()).getBoolean("NATIVE_TRANSPORT", true));
+  }
+}
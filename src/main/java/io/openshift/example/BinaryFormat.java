@@ -0,0 +1,570 @@
+package io.openshift.example;
+
+import io.netty.buffer.ByteBuf;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.rxjava.core.http.HttpServerResponse;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The binary formats of the items, an alternative to JSON for the clients reading many items, negotiated with the
+ * {@code Accept} header.
+ * <p>
+ * The items are written straight into the buffer of the response, a list being written item by item as they are read
+ * from the store, without building a {@link JsonArray} nor encoding them as JSON first:
+ * <ul>
+ * <li>{@link #CBOR}: a list is an array of indefinite length, each item a map</li>
+ * <li>{@link #MSGPACK}: a list is an array with a 32-bits length, each item a map</li>
+ * <li>{@link #RECORDS}: a list is a sequence of records, with the {@code id}, {@code name} and {@code stock} of an item
+ * only: the {@code id} as a 64-bits integer, the {@code stock} as a 64-bits integer ({@link Long#MIN_VALUE} for no
+ * stock), then the {@code name} as its UTF-8 length on 16 bits followed by its bytes. Integers are big-endian.</li>
+ * </ul>
+ * The decoding methods read what the formats write, for the Java clients and the tests.
+ */
+public enum BinaryFormat {
+
+  CBOR("application/cbor", true) {
+    @Override
+    public void beginList(Buffer buffer) {
+      buffer.appendByte((byte) 0x9f);
+    }
+
+    @Override
+    public void writeItem(Buffer buffer, JsonObject item) {
+      writeCbor(buffer, item);
+    }
+
+    @Override
+    public void endList(Buffer buffer, int start, int count) {
+      buffer.appendByte((byte) 0xff);
+    }
+
+    @Override
+    public List<JsonObject> decodeList(Buffer buffer) {
+      Reader reader = new Reader(buffer);
+      if (reader.next() != 0x9f) {
+        throw new IllegalArgumentException("not a CBOR array of indefinite length");
+      }
+      List<JsonObject> items = new ArrayList<>();
+      while (buffer.getUnsignedByte(reader.position) != 0xff) {
+        items.add((JsonObject) readCbor(reader));
+      }
+      return items;
+    }
+
+    @Override
+    public JsonObject decodeItem(Buffer buffer) {
+      return (JsonObject) readCbor(new Reader(buffer));
+    }
+  },
+
+  MSGPACK("application/msgpack", false) {
+    @Override
+    public void beginList(Buffer buffer) {
+      // array 32, the length is known once the list is written
+      buffer.appendByte((byte) 0xdd).appendInt(0);
+    }
+
+    @Override
+    public void writeItem(Buffer buffer, JsonObject item) {
+      writeMsgpack(buffer, item);
+    }
+
+    @Override
+    public void endList(Buffer buffer, int start, int count) {
+      buffer.setInt(start + 1, count);
+    }
+
+    @Override
+    public List<JsonObject> decodeList(Buffer buffer) {
+      Reader reader = new Reader(buffer);
+      if (reader.next() != 0xdd) {
+        throw new IllegalArgumentException("not a MessagePack array 32");
+      }
+      int count = buffer.getInt(reader.skip(4));
+      List<JsonObject> items = new ArrayList<>(count);
+      for (int i = 0; i < count; i++) {
+        items.add((JsonObject) readMsgpack(reader));
+      }
+      return items;
+    }
+
+    @Override
+    public JsonObject decodeItem(Buffer buffer) {
+      return (JsonObject) readMsgpack(new Reader(buffer));
+    }
+  },
+
+  RECORDS("application/x-fruit-records", true) {
+    @Override
+    public void beginList(Buffer buffer) {
+      // a list is just its records
+    }
+
+    @Override
+    public void writeItem(Buffer buffer, JsonObject item) {
+      Long stock = item.getLong("stock");
+      buffer
+        .appendLong(item.getLong("id"))
+        .appendLong(stock == null ? Long.MIN_VALUE : stock);
+      int start = buffer.length();
+      buffer.appendShort((short) 0).appendString(item.getString("name"));
+      buffer.setUnsignedShort(start, buffer.length() - start - 2);
+    }
+
+    @Override
+    public void endList(Buffer buffer, int start, int count) {
+      // the end of the body ends the list
+    }
+
+    @Override
+    public List<JsonObject> decodeList(Buffer buffer) {
+      Reader reader = new Reader(buffer);
+      List<JsonObject> items = new ArrayList<>();
+      while (reader.position < buffer.length()) {
+        items.add(readRecord(reader));
+      }
+      return items;
+    }
+
+    @Override
+    public JsonObject decodeItem(Buffer buffer) {
+      return readRecord(new Reader(buffer));
+    }
+  };
+
+  private static final int MAX_KEYS = 64;
+
+  private static final Map<String, byte[]> KEYS = new ConcurrentHashMap<>();
+
+  private final String contentType;
+
+  private final boolean streamable;
+
+  BinaryFormat(String contentType, boolean streamable) {
+    this.contentType = contentType;
+    this.streamable = streamable;
+  }
+
+  public String contentType() {
+    return contentType;
+  }
+
+  /**
+   * @return whether a list can be sent before it is complete, a chunk at a time
+   */
+  public boolean streamable() {
+    return streamable;
+  }
+
+  /**
+   * Writes the start of a list.
+   */
+  public abstract void beginList(Buffer buffer);
+
+  public abstract void writeItem(Buffer buffer, JsonObject item);
+
+  /**
+   * Writes the end of a list.
+   *
+   * @param start the position of the list in the buffer
+   * @param count the number of items of the list
+   */
+  public abstract void endList(Buffer buffer, int start, int count);
+
+  public abstract List<JsonObject> decodeList(Buffer buffer);
+
+  public abstract JsonObject decodeItem(Buffer buffer);
+
+  /**
+   * Ends the response with the given pooled body, in this format, see {@link Json#end(HttpServerResponse, ByteBuf,
+   * String)}.
+   */
+  public void end(HttpServerResponse response, ByteBuf body) {
+    Json.end(response, body, contentType);
+  }
+
+  /**
+   * @param accept the value of the {@code Accept} header, may be {@code null}
+   * @return the binary format the client prefers, {@code null} when it prefers JSON, or does not accept any binary
+   * format. The media range with the highest quality wins, then the most specific one, then the first one.
+   */
+  public static BinaryFormat negotiate(String accept) {
+    if (accept == null) {
+      return null;
+    }
+    BinaryFormat preferred = null;
+    double best = 0;
+    boolean specific = false;
+    for (String range : accept.split(",")) {
+      String[] parts = range.split(";");
+      String type = parts[0].trim().toLowerCase(Locale.ROOT);
+      double quality = quality(parts);
+      BinaryFormat format = null;
+      boolean wildcard = "*/*".equals(type) || "application/*".equals(type);
+      if (!wildcard && !"application/json".equals(type)) {
+        format = forContentType(type);
+        if (format == null) {
+          continue;
+        }
+      }
+      if (quality > best || quality == best && quality > 0 && !wildcard && !specific) {
+        preferred = format;
+        best = quality;
+        specific = !wildcard;
+      }
+    }
+    return preferred;
+  }
+
+  private static BinaryFormat forContentType(String type) {
+    for (BinaryFormat format : values()) {
+      if (format.contentType.equals(type)) {
+        return format;
+      }
+    }
+    return null;
+  }
+
+  private static double quality(String[] parameters) {
+    for (int i = 1; i < parameters.length; i++) {
+      String parameter = parameters[i].trim();
+      if (parameter.startsWith("q=")) {
+        try {
+          return Double.parseDouble(parameter.substring(2));
+        } catch (NumberFormatException e) {
+          return 0;
+        }
+      }
+    }
+    return 1;
+  }
+
+  /**
+   * @return the UTF-8 encoding of a field name, kept for the next items
+   */
+  private static byte[] key(String name) {
+    byte[] bytes = KEYS.get(name);
+    if (bytes == null) {
+      bytes = name.getBytes(StandardCharsets.UTF_8);
+      // the items have a few fields, but do not keep the names of unexpected ones forever
+      if (KEYS.size() < MAX_KEYS) {
+        KEYS.put(name, bytes);
+      }
+    }
+    return bytes;
+  }
+
+  // CBOR (RFC 8949)
+
+  private static void writeCbor(Buffer buffer, Object value) {
+    if (value == null) {
+      buffer.appendByte((byte) 0xf6);
+    } else if (value instanceof Boolean) {
+      buffer.appendByte((byte) ((Boolean) value ? 0xf5 : 0xf4));
+    } else if (value instanceof Double || value instanceof Float) {
+      buffer.appendByte((byte) 0xfb).appendDouble(((Number) value).doubleValue());
+    } else if (value instanceof Number) {
+      long n = ((Number) value).longValue();
+      if (n >= 0) {
+        writeCborHeader(buffer, 0, n);
+      } else {
+        writeCborHeader(buffer, 1, -1 - n);
+      }
+    } else if (value instanceof JsonObject) {
+      JsonObject json = (JsonObject) value;
+      writeCborHeader(buffer, 5, json.size());
+      for (Map.Entry<String, Object> entry : json.getMap().entrySet()) {
+        byte[] key = key(entry.getKey());
+        writeCborHeader(buffer, 3, key.length);
+        buffer.appendBytes(key);
+        writeCbor(buffer, entry.getValue());
+      }
+    } else if (value instanceof JsonArray) {
+      JsonArray array = (JsonArray) value;
+      writeCborHeader(buffer, 4, array.size());
+      for (Object element : array) {
+        writeCbor(buffer, element);
+      }
+    } else {
+      byte[] bytes = value.toString().getBytes(StandardCharsets.UTF_8);
+      writeCborHeader(buffer, 3, bytes.length);
+      buffer.appendBytes(bytes);
+    }
+  }
+
+  private static void writeCborHeader(Buffer buffer, int major, long argument) {
+    int type = major << 5;
+    if (argument < 24) {
+      buffer.appendByte((byte) (type | argument));
+    } else if (argument < 0x100) {
+      buffer.appendByte((byte) (type | 24)).appendByte((byte) argument);
+    } else if (argument < 0x10000) {
+      buffer.appendByte((byte) (type | 25)).appendShort((short) argument);
+    } else if (argument < 0x100000000L) {
+      buffer.appendByte((byte) (type | 26)).appendInt((int) argument);
+    } else {
+      buffer.appendByte((byte) (type | 27)).appendLong(argument);
+    }
+  }
+
+  private static Object readCbor(Reader reader) {
+    int initial = reader.next();
+    int major = initial >>> 5;
+    int info = initial & 0x1f;
+    if (major == 7) {
+      switch (info) {
+        case 20:
+          return false;
+        case 21:
+          return true;
+        case 22:
+          return null;
+        case 27:
+          return reader.buffer.getDouble(reader.skip(8));
+        default:
+          throw new IllegalArgumentException("unsupported CBOR simple value " + info);
+      }
+    }
+    long argument;
+    if (info < 24) {
+      argument = info;
+    } else if (info == 24) {
+      argument = reader.next();
+    } else if (info == 25) {
+      argument = reader.buffer.getUnsignedShort(reader.skip(2));
+    } else if (info == 26) {
+      argument = reader.buffer.getUnsignedInt(reader.skip(4));
+    } else if (info == 27) {
+      argument = reader.buffer.getLong(reader.skip(8));
+    } else {
+      throw new IllegalArgumentException("unsupported CBOR length " + info);
+    }
+    switch (major) {
+      case 0:
+        return argument;
+      case 1:
+        return -1 - argument;
+      case 3:
+        return reader.string((int) argument);
+      case 4:
+        JsonArray array = new JsonArray();
+        for (long i = 0; i < argument; i++) {
+          array.add(readCbor(reader));
+        }
+        return array;
+      case 5:
+        JsonObject json = new JsonObject();
+        for (long i = 0; i < argument; i++) {
+          json.put((String) readCbor(reader), readCbor(reader));
+        }
+        return json;
+      default:
+        throw new IllegalArgumentException("unsupported CBOR major type " + major);
+    }
+  }
+
+  // MessagePack
+
+  private static void writeMsgpack(Buffer buffer, Object value) {
+    if (value == null) {
+      buffer.appendByte((byte) 0xc0);
+    } else if (value instanceof Boolean) {
+      buffer.appendByte((byte) ((Boolean) value ? 0xc3 : 0xc2));
+    } else if (value instanceof Double || value instanceof Float) {
+      buffer.appendByte((byte) 0xcb).appendDouble(((Number) value).doubleValue());
+    } else if (value instanceof Number) {
+      writeMsgpackInteger(buffer, ((Number) value).longValue());
+    } else if (value instanceof JsonObject) {
+      JsonObject json = (JsonObject) value;
+      writeMsgpackHeader(buffer, json.size(), 0x80, 16, 0xde);
+      for (Map.Entry<String, Object> entry : json.getMap().entrySet()) {
+        writeMsgpackString(buffer, key(entry.getKey()));
+        writeMsgpack(buffer, entry.getValue());
+      }
+    } else if (value instanceof JsonArray) {
+      JsonArray array = (JsonArray) value;
+      writeMsgpackHeader(buffer, array.size(), 0x90, 16, 0xdc);
+      for (Object element : array) {
+        writeMsgpack(buffer, element);
+      }
+    } else {
+      writeMsgpackString(buffer, value.toString().getBytes(StandardCharsets.UTF_8));
+    }
+  }
+
+  private static void writeMsgpackString(Buffer buffer, byte[] bytes) {
+    if (bytes.length < 32) {
+      buffer.appendByte((byte) (0xa0 | bytes.length));
+    } else if (bytes.length < 0x100) {
+      buffer.appendByte((byte) 0xd9).appendByte((byte) bytes.length);
+    } else {
+      writeMsgpackHeader(buffer, bytes.length, 0, 0, 0xda);
+    }
+    buffer.appendBytes(bytes);
+  }
+
+  /**
+   * Writes the header of a map, an array or a string: the fix variant below {@code fixLimit}, then the 16-bits
+   * ({@code type16}) and 32-bits ({@code type16 + 1}) variants.
+   */
+  private static void writeMsgpackHeader(Buffer buffer, int size, int fix, int fixLimit, int type16) {
+    if (size < fixLimit) {
+      buffer.appendByte((byte) (fix | size));
+    } else if (size < 0x10000) {
+      buffer.appendByte((byte) type16).appendShort((short) size);
+    } else {
+      buffer.appendByte((byte) (type16 + 1)).appendInt(size);
+    }
+  }
+
+  private static void writeMsgpackInteger(Buffer buffer, long n) {
+    if (n >= 0) {
+      if (n < 0x80) {
+        buffer.appendByte((byte) n);
+      } else if (n < 0x100) {
+        buffer.appendByte((byte) 0xcc).appendByte((byte) n);
+      } else if (n < 0x10000) {
+        buffer.appendByte((byte) 0xcd).appendShort((short) n);
+      } else if (n < 0x100000000L) {
+        buffer.appendByte((byte) 0xce).appendInt((int) n);
+      } else {
+        buffer.appendByte((byte) 0xcf).appendLong(n);
+      }
+    } else if (n >= -32) {
+      buffer.appendByte((byte) n);
+    } else if (n >= Byte.MIN_VALUE) {
+      buffer.appendByte((byte) 0xd0).appendByte((byte) n);
+    } else if (n >= Short.MIN_VALUE) {
+      buffer.appendByte((byte) 0xd1).appendShort((short) n);
+    } else if (n >= Integer.MIN_VALUE) {
+      buffer.appendByte((byte) 0xd2).appendInt((int) n);
+    } else {
+      buffer.appendByte((byte) 0xd3).appendLong(n);
+    }
+  }
+
+  private static Object readMsgpack(Reader reader) {
+    int type = reader.next();
+    Buffer buffer = reader.buffer;
+    if (type < 0x80) {
+      return (long) type;
+    } else if (type < 0x90) {
+      return readMsgpackMap(reader, type & 0x0f);
+    } else if (type < 0xa0) {
+      return readMsgpackArray(reader, type & 0x0f);
+    } else if (type < 0xc0) {
+      return reader.string(type & 0x1f);
+    } else if (type >= 0xe0) {
+      return (long) (byte) type;
+    }
+    switch (type) {
+      case 0xc0:
+        return null;
+      case 0xc2:
+        return false;
+      case 0xc3:
+        return true;
+      case 0xcb:
+        return buffer.getDouble(reader.skip(8));
+      case 0xcc:
+        return (long) reader.next();
+      case 0xcd:
+        return (long) buffer.getUnsignedShort(reader.skip(2));
+      case 0xce:
+        return buffer.getUnsignedInt(reader.skip(4));
+      case 0xcf:
+      case 0xd3:
+        return buffer.getLong(reader.skip(8));
+      case 0xd0:
+        return (long) buffer.getByte(reader.skip(1));
+      case 0xd1:
+        return (long) buffer.getShort(reader.skip(2));
+      case 0xd2:
+        return (long) buffer.getInt(reader.skip(4));
+      case 0xd9:
+        return reader.string(reader.next());
+      case 0xda:
+        return reader.string(buffer.getUnsignedShort(reader.skip(2)));
+      case 0xdb:
+        return reader.string(buffer.getInt(reader.skip(4)));
+      case 0xdc:
+        return readMsgpackArray(reader, buffer.getUnsignedShort(reader.skip(2)));
+      case 0xdd:
+        return readMsgpackArray(reader, buffer.getInt(reader.skip(4)));
+      case 0xde:
+        return readMsgpackMap(reader, buffer.getUnsignedShort(reader.skip(2)));
+      case 0xdf:
+        return readMsgpackMap(reader, buffer.getInt(reader.skip(4)));
+      default:
+        throw new IllegalArgumentException("unsupported MessagePack type 0x" + Integer.toHexString(type));
+    }
+  }
+
+  private static JsonObject readMsgpackMap(Reader reader, int size) {
+    JsonObject json = new JsonObject();
+    for (int i = 0; i < size; i++) {
+      json.put((String) readMsgpack(reader), readMsgpack(reader));
+    }
+    return json;
+  }
+
+  private static JsonArray readMsgpackArray(Reader reader, int size) {
+    JsonArray array = new JsonArray();
+    for (int i = 0; i < size; i++) {
+      array.add(readMsgpack(reader));
+    }
+    return array;
+  }
+
+  // records
+
+  private static JsonObject readRecord(Reader reader) {
+    Buffer buffer = reader.buffer;
+    long id = buffer.getLong(reader.skip(8));
+    long stock = buffer.getLong(reader.skip(8));
+    String name = reader.string(buffer.getUnsignedShort(reader.skip(2)));
+    return new JsonObject()
+      .put("id", id)
+      .put("name", name)
+      .put("stock", stock == Long.MIN_VALUE ? null : stock);
+  }
+
+  /**
+   * The position of the decoding in a buffer.
+   */
+  private static class Reader {
+
+    private final Buffer buffer;
+
+    private int position;
+
+    Reader(Buffer buffer) {
+      this.buffer = buffer;
+    }
+
+    int next() {
+      return buffer.getUnsignedByte(position++);
+    }
+
+    /**
+     * @return the current position, before skipping the given number of bytes
+     */
+    int skip(int length) {
+      int current = position;
+      position += length;
+      return current;
+    }
+
+    String string(int length) {
+      return new String(buffer.getBytes(skip(length), position), StandardCharsets.UTF_8);
+    }
+  }
+}
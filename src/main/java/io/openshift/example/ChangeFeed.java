@@ -0,0 +1,133 @@
+package io.openshift.example;
+
+import io.openshift.example.service.impl.ChangeLog;
+import io.vertx.core.Handler;
+import io.vertx.core.json.JsonObject;
+import io.vertx.rxjava.core.Vertx;
+import io.vertx.rxjava.core.eventbus.MessageConsumer;
+import io.vertx.rxjava.core.http.HttpServerResponse;
+import io.vertx.rxjava.core.http.ServerWebSocket;
+import io.vertx.rxjava.ext.web.RoutingContext;
+
+import java.util.List;
+
+/**
+ * Pushes the changes of the {@link ChangeLog} to the clients, as Server-Sent Events or WebSocket messages.
+ * <p>
+ * Each change carries its position. A client reconnecting with the position of the last change it received (the
+ * {@code Last-Event-ID} header of Server-Sent Events, or the {@code since} query parameter) first gets the changes it
+ * missed. When they are not kept anymore, it gets a {@code reset} change and should reload the list. A client not
+ * keeping up is disconnected, and resumes the same way.
+ * <p>
+ * The feed only carries the changes made through this process: with several pods, the changes made through the other
+ * ones are missing, and a client reconnecting to another pod gets a {@code reset}. The clients must still reload the
+ * list from time to time, as the web interface does.
+ */
+public class ChangeFeed {
+
+  public static final String PATH = "/api/fruits/changes";
+
+  private static final long HEARTBEAT_INTERVAL = 15_000;
+
+  private final Vertx vertx;
+
+  private final ChangeLog log;
+
+  public ChangeFeed(Vertx vertx, ChangeLog log) {
+    this.vertx = vertx;
+    this.log = log;
+  }
+
+  /**
+   * Streams the changes as Server-Sent Events.
+   */
+  public void events(RoutingContext ctx) {
+    HttpServerResponse response = ctx.response()
+      .putHeader("Content-Type", "text/event-stream")
+      .putHeader("Cache-Control", "no-cache")
+      // the events must not be held back by the compression
+      .putHeader("Content-Encoding", "identity")
+      .setChunked(true);
+    String since = ctx.request().getHeader("Last-Event-ID");
+    if (since == null) {
+      since = ctx.request().getParam("since");
+    }
+
+    MessageConsumer<JsonObject> consumer = follow(since, change -> {
+      if (response.writeQueueFull()) {
+        response.close();
+        return;
+      }
+      response.write("id: " + change.getString("position") + "\n"
+        + "event: " + change.getString("type") + "\n"
+        + "data: " + change.encode() + "\n\n");
+    });
+    // keep the proxies from closing an idle connection
+    long heartbeat = vertx.setPeriodic(HEARTBEAT_INTERVAL, id -> response.write(":\n\n"));
+    response.closeHandler(v -> {
+      vertx.cancelTimer(heartbeat);
+      consumer.unregister();
+    });
+    response.write(":\n\n");
+  }
+
+  /**
+   * Streams the changes as WebSocket text messages, one JSON object per change.
+   */
+  public void webSocket(ServerWebSocket ws) {
+    if (!PATH.equals(ws.path())) {
+      ws.reject();
+      return;
+    }
+    String since = null;
+    if (ws.query() != null) {
+      for (String param : ws.query().split("&")) {
+        if (param.startsWith("since=")) {
+          since = param.substring("since=".length());
+        }
+      }
+    }
+
+    MessageConsumer<JsonObject> consumer = follow(since, change -> {
+      if (ws.writeQueueFull()) {
+        ws.close();
+        return;
+      }
+      ws.writeTextMessage(change.encode());
+    });
+    ws.closeHandler(v -> consumer.unregister());
+  }
+
+  /**
+   * Sends the changes after the given position, then the new ones, each change once and in order.
+   */
+  private MessageConsumer<JsonObject> follow(String since, Handler<JsonObject> send) {
+    // the consumer is called on this event loop, so it cannot run before the missed changes are sent
+    long[] last = {-1};
+    MessageConsumer<JsonObject> consumer = vertx.eventBus().<JsonObject>localConsumer(ChangeLog.ADDRESS, msg -> {
+      long sequence = log.sequence(msg.body().getString("position"));
+      if (sequence > last[0]) {
+        last[0] = sequence;
+        send.handle(msg.body());
+      }
+    });
+
+    List<JsonObject> missed = since == null ? null : log.since(since);
+    if (missed == null) {
+      String position = log.position();
+      last[0] = log.sequence(position);
+      if (since != null) {
+        send.handle(new JsonObject().put("position", position).put("type", "reset"));
+      }
+    } else {
+      for (JsonObject change : missed) {
+        last[0] = log.sequence(change.getString("position"));
+        send.handle(change);
+      }
+      if (missed.isEmpty()) {
+        last[0] = log.sequence(since);
+      }
+    }
+    return consumer;
+  }
+}
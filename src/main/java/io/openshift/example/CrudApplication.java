@@ -1,74 +1,427 @@
 package io.openshift.example;
 
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.JvmGcMetrics;
+import io.micrometer.core.instrument.binder.jvm.JvmMemoryMetrics;
+import io.micrometer.core.instrument.binder.jvm.JvmThreadMetrics;
+import io.micrometer.core.instrument.binder.system.ProcessorMetrics;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import io.openshift.example.service.ProductQuery;
 import io.openshift.example.service.Store;
+import io.openshift.example.service.VersionMismatchException;
+import io.openshift.example.service.impl.CachingProductStore;
+import io.openshift.example.service.impl.ChangeLog;
+import io.openshift.example.service.impl.CircuitBreaker;
+import io.openshift.example.service.impl.CoalescingProductStore;
+import io.openshift.example.service.impl.GuardedProductStore;
+import io.openshift.example.service.impl.IdGenerator;
+import io.openshift.example.service.impl.InMemoryProductStore;
 import io.openshift.example.service.impl.JdbcProductStore;
+import io.openshift.example.service.impl.MeteredProductStore;
+import io.openshift.example.service.impl.PgProductStore;
+import io.openshift.example.service.impl.PublishingProductStore;
+import io.openshift.example.service.impl.ReplicatedProductStore;
+import io.openshift.example.service.impl.ShardedProductStore;
+import io.openshift.example.service.impl.SingleFlightProductStore;
+import io.prometheus.client.exporter.common.TextFormat;
+import io.netty.buffer.ByteBuf;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.Http2Settings;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServerOptions;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
+import io.vertx.pgclient.PgConnectOptions;
 import io.vertx.rxjava.core.AbstractVerticle;
 import io.vertx.rxjava.core.http.HttpServer;
+import io.vertx.rxjava.core.http.HttpServerRequest;
 import io.vertx.rxjava.core.http.HttpServerResponse;
 import io.vertx.rxjava.ext.jdbc.JDBCClient;
 import io.vertx.rxjava.ext.web.Router;
 import io.vertx.rxjava.ext.web.RoutingContext;
 import io.vertx.rxjava.ext.web.handler.BodyHandler;
 import io.vertx.rxjava.ext.web.handler.StaticHandler;
+import io.vertx.rxjava.pgclient.PgPool;
+import io.vertx.sqlclient.PoolOptions;
+import rx.Completable;
+import rx.Observable;
 import rx.Single;
+import rx.Subscriber;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
 import java.util.NoSuchElementException;
+import java.util.function.BiFunction;
 
 import static io.openshift.example.Errors.error;
 
 public class CrudApplication extends AbstractVerticle {
 
+  private static final int DEFAULT_PAGE_SIZE = 100;
+
+  private static final int MAX_PAGE_SIZE = 1000;
+
+  private static final int MAX_BULK_SIZE = 10000;
+
+  private static final long DEFAULT_READ_TIMEOUT = 2000;
+
+  private static final long DEFAULT_WRITE_TIMEOUT = 5000;
+
+  /**
+   * The query parameters turning a list request into a search.
+   */
+  private static final List<String> FILTERS = Arrays.asList("name", "contains", "minStock", "maxStock", "sort");
+
   private Store store;
 
+  /**
+   * The registry shared by all the verticle instances of the JVM, so {@code /metrics} reports all of them.
+   */
+  private static PrometheusMeterRegistry prometheus;
+
+  private MeterRegistry registry;
+
+  private CachingProductStore cache;
+
+  private CircuitBreaker breaker;
+
+  /**
+   * The in-memory store, if used.
+   */
+  private InMemoryProductStore memory;
+
+  /**
+   * The circuit breakers of the replicas of the database, if any.
+   */
+  private List<CircuitBreaker> replicaBreakers;
+
+  /**
+   * The circuit breakers of the shards of the database, if any.
+   */
+  private List<CircuitBreaker> shardBreakers;
+
+  private ChangeLog changes;
+
+  private Settings settings;
+
   @Override
-  public void start() {
+  public Completable rxStart() {
+    settings = new Settings(config());
+    changes = ChangeLog.createShared(vertx, settings.getInt("CHANGES_CAPACITY", 10000));
+    ChangeFeed feed = new ChangeFeed(vertx, changes);
+
     // Create a router object.
     Router router = Router.router(vertx);
+    RouteMetrics metrics = new RouteMetrics(registry());
+    if (prometheus != null) {
+      // measure every request
+      router.route().handler(metrics::start);
+    }
+    // change feed, as Server-Sent Events (the WebSocket are handled by the server), declared before the admission
+    // control as its connections stay open
+    router.get(ChangeFeed.PATH).handler(metrics.timed(HttpMethod.GET, ChangeFeed.PATH, feed::events));
+    if (settings.getBoolean("ADMISSION_ENABLED", false)) {
+      // reject the requests that cannot be served in time, before reading their bodies
+      AdmissionControl admission = AdmissionControl.createShared(vertx, admissionOptions(), registry);
+      router.route("/api/fruits*").handler(admission::admit);
+    }
     // enable parsing of request bodies
     router.route().handler(BodyHandler.create());
+    // bulk operations, declared before the :id routes
+    router.post("/api/fruits/_bulk").handler(metrics.timed(HttpMethod.POST, "/api/fruits/_bulk", this::bulk));
     // perform validation of the :id parameter
-    router.route("/api/fruits/:id").handler(this::validateId);
+    router.route("/api/fruits/:id").handler(CrudApplication::validateId);
     // implement a basic REST CRUD mapping
-    router.get("/api/fruits").handler(this::retrieveAll);
-    router.post("/api/fruits").handler(this::addOne);
-    router.get("/api/fruits/:id").handler(this::getOne);
-    router.put("/api/fruits/:id").handler(this::updateOne);
-    router.delete("/api/fruits/:id").handler(this::deleteOne);
-
-    // health check
-    router.get("/health").handler(rc -> rc.response().end("OK"));
+    router.get("/api/fruits").handler(metrics.timed(HttpMethod.GET, "/api/fruits", this::retrieveAll));
+    router.post("/api/fruits").handler(metrics.timed(HttpMethod.POST, "/api/fruits", this::addOne));
+    router.get("/api/fruits/:id").handler(metrics.timed(HttpMethod.GET, "/api/fruits/:id", this::getOne));
+    router.put("/api/fruits/:id").handler(metrics.timed(HttpMethod.PUT, "/api/fruits/:id", this::updateOne));
+    router.delete("/api/fruits/:id").handler(metrics.timed(HttpMethod.DELETE, "/api/fruits/:id", this::deleteOne));
+    // atomic stock changes
+    router.route("/api/fruits/:id/stock").handler(CrudApplication::validateId);
+    router.patch("/api/fruits/:id/stock")
+      .handler(metrics.timed(HttpMethod.PATCH, "/api/fruits/:id/stock", this::adjustStock));
+
+    // health checks: the application is alive, and ready unless the store is unavailable
+    router.get("/health/live").handler(rc -> rc.response().end("OK"));
+    router.get("/health").handler(this::health);
+    // metrics, in the Prometheus format
+    router.get("/metrics").handler(this::metrics);
+    // cache statistics
+    router.get("/cache/stats").handler(this::cacheStats);
     // web interface
     router.get().handler(StaticHandler.create());
 
 
-    // Create a JDBC client
-    JDBCClient jdbc = JDBCClient.createShared(vertx, new JsonObject()
-      .put("url", "jdbc:postgresql://" + getEnv("MY_DATABASE_SERVICE_HOST", "localhost") + ":5432/my_data")
-      .put("driver_class", "org.postgresql.Driver")
-      .put("user", getEnv("DB_USERNAME", "user"))
-      .put("password", getEnv("DB_PASSWORD", "password"))
-    );
+    // Get the JDBC client shared by all the verticle instances, the database is initialized by the MainVerticle
+    JDBCClient jdbc = JDBCClient.createShared(vertx, settings.jdbc());
 
-    DBInitHelper.initDatabase(vertx, jdbc)
-      .andThen(initHttpServer(router, jdbc))
-      .subscribe(
-        (http) -> System.out.println("Server ready on port " + http.actualPort()),
-        Throwable::printStackTrace
-      );
+    return initHttpServer(router, feed, jdbc)
+      .doOnSuccess(http -> System.out.println("Server ready on port " + http.actualPort()))
+      .toCompletable();
   }
 
-  private Single<HttpServer> initHttpServer(Router router, JDBCClient client) {
-    store = new JdbcProductStore(client);
+  private Single<HttpServer> initHttpServer(Router router, ChangeFeed feed, JDBCClient client) {
+    store = createStore(client);
+    if (!"memory".equals(settings.get("STORE_TYPE", "jdbc"))) {
+      // below the cache, so the cached items are still served while the database is unavailable
+      breaker = CircuitBreaker.createShared(vertx,
+        settings.getInt("BREAKER_MAX_FAILURES", 5),
+        settings.getLong("BREAKER_RESET_TIMEOUT", 5000));
+      store = new GuardedProductStore(store, breaker, vertx,
+        settings.getLong("STORE_READ_TIMEOUT", DEFAULT_READ_TIMEOUT),
+        settings.getLong("STORE_WRITE_TIMEOUT", DEFAULT_WRITE_TIMEOUT),
+        settings.getLong("STORE_BULK_TIMEOUT", 30_000));
+      if (settings.getBoolean("SINGLE_FLIGHT_ENABLED", true)) {
+        // the concurrent reads of the same data share one query
+        store = new SingleFlightProductStore(store);
+      }
+    }
+    if (settings.getBoolean("CACHE_ENABLED", false)) {
+      cache = new CachingProductStore(store,
+        settings.getInt("CACHE_MAX_SIZE", 1000),
+        settings.getLong("CACHE_TTL", 5000),
+        vertx.eventBus());
+      store = cache;
+    }
+    if (settings.getBoolean("WRITE_BEHIND_ENABLED", false)) {
+      // above the cache, so reads served by the cache see the pending deltas too
+      store = new CoalescingProductStore(store, vertx,
+        settings.getLong("WRITE_BEHIND_WINDOW", 5),
+        settings.getInt("WRITE_BEHIND_MAX_PENDING", 1000));
+    }
+    // above the write-behind store, so only the written changes are published
+    store = new PublishingProductStore(store, changes);
+    store = new MeteredProductStore(store, registry);
     // Create the HTTP server and pass the "accept" method to the request handler.
     return vertx
-      .createHttpServer()
+      .createHttpServer(httpServerOptions())
+      .webSocketHandler(feed::webSocket)
       .requestHandler(router)
-      .rxListen(8080);
+      .rxListen();
+  }
+
+  private HttpServerOptions httpServerOptions() {
+    return new HttpServerOptions()
+      .setPort(settings.getInt("HTTP_PORT", 8080))
+      // responses are compressed when the client accepts gzip or deflate, 1 is the fastest level, 9 the smallest
+      .setCompressionSupported(settings.getBoolean("HTTP_COMPRESSION", true))
+      .setCompressionLevel(settings.getInt("HTTP_COMPRESSION_LEVEL", 6))
+      // the connections idle for this time, in seconds, are closed, 0 to keep them
+      .setIdleTimeout(settings.getInt("HTTP_IDLE_TIMEOUT", 0))
+      .setAcceptBacklog(settings.getInt("HTTP_ACCEPT_BACKLOG", -1))
+      .setTcpNoDelay(settings.getBoolean("TCP_NODELAY", true))
+      // only with the native transport
+      .setTcpFastOpen(settings.getBoolean("TCP_FAST_OPEN", false))
+      .setTcpQuickAck(settings.getBoolean("TCP_QUICK_ACK", false))
+      // h2c, HTTP/2 without TLS by upgrade or with prior knowledge, carries this number of requests at once
+      .setInitialSettings(new Http2Settings()
+        .setMaxConcurrentStreams(settings.getLong("HTTP2_MAX_CONCURRENT_STREAMS", 100)));
+  }
+
+  private Store createStore(JDBCClient client) {
+    String type = settings.get("STORE_TYPE", "jdbc");
+    switch (type) {
+      case "jdbc":
+        int queryTimeout = (int) ((statementTimeout() + 999) / 1000);
+        if (!settings.shards().isEmpty()) {
+          return sharded(queryTimeout);
+        }
+        // each replica has its own data source, with the settings of the primary one
+        return replicated(new JdbcProductStore(client, registry, queryTimeout, postgresql(settings.jdbc())),
+          settings.getList("DB_REPLICA_URLS"),
+          (url, i) -> {
+            JsonObject config = settings.jdbc().put("url", url);
+            return new JdbcProductStore(JDBCClient.createShared(vertx, config, "replica-" + i), registry, queryTimeout,
+              postgresql(config));
+          });
+      case "pg":
+        // Create a reactive PostgreSQL pool, the JDBC client is then only used to initialize the database
+        return replicated(new PgProductStore(pgPool(settings.get("MY_DATABASE_SERVICE_HOST", "localhost"))),
+          settings.getList("DB_REPLICA_HOSTS"),
+          (host, i) -> new PgProductStore(pgPool(host)));
+      case "memory":
+        // already created by the MainVerticle, shared by all the instances
+        memory = InMemoryProductStore.createShared(vertx, settings.get("MEMORY_SNAPSHOT", null));
+        FunctionCounter.builder("store.snapshot.failures", memory, InMemoryProductStore::snapshotFailures)
+          .description("Writes that could not be appended to the snapshot file")
+          .register(registry);
+        return memory;
+      default:
+        throw new IllegalArgumentException("Unknown store type: " + type);
+    }
+  }
+
+  /**
+   * @param replicas the addresses of the replicas of the database
+   * @param factory  creates the store of a replica from its address and its index
+   * @return the store of the primary database, spreading the reads over the replicas, if any
+   */
+  private Store replicated(Store primary, List<String> replicas, BiFunction<String, Integer, Store> factory) {
+    if (replicas.isEmpty()) {
+      return primary;
+    }
+    List<Store> stores = new ArrayList<>();
+    replicaBreakers = new ArrayList<>();
+    for (int i = 0; i < replicas.size(); i++) {
+      stores.add(factory.apply(replicas.get(i), i));
+      replicaBreakers.add(CircuitBreaker.createShared(vertx, "replica-" + i,
+        settings.getInt("BREAKER_MAX_FAILURES", 5),
+        settings.getLong("BREAKER_RESET_TIMEOUT", 5000)));
+    }
+    long window = settings.getLong("REPLICA_WINDOW", 1000);
+    return new ReplicatedProductStore(primary, stores, replicaBreakers,
+      ReplicatedProductStore.Writes.createShared(vertx, window, settings.getLong("REPLICA_LIST_WINDOW", window)));
+  }
+
+  /**
+   * @return the store spreading the items over the databases of the shards, initialized by the MainVerticle
+   */
+  private Store sharded(int queryTimeout) {
+    List<JsonObject> shards = settings.shards();
+    List<Store> stores = new ArrayList<>();
+    shardBreakers = new ArrayList<>();
+    for (int i = 0; i < shards.size(); i++) {
+      // the names are sorted the same way by every shard, and by the merge
+      boolean postgresql = postgresql(shards.get(i));
+      stores.add(new JdbcProductStore(JDBCClient.createShared(vertx, shards.get(i), "shard-" + i), registry,
+        queryTimeout, postgresql, postgresql));
+      shardBreakers.add(CircuitBreaker.createShared(vertx, "shard-" + i,
+        settings.getInt("BREAKER_MAX_FAILURES", 5),
+        settings.getLong("BREAKER_RESET_TIMEOUT", 5000)));
+    }
+    // each node of the application needs its own number
+    return new ShardedProductStore(stores, shardBreakers, IdGenerator.createShared(vertx, settings.nodeId()));
+  }
+
+  private static boolean postgresql(JsonObject jdbc) {
+    return jdbc.getString("url").startsWith("jdbc:postgresql:");
+  }
+
+  private PgPool pgPool(String host) {
+    return PgPool.pool(vertx,
+      new PgConnectOptions()
+        .setHost(host)
+        .setPort(5432)
+        .setDatabase("my_data")
+        .setUser(settings.get("DB_USERNAME", "user"))
+        .setPassword(settings.get("DB_PASSWORD", "password"))
+        .setPipeliningLimit(settings.getInt("DB_PIPELINING_LIMIT", 256))
+        .setCachePreparedStatements(settings.getInt("DB_STATEMENT_CACHE_SIZE", 32) > 0)
+        .setPreparedStatementCacheMaxSize(settings.getInt("DB_STATEMENT_CACHE_SIZE", 32))
+        .addProperty("statement_timeout", String.valueOf(statementTimeout())),
+      new PoolOptions()
+        .setMaxSize(settings.getInt("DB_POOL_SIZE", 4))
+        // the requests waiting for a connection, -1 for no limit
+        .setMaxWaitQueueSize(settings.getInt("DB_MAX_WAIT_QUEUE_SIZE", -1)));
+  }
+
+  private AdmissionControl.Options admissionOptions() {
+    // by default, the requests the store can serve at the same time: the connections of its pool
+    int concurrency;
+    switch (settings.get("STORE_TYPE", "jdbc")) {
+      case "pg":
+        // each verticle instance has its own pool, and the admission control is shared by all of them
+        concurrency = settings.getInt("DB_POOL_SIZE", 4) * settings.instances();
+        break;
+      case "memory":
+        concurrency = Runtime.getRuntime().availableProcessors();
+        break;
+      default:
+        concurrency = settings.jdbc().getInteger("max_pool_size");
+    }
+    concurrency = settings.getInt("ADMISSION_CONCURRENCY", concurrency);
+    int rate = settings.getInt("RATE_LIMIT", 0);
+    return new AdmissionControl.Options()
+      .setRate(rate, settings.getInt("RATE_LIMIT_BURST", 2 * rate))
+      .setConcurrency(concurrency)
+      .setMaxInFlight(settings.getInt("MAX_IN_FLIGHT", 4 * concurrency))
+      .setDeadline(settings.getLong("QUEUE_DEADLINE", 500))
+      .setTrustedProxies(settings.getInt("TRUSTED_PROXIES", 0));
   }
 
-  private void validateId(RoutingContext ctx) {
+  /**
+   * @return the time, in milliseconds, after which the database cancels a statement, as the store does not wait for it
+   * anymore
+   */
+  private long statementTimeout() {
+    return settings.getLong("DB_STATEMENT_TIMEOUT", Math.max(
+      settings.getLong("STORE_READ_TIMEOUT", DEFAULT_READ_TIMEOUT),
+      settings.getLong("STORE_WRITE_TIMEOUT", DEFAULT_WRITE_TIMEOUT)));
+  }
+
+  private void health(RoutingContext ctx) {
+    CircuitBreaker.State state = breaker == null ? CircuitBreaker.State.CLOSED : breaker.state();
+    // the writes acknowledged while the snapshot file fails are lost on a restart
+    boolean snapshotFailing = memory != null && memory.isSnapshotFailing();
+    boolean up = state != CircuitBreaker.State.OPEN && !snapshotFailing;
+    JsonObject health = new JsonObject()
+      .put("status", up ? "UP" : "DOWN")
+      .put("store", state.name().toLowerCase(Locale.ROOT));
+    if (snapshotFailing) {
+      health.put("snapshot", "failing");
+    }
+    if (replicaBreakers != null) {
+      // the reads fail over to the primary, the replicas do not change the status
+      JsonArray replicas = new JsonArray();
+      replicaBreakers.forEach(replica -> replicas.add(replica.state().name().toLowerCase(Locale.ROOT)));
+      health.put("replicas", replicas);
+    }
+    if (shardBreakers != null) {
+      // the other shards still serve their items, and all the nodes share the shards
+      JsonArray shards = new JsonArray();
+      shardBreakers.forEach(shard -> shards.add(shard.state().name().toLowerCase(Locale.ROOT)));
+      health.put("shards", shards);
+    }
+    Json.end(ctx.response().setStatusCode(up ? 200 : 503), Json.encode(ctx, health));
+  }
+
+  /**
+   * @return the Prometheus registry when the metrics are enabled, a registry ignoring everything otherwise
+   */
+  private MeterRegistry registry() {
+    if (settings.getBoolean("METRICS_ENABLED", true)) {
+      synchronized (CrudApplication.class) {
+        if (prometheus == null) {
+          prometheus = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+          new JvmMemoryMetrics().bindTo(prometheus);
+          new JvmGcMetrics().bindTo(prometheus);
+          new JvmThreadMetrics().bindTo(prometheus);
+          new ProcessorMetrics().bindTo(prometheus);
+        }
+        registry = prometheus;
+      }
+    } else {
+      registry = new CompositeMeterRegistry();
+    }
+    return registry;
+  }
+
+  private void metrics(RoutingContext ctx) {
+    if (prometheus == null) {
+      error(ctx, 404, "the metrics are not enabled");
+      return;
+    }
+    ctx.response()
+      .putHeader("Content-Type", TextFormat.CONTENT_TYPE_004)
+      .end(prometheus.scrape());
+  }
+
+  private void cacheStats(RoutingContext ctx) {
+    if (cache == null) {
+      error(ctx, 404, "the cache is not enabled");
+      return;
+    }
+    Json.end(ctx.response(), Json.encode(ctx, cache.stats()));
+  }
+
+  static void validateId(RoutingContext ctx) {
     try {
       ctx.put("fruitId", Long.parseLong(ctx.pathParam("id")));
       // continue with the next handler in the route
@@ -79,25 +432,256 @@ public class CrudApplication extends AbstractVerticle {
   }
 
   private void retrieveAll(RoutingContext ctx) {
-    HttpServerResponse response = ctx.response()
-      .putHeader("Content-Type", "application/json");
+    HttpServerRequest request = ctx.request();
+    boolean paginated = request.params().contains("after") || request.params().contains("limit");
+    boolean filtered = false;
+    for (String filter : FILTERS) {
+      filtered |= request.params().contains(filter);
+    }
+    long after;
+    int limit;
+    try {
+      // the cursor of a search depends on its sort, it is read with the search
+      after = filtered ? 0 : Long.parseLong(getParam(request, "after", "0"));
+      limit = Integer.parseInt(getParam(request, "limit", String.valueOf(DEFAULT_PAGE_SIZE)));
+    } catch (NumberFormatException e) {
+      error(ctx, 400, "invalid pagination parameters: " + e.getMessage());
+      return;
+    }
+    if (after < 0 || limit < 1 || limit > MAX_PAGE_SIZE) {
+      error(ctx, 400, "invalid pagination parameters: limit must be between 1 and " + MAX_PAGE_SIZE);
+      return;
+    }
+
+    ProductQuery query = null;
+    if (filtered) {
+      try {
+        query = toQuery(request, limit);
+      } catch (IllegalArgumentException e) {
+        error(ctx, 400, "invalid search parameters: " + e.getMessage());
+        return;
+      }
+    }
+    // the order of the items, giving the cursor of the next page, none when the whole list is read
+    ProductQuery.Sort cursor = filtered ? query.getSort() : paginated ? ProductQuery.Sort.ID : null;
+
+    // the representation depends on the Accept header
+    ctx.response().putHeader("Vary", "Accept");
+    BinaryFormat format = BinaryFormat.negotiate(request.getHeader("Accept"));
+    boolean stream = Boolean.parseBoolean(request.getParam("stream")) && (format == null || format.streamable());
+
+    Observable<JsonObject> items;
+    if (filtered) {
+      items = store.search(query);
+    } else if (paginated) {
+      items = store.readAll(after, limit);
+    } else {
+      items = stream ? store.streamAll() : store.readAll();
+    }
+    if (stream) {
+      streamAll(ctx, items, format);
+      return;
+    }
+    if (format != null || !Json.pretty(ctx)) {
+      writeAll(ctx, items, format, cursor, limit);
+      return;
+    }
+
+    HttpServerResponse response = ctx.response();
     JsonArray res = new JsonArray();
-    store.readAll()
+    items
       .subscribe(
         res::add,
         err -> error(ctx, 415, err),
-        () -> response.end(res.encodePrettily())
+        () -> {
+          if (cursor != null && res.size() == limit) {
+            // a full page, there may be more items after the last one
+            response.putHeader("X-Next-Cursor", Cursors.of(cursor, res.getJsonObject(limit - 1)));
+          }
+          Json.end(response, Json.encode(ctx, res));
+        }
       );
   }
 
+  /**
+   * Writes the items as a compact JSON array, or in the given binary format, straight into a pooled buffer as they are
+   * read.
+   */
+  private void writeAll(RoutingContext ctx, Observable<JsonObject> items, BinaryFormat format,
+                        ProductQuery.Sort cursor, int limit) {
+    HttpServerResponse response = ctx.response();
+    ByteBuf body = Json.allocate();
+    // the binary formats write through a Buffer, which grows the pooled buffer
+    Buffer buffer = format == null ? null : Buffer.buffer(body);
+    if (format == null) {
+      body.writeByte('[');
+    } else {
+      format.beginList(buffer);
+    }
+    int[] count = {0};
+    JsonObject[] last = {null};
+    items
+      .subscribe(
+        item -> {
+          if (format == null) {
+            if (count[0] > 0) {
+              body.writeByte(',');
+            }
+            Json.write(body, item);
+          } else {
+            format.writeItem(buffer, item);
+          }
+          count[0]++;
+          last[0] = item;
+        },
+        err -> {
+          body.release();
+          error(ctx, 415, err);
+        },
+        () -> {
+          if (format == null) {
+            body.writeByte(']');
+          } else {
+            format.endList(buffer, 0, count[0]);
+          }
+          if (cursor != null && count[0] == limit) {
+            // a full page, there may be more items after the last one
+            response.putHeader("X-Next-Cursor", Cursors.of(cursor, last[0]));
+          }
+          Json.end(response, body, format == null ? "application/json" : format.contentType());
+        }
+      );
+  }
 
-  private void getOne(RoutingContext ctx) {
+  private static ProductQuery toQuery(HttpServerRequest request, int limit) {
+    ProductQuery query = new ProductQuery()
+      .setNamePrefix(request.getParam("name"))
+      .setNameContains(request.getParam("contains"))
+      .setLimit(limit);
+    if (request.getParam("minStock") != null) {
+      query.setMinStock(Long.parseLong(request.getParam("minStock")));
+    }
+    if (request.getParam("maxStock") != null) {
+      query.setMaxStock(Long.parseLong(request.getParam("maxStock")));
+    }
+    String sort = request.getParam("sort");
+    if (sort != null) {
+      // "-stock" sorts by decreasing stock
+      boolean descending = sort.startsWith("-");
+      try {
+        query
+          .setDescending(descending)
+          .setSort(ProductQuery.Sort.valueOf(sort.substring(descending ? 1 : 0).toUpperCase(Locale.ROOT)));
+      } catch (IllegalArgumentException e) {
+        throw new IllegalArgumentException("sort must be id, name or stock, prefixed by - for a descending order");
+      }
+    }
+    if (request.params().contains("after")) {
+      Cursors.apply(query, request.getParam("after"));
+      if (query.getAfter() < 0) {
+        throw new IllegalArgumentException("after must not be negative");
+      }
+    }
+    return query;
+  }
+
+  /**
+   * Writes the items as a chunked JSON array, or in the given binary format, one item at a time. Items are only
+   * requested from the store while the response write queue has room, so the memory used does not depend on the
+   * number of items.
+   */
+  private void streamAll(RoutingContext ctx, Observable<JsonObject> items, BinaryFormat format) {
     HttpServerResponse response = ctx.response()
-      .putHeader("Content-Type", "application/json");
+      .putHeader("Content-Type", format == null ? "application/json" : format.contentType())
+      .setChunked(true);
+
+    Subscriber<JsonObject> subscriber = new Subscriber<JsonObject>() {
+      private boolean first = true;
+
+      @Override
+      public void onStart() {
+        request(1);
+      }
+
+      @Override
+      public void onNext(JsonObject json) {
+        ByteBuf chunk = Json.allocate();
+        if (format == null) {
+          chunk.writeByte(first ? '[' : ',');
+          Json.write(chunk, json);
+        } else {
+          Buffer buffer = Buffer.buffer(chunk);
+          if (first) {
+            format.beginList(buffer);
+          }
+          format.writeItem(buffer, json);
+        }
+        Json.writeChunk(response, chunk);
+        first = false;
+        if (response.writeQueueFull()) {
+          response.drainHandler(v -> request(1));
+        } else {
+          request(1);
+        }
+      }
+
+      @Override
+      public void onError(Throwable err) {
+        if (first) {
+          error(ctx, 415, err);
+        } else {
+          // the status line is already sent, abort the response so the client sees a truncated body
+          response.close();
+        }
+      }
+
+      @Override
+      public void onCompleted() {
+        if (format == null) {
+          response.end(first ? "[]" : "]");
+        } else {
+          Buffer chunk = Buffer.buffer();
+          if (first) {
+            format.beginList(chunk);
+          }
+          format.endList(chunk, 0, 0);
+          response.end(io.vertx.rxjava.core.buffer.Buffer.newInstance(chunk));
+        }
+      }
+    };
+
+    response.closeHandler(v -> subscriber.unsubscribe());
+    items.subscribe(subscriber);
+  }
+
+  private void getOne(RoutingContext ctx) {
+    HttpServerResponse response = ctx.response();
+    // the representation depends on these headers, and its entity tag on the representation
+    response.putHeader("Vary", "Accept, " + Json.PRETTY_HEADER);
+    BinaryFormat format = BinaryFormat.negotiate(ctx.request().getHeader("Accept"));
+    boolean pretty = format == null && Json.pretty(ctx);
+    String variant = ETags.variant(format, pretty);
 
     store.read(ctx.get("fruitId"))
       .subscribe(
-        json -> response.end(json.encodePrettily()),
+        json -> {
+          String etag = ETags.of(json.getLong("version"), variant);
+          response.putHeader("ETag", etag);
+          if (ETags.matches(ctx.request().getHeader("If-None-Match"), etag)) {
+            // the client already has this version
+            response.setStatusCode(304).end();
+          } else if (format != null) {
+            ByteBuf body = Json.allocate();
+            format.writeItem(Buffer.buffer(body), json);
+            format.end(response, body);
+          } else if (pretty) {
+            Json.end(response, json.encodePrettily());
+          } else {
+            ByteBuf compact = Json.allocate();
+            Json.write(compact, json);
+            Json.end(response, compact, "application/json");
+          }
+        },
         err -> {
           if (err instanceof NoSuchElementException) {
             error(ctx, 404, err);
@@ -127,11 +711,9 @@ public class CrudApplication extends AbstractVerticle {
     store.create(item)
       .subscribe(
         json ->
-          ctx.response()
+          Json.end(ctx.response()
             .putHeader("Location", "/api/fruits/" + json.getLong("id"))
-            .putHeader("Content-Type", "application/json")
-            .setStatusCode(201)
-            .end(json.encodePrettily()),
+            .setStatusCode(201), Json.encode(ctx, json)),
         err -> writeError(ctx, err)
       );
   }
@@ -150,13 +732,118 @@ public class CrudApplication extends AbstractVerticle {
       return;
     }
 
-    store.update(ctx.get("fruitId"), item)
+    long version;
+    try {
+      version = ETags.version(ctx.request().getHeader("If-Match"));
+    } catch (NumberFormatException e) {
+      error(ctx, 400, "invalid If-Match header, expected the ETag of the item");
+      return;
+    }
+
+    store.update(ctx.get("fruitId"), item, version)
       .subscribe(
-        () ->
-          ctx.response()
-            .putHeader("Content-Type", "application/json")
-            .setStatusCode(200)
-            .end(item.put("id", ctx.<Long>get("fruitId")).encodePrettily()),
+        () -> {
+          item.put("id", ctx.<Long>get("fruitId"));
+          if (version == Store.ANY_VERSION) {
+            // the new version is not known
+            item.remove("version");
+          } else {
+            item.put("version", version + 1);
+            ctx.response().putHeader("ETag", ETags.of(version + 1));
+          }
+          Json.end(ctx.response().setStatusCode(200), Json.encode(ctx, item));
+        },
+        err -> writeError(ctx, err)
+      );
+  }
+
+  private void adjustStock(RoutingContext ctx) {
+    JsonObject body;
+    try {
+      body = ctx.getBodyAsJson();
+    } catch (RuntimeException e) {
+      error(ctx, 415, "invalid payload");
+      return;
+    }
+
+    if (body == null) {
+      error(ctx, 415, "invalid payload");
+      return;
+    }
+    Object delta = body.getValue("delta");
+    if (!(delta instanceof Integer) && !(delta instanceof Long)) {
+      error(ctx, 422, "The delta must be an integer!");
+      return;
+    }
+    // the stock cannot become negative unless the request says so
+    Object floor = body.getValue("floor", true);
+    if (!(floor instanceof Boolean)) {
+      error(ctx, 422, "The floor must be a boolean!");
+      return;
+    }
+
+    store.adjustStock(ctx.get("fruitId"), ((Number) delta).longValue(), (Boolean) floor)
+      .subscribe(
+        json -> Json.end(ctx.response().setStatusCode(200), Json.encode(ctx, json)),
+        err -> writeError(ctx, err)
+      );
+  }
+
+  private void bulk(RoutingContext ctx) {
+    List<JsonObject> operations = new ArrayList<>();
+    try {
+      String contentType = ctx.request().getHeader("Content-Type");
+      if (contentType != null && contentType.startsWith("application/x-ndjson")) {
+        // one operation per line
+        for (String line : ctx.getBodyAsString().split("\n")) {
+          if (!line.trim().isEmpty()) {
+            operations.add(new JsonObject(line));
+          }
+        }
+      } else {
+        JsonArray array = ctx.getBodyAsJsonArray();
+        for (int i = 0; i < array.size(); i++) {
+          operations.add(array.getJsonObject(i));
+        }
+      }
+    } catch (RuntimeException e) {
+      error(ctx, 415, "invalid payload");
+      return;
+    }
+
+    if (operations.isEmpty()) {
+      error(ctx, 415, "invalid payload");
+      return;
+    }
+    if (operations.size() > MAX_BULK_SIZE) {
+      error(ctx, 413, "too many operations, the maximum is " + MAX_BULK_SIZE);
+      return;
+    }
+
+    // the ids of the created items are generated by the store, the creates giving one are rejected
+    JsonObject[] rejected = new JsonObject[operations.size()];
+    List<JsonObject> accepted = new ArrayList<>(operations.size());
+    for (int i = 0; i < operations.size(); i++) {
+      JsonObject operation = operations.get(i);
+      if (operation != null && "create".equals(operation.getValue("op")) && operation.containsKey("id")) {
+        rejected[i] = new JsonObject().put("status", 422).put("error", "The id of a created item must not be set!");
+      } else {
+        accepted.add(operation);
+      }
+    }
+
+    store.bulk(accepted)
+      .map(results -> {
+        JsonArray array = new JsonArray();
+        Iterator<JsonObject> next = results.iterator();
+        for (JsonObject result : rejected) {
+          array.add(result != null ? result : next.next());
+        }
+        return array;
+      })
+      .subscribe(
+        results ->
+          Json.end(ctx.response().setStatusCode(200), Json.encode(ctx, results)),
         err -> writeError(ctx, err)
       );
   }
@@ -166,6 +853,8 @@ public class CrudApplication extends AbstractVerticle {
       error(ctx, 404, err);
     } else if (err instanceof IllegalArgumentException) {
       error(ctx, 422, err);
+    } else if (err instanceof VersionMismatchException) {
+      error(ctx, 412, err);
     } else {
       error(ctx, 409, err);
     }
@@ -188,8 +877,8 @@ public class CrudApplication extends AbstractVerticle {
       );
   }
 
-  private String getEnv(String key, String dv) {
-    String s = System.getenv(key);
+  private String getParam(HttpServerRequest request, String name, String dv) {
+    String s = request.getParam(name);
     if (s == null) {
       return dv;
     }
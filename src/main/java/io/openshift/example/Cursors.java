@@ -0,0 +1,66 @@
+package io.openshift.example;
+
+import io.openshift.example.service.ProductQuery;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Computes and parses the cursors of the pages, given in the {@code X-Next-Cursor} header and read from the
+ * {@code after} parameter.
+ * <p>
+ * When the items are sorted by id, the cursor is the id of the last item of the page. Otherwise it holds the value of
+ * the sorted field and the id of the last item, as a JSON array encoded in URL-safe base64, so the next page starts
+ * after this item whatever the number of items with the same value.
+ */
+public class Cursors {
+
+  private Cursors() {
+    // avoid direct instantiation
+  }
+
+  /**
+   * @param sort the field the items are sorted by
+   * @param last the last item of the page
+   * @return the cursor of the next page
+   */
+  public static String of(ProductQuery.Sort sort, JsonObject last) {
+    if (sort == ProductQuery.Sort.ID) {
+      return String.valueOf(last.getLong("id"));
+    }
+    String json = new JsonArray().add(last.getValue(sort.column())).add(last.getLong("id")).encode();
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(json.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Makes the query start after the item of the given cursor.
+   *
+   * @throws IllegalArgumentException if the cursor was not returned by {@link #of(ProductQuery.Sort, JsonObject)} for
+   *                                  the sort of the query
+   */
+  public static void apply(ProductQuery query, String cursor) {
+    if (query.getSort() == ProductQuery.Sort.ID) {
+      query.setAfter(Long.parseLong(cursor));
+      return;
+    }
+    JsonArray fields;
+    try {
+      fields = new JsonArray(new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8));
+    } catch (RuntimeException e) {
+      throw new IllegalArgumentException("after must be the X-Next-Cursor of the previous page");
+    }
+    Object value = fields.size() == 2 ? fields.getValue(0) : null;
+    // the names are never null, the stocks may be
+    boolean valid = fields.size() == 2 && fields.getValue(1) instanceof Number
+      && (query.getSort() == ProductQuery.Sort.NAME ? value instanceof String
+      : value == null || value instanceof Number);
+    if (!valid) {
+      throw new IllegalArgumentException("after must be the X-Next-Cursor of the previous page, with the same sort");
+    }
+    query
+      .setAfter(fields.getLong(1))
+      .setAfterValue(value instanceof Number ? (Object) ((Number) value).longValue() : value);
+  }
+}
@@ -1,31 +1,184 @@
 package io.openshift.example;
 
-import io.vertx.ext.sql.SQLOptions;
+import io.vertx.core.json.JsonArray;
 import io.vertx.rxjava.core.Vertx;
 import io.vertx.rxjava.ext.jdbc.JDBCClient;
+import io.vertx.rxjava.ext.sql.SQLConnection;
 import rx.Completable;
 import rx.Observable;
+import rx.Single;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * Simple helper to bootstrap your Database.
+ * <p>
+ * The schema is migrated by versioned scripts, {@code db/V<version>__<description>.sql}, each applied once and recorded
+ * in the {@code schema_version} table. When the schema is current, the migration is a single query. Otherwise, the
+ * pending scripts are applied in a transaction holding a PostgreSQL advisory lock, so when several pods start
+ * together, one migrates the schema and the others wait, then find it current.
  *
  * @author Paulo Lopes
  */
 public class DBInitHelper {
 
+  private static final List<Migration> MIGRATIONS = Arrays.asList(
+    new Migration(1, "products", false),
+    new Migration(2, "product_version", false),
+    new Migration(3, "search_indexes", false),
+    new Migration(4, "name_pattern_index", true),
+    new Migration(5, "bigint_ids", false),
+    new Migration(6, "bigint_id_sequence", true)
+  );
+
+  /**
+   * The version of the schema once migrated.
+   */
+  public static final int SCHEMA_VERSION = MIGRATIONS.get(MIGRATIONS.size() - 1).version;
+
+  /**
+   * The key of the advisory lock held while migrating, the same for every instance of the application.
+   */
+  private static final long LOCK = 0x6672756974L;
+
   private DBInitHelper() {
     // Private constructor.
   }
 
-  public static Completable initDatabase(Vertx vertx, JDBCClient jdbc) {
-    return jdbc.rxGetConnection()
-      .map(c -> c.setOptions(new SQLOptions().setAutoGeneratedKeys(true)))
-      .flatMapCompletable(connection ->
-        vertx.fileSystem().rxReadFile("ddl.sql")
-          .flatMapObservable(buffer -> Observable.from(buffer.toString().split(";")))
-          .flatMapSingle(connection::rxExecute)
-          .doAfterTerminate(connection::close)
-          .toCompletable()
-      );
+  /**
+   * Applies the migrations not applied yet.
+   *
+   * @param postgresql whether the database is PostgreSQL, to lock the migration and apply the migrations only
+   *                   understood by PostgreSQL
+   * @return the number of migrations applied, 0 when the schema is current
+   */
+  public static Single<Integer> migrate(Vertx vertx, JDBCClient jdbc, boolean postgresql) {
+    return jdbc.rxGetConnection().flatMap(connection ->
+      currentVersion(connection)
+        .flatMap(version -> version >= SCHEMA_VERSION ? Single.just(0) : migrate(vertx, connection, postgresql))
+        .doAfterTerminate(connection::close));
+  }
+
+  private static Single<Integer> migrate(Vertx vertx, SQLConnection connection, boolean postgresql) {
+    Completable lock = postgresql
+      ? connection.rxQuery("SELECT pg_advisory_xact_lock(" + LOCK + ")").toCompletable()
+      : Completable.complete();
+    return connection.rxSetAutoCommit(false).toCompletable()
+      // released by the commit or the rollback
+      .andThen(lock)
+      .andThen(connection.rxExecute("CREATE TABLE IF NOT EXISTS schema_version ("
+        + "version INTEGER PRIMARY KEY, "
+        + "description VARCHAR(100) NOT NULL, "
+        + "installed_on TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP, "
+        + "execution_time BIGINT NOT NULL)").toCompletable())
+      // another instance may have migrated the schema while we were waiting for the lock
+      .andThen(currentVersion(connection))
+      .flatMap(version -> Observable.from(MIGRATIONS)
+        .filter(migration -> migration.version > version)
+        .concatMap(migration -> apply(vertx, connection, migration, postgresql).andThen(Observable.just(migration)))
+        .count()
+        .toSingle())
+      .flatMap(count -> connection.rxCommit()
+        .flatMap(v -> connection.rxSetAutoCommit(true))
+        .map(v -> count))
+      .onErrorResumeNext(e -> connection.rxRollback().toCompletable().onErrorComplete()
+        .andThen(Single.error(e)));
+  }
+
+  private static Completable apply(Vertx vertx, SQLConnection connection, Migration migration, boolean postgresql) {
+    long begin = System.currentTimeMillis();
+    Completable statements = migration.postgresqlOnly && !postgresql
+      ? Completable.complete()
+      : execute(vertx, connection, migration.script());
+    return statements
+      .andThen(Single.defer(() -> connection.rxUpdateWithParams(
+        "INSERT INTO schema_version (version, description, execution_time) VALUES (?, ?, ?)",
+        new JsonArray()
+          .add(migration.version)
+          .add(migration.description.replace('_', ' '))
+          .add(System.currentTimeMillis() - begin))))
+      .toCompletable();
+  }
+
+  private static Single<Integer> currentVersion(SQLConnection connection) {
+    return connection.rxQuery("SELECT MAX(version) FROM schema_version")
+      .map(rs -> {
+        Integer version = rs.getResults().get(0).getInteger(0);
+        return version == null ? 0 : version;
+      })
+      .onErrorResumeNext(e -> isMissingTable(e) ? Single.just(0) : Single.error(e));
+  }
+
+  /**
+   * @return whether the error reports a missing table, as the {@code schema_version} table of a fresh database
+   */
+  private static boolean isMissingTable(Throwable e) {
+    // the pool may wrap the error of the driver
+    for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+      if (cause instanceof SQLException) {
+        String state = ((SQLException) cause).getSQLState();
+        // PostgreSQL, then the SQL standard, as used by H2
+        if ("42P01".equals(state) || "42S02".equals(state)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Inserts the demo data of {@code db/seed.sql}, only if the products table is empty.
+   *
+   * @return whether the data was inserted
+   */
+  public static Single<Boolean> seed(Vertx vertx, JDBCClient jdbc) {
+    return jdbc.rxGetConnection().flatMap(connection ->
+      connection.rxQuery("SELECT COUNT(*) FROM products")
+        .map(rs -> rs.getResults().get(0).getLong(0) == 0)
+        .flatMap(empty -> empty
+          ? execute(vertx, connection, "db/seed.sql").andThen(Single.just(true))
+          : Single.just(false))
+        .doAfterTerminate(connection::close));
+  }
+
+  /**
+   * Executes the statements of a script, in order.
+   */
+  private static Completable execute(Vertx vertx, SQLConnection connection, String script) {
+    return vertx.fileSystem().rxReadFile(script).toObservable()
+      .concatMap(buffer -> Observable.from(buffer.toString().split(";")))
+      .filter(statement -> !isBlank(statement))
+      .concatMap(statement -> connection.rxExecute(statement).toObservable())
+      .toCompletable();
+  }
+
+  private static boolean isBlank(String statement) {
+    for (String line : statement.split("\n")) {
+      if (!line.trim().isEmpty() && !line.trim().startsWith("--")) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static class Migration {
+
+    private final int version;
+
+    private final String description;
+
+    private final boolean postgresqlOnly;
+
+    Migration(int version, String description, boolean postgresqlOnly) {
+      this.version = version;
+      this.description = description;
+      this.postgresqlOnly = postgresqlOnly;
+    }
+
+    String script() {
+      return "db/V" + version + "__" + description + ".sql";
+    }
   }
 }
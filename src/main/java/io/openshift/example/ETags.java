@@ -0,0 +1,107 @@
+package io.openshift.example;
+
+import io.openshift.example.service.Store;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Computes and matches the entity tags of the items.
+ * <p>
+ * The tag of an item is its version, quoted, as a strong tag: the version changes with every write of the item, and
+ * only with them. As a strong tag stands for the bytes of the body, the other representations of the item, indented or
+ * in a binary format, add their name to the version ({@code "3-cbor"}). The tag is matched by {@code If-None-Match}, to
+ * answer a read with a {@code 304}, and the tag of any representation is accepted by {@code If-Match}, to update the
+ * item only if it still has this version.
+ */
+public class ETags {
+
+  private static final String PRETTY = "pretty";
+
+  private ETags() {
+    // avoid direct instantiation
+  }
+
+  /**
+   * @param version the version of the item
+   * @return the entity tag of the item
+   */
+  public static String of(long version) {
+    return "\"" + version + "\"";
+  }
+
+  /**
+   * @param version the version of the item
+   * @param variant the name of the representation, {@code null} for the compact JSON
+   * @return the entity tag of the given representation of the item
+   */
+  public static String of(long version, String variant) {
+    return variant == null ? of(version) : "\"" + version + "-" + variant + "\"";
+  }
+
+  /**
+   * @param format the binary format of the body, {@code null} for JSON
+   * @param pretty whether the JSON is indented
+   * @return the name of the representation, {@code null} for the compact JSON
+   */
+  public static String variant(BinaryFormat format, boolean pretty) {
+    if (format != null) {
+      return format.name().toLowerCase(Locale.ROOT);
+    }
+    return pretty ? PRETTY : null;
+  }
+
+  /**
+   * @param ifNoneMatch the value of the {@code If-None-Match} header, may be {@code null}
+   * @param etag        the current entity tag of the item
+   * @return whether the client already has the current version of the item, using the weak comparison
+   */
+  public static boolean matches(String ifNoneMatch, String etag) {
+    if (ifNoneMatch == null) {
+      return false;
+    }
+    String opaque = opaque(etag);
+    for (String candidate : ifNoneMatch.split(",")) {
+      String tag = candidate.trim();
+      if ("*".equals(tag) || opaque.equals(opaque(tag))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @param ifMatch the value of the {@code If-Match} header, may be {@code null}
+   * @return the version the item must have to be updated, {@link Store#ANY_VERSION} when the header is absent or
+   * {@code *}
+   * @throws NumberFormatException if the header is not an entity tag returned by {@link #of(long, String)}, or a bare
+   *                               version
+   */
+  public static long version(String ifMatch) {
+    if (ifMatch == null || "*".equals(ifMatch.trim())) {
+      return Store.ANY_VERSION;
+    }
+    String tag = ifMatch.trim();
+    if (tag.length() >= 2 && tag.startsWith("\"") && tag.endsWith("\"")) {
+      tag = tag.substring(1, tag.length() - 1);
+    }
+    int dash = tag.indexOf('-', 1);
+    if (dash > 0) {
+      String variant = tag.substring(dash + 1);
+      if (!PRETTY.equals(variant)
+        && Arrays.stream(BinaryFormat.values()).noneMatch(format -> variant.equals(variant(format, false)))) {
+        throw new NumberFormatException("unknown representation: " + variant);
+      }
+      tag = tag.substring(0, dash);
+    }
+    long version = Long.parseLong(tag);
+    if (version < 0) {
+      throw new NumberFormatException("negative version: " + version);
+    }
+    return version;
+  }
+
+  private static String opaque(String tag) {
+    return tag.startsWith("W/") ? tag.substring(2) : tag;
+  }
+}
@@ -1,5 +1,7 @@
 package io.openshift.example;
 
+import io.openshift.example.service.StoreTimeoutException;
+import io.openshift.example.service.StoreUnavailableException;
 import io.vertx.core.json.JsonObject;
 import io.vertx.rxjava.ext.web.RoutingContext;
 
@@ -9,19 +11,28 @@ import io.vertx.rxjava.ext.web.RoutingContext;
 public class Errors {
 
   public static void error(RoutingContext ctx, int status, String cause) {
-    JsonObject error = new JsonObject()
-      .put("error", cause)
-      .put("code", status)
-      .put("path", ctx.request().path());
-    ctx.response()
-      .putHeader("Content-Type", "application/json")
-      .setStatusCode(status)
-      .end(error.encodePrettily());
+    Json.end(ctx.response().setStatusCode(status), Json.encode(ctx, toJson(status, cause, ctx.request().path())));
   }
 
   public static void error(RoutingContext ctx, int status, Throwable cause) {
+    if (cause instanceof StoreUnavailableException) {
+      // whatever the operation, the client may retry later
+      long retryAfter = ((StoreUnavailableException) cause).getRetryAfter();
+      ctx.response().putHeader("Retry-After", String.valueOf(Math.max(1, (retryAfter + 999) / 1000)));
+      status = 503;
+    } else if (cause instanceof StoreTimeoutException) {
+      // the write may have been applied, retrying it blindly could apply it twice
+      status = 504;
+    }
     error(ctx, status, cause.getMessage());
   }
 
+  static JsonObject toJson(int status, String cause, String path) {
+    return new JsonObject()
+      .put("error", cause)
+      .put("code", status)
+      .put("path", path);
+  }
+
 
 }
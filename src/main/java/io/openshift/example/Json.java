@@ -0,0 +1,206 @@
+package io.openshift.example;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.util.CharsetUtil;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.rxjava.core.buffer.Buffer;
+import io.vertx.rxjava.core.http.HttpServerRequest;
+import io.vertx.rxjava.core.http.HttpServerResponse;
+import io.vertx.rxjava.ext.web.RoutingContext;
+
+import java.math.BigDecimal;
+import java.util.Map;
+
+/**
+ * Writes the JSON responses of the application.
+ * <p>
+ * Responses are compact unless the request asks for an indented output with the {@code pretty} query parameter or the
+ * {@code X-Pretty-Print: true} header. Small bodies are not worth compressing, they are sent as-is even when the client
+ * accepts a compressed response.
+ * <p>
+ * The compact responses are written straight into pooled buffers, item by item, with the bytes
+ * {@link JsonObject#encode()} would produce, without building a {@link JsonArray} of the items nor an intermediate
+ * string. The buffers go back to the pool once written to the connection.
+ */
+public class Json {
+
+  public static final String PRETTY_HEADER = "X-Pretty-Print";
+
+  /**
+   * Below this size, in characters, the gzip or deflate framing costs more than it saves.
+   */
+  static final int COMPRESSION_THRESHOLD = 1024;
+
+  /**
+   * The escapes of the ASCII characters, as written by Jackson: 0 for none, -1 for a unicode escape.
+   */
+  private static final int[] ESCAPES = new int[128];
+
+  private static final byte[] HEX = "0123456789ABCDEF".getBytes();
+
+  static {
+    for (int i = 0; i < 32; i++) {
+      ESCAPES[i] = -1;
+    }
+    ESCAPES['"'] = '"';
+    ESCAPES['\\'] = '\\';
+    ESCAPES['\b'] = 'b';
+    ESCAPES['\t'] = 't';
+    ESCAPES['\f'] = 'f';
+    ESCAPES['\n'] = 'n';
+    ESCAPES['\r'] = 'r';
+  }
+
+  private Json() {
+    // avoid direct instantiation
+  }
+
+  public static String encode(RoutingContext ctx, JsonObject json) {
+    return pretty(ctx) ? json.encodePrettily() : json.encode();
+  }
+
+  public static String encode(RoutingContext ctx, JsonArray json) {
+    return pretty(ctx) ? json.encodePrettily() : json.encode();
+  }
+
+  /**
+   * Ends the response with the given JSON body.
+   */
+  public static void end(HttpServerResponse response, String body) {
+    response.putHeader("Content-Type", "application/json");
+    if (body.length() < COMPRESSION_THRESHOLD) {
+      response.putHeader("Content-Encoding", "identity");
+    }
+    response.end(body);
+  }
+
+  /**
+   * @return an empty buffer from the pool, to release once done with it
+   */
+  public static ByteBuf allocate() {
+    return PooledByteBufAllocator.DEFAULT.directBuffer(256);
+  }
+
+  /**
+   * Ends the response with the given pooled body, released once written. Small bodies are not compressed.
+   */
+  public static void end(HttpServerResponse response, ByteBuf body, String contentType) {
+    response.putHeader("Content-Type", contentType);
+    if (body.readableBytes() < COMPRESSION_THRESHOLD) {
+      response.putHeader("Content-Encoding", "identity");
+    }
+    try {
+      response.end(Buffer.buffer(body), ar -> body.release());
+    } catch (RuntimeException e) {
+      // the response was already closed
+      body.release();
+      throw e;
+    }
+  }
+
+  /**
+   * Writes a pooled chunk of a chunked response, released once written.
+   */
+  public static void writeChunk(HttpServerResponse response, ByteBuf chunk) {
+    try {
+      response.write(Buffer.buffer(chunk), ar -> chunk.release());
+    } catch (RuntimeException e) {
+      chunk.release();
+      throw e;
+    }
+  }
+
+  /**
+   * Writes the compact JSON encoding of an item.
+   */
+  public static void write(ByteBuf out, JsonObject item) {
+    out.writeByte('{');
+    boolean first = true;
+    for (Map.Entry<String, Object> entry : item.getMap().entrySet()) {
+      if (!first) {
+        out.writeByte(',');
+      }
+      first = false;
+      writeString(out, entry.getKey());
+      out.writeByte(':');
+      writeValue(out, entry.getValue());
+    }
+    out.writeByte('}');
+  }
+
+  private static void writeValue(ByteBuf out, Object value) {
+    if (value == null) {
+      out.writeCharSequence("null", CharsetUtil.US_ASCII);
+    } else if (value instanceof String) {
+      writeString(out, (String) value);
+    } else if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+      writeLong(out, ((Number) value).longValue());
+    } else if (value instanceof Boolean || value instanceof BigDecimal
+      || (value instanceof Double || value instanceof Float) && Double.isFinite(((Number) value).doubleValue())) {
+      out.writeCharSequence(value.toString(), CharsetUtil.US_ASCII);
+    } else {
+      // nested objects, arrays and the other types are rare, leave them to Jackson
+      ByteBufUtil.writeUtf8(out, io.vertx.core.json.Json.encode(value));
+    }
+  }
+
+  private static void writeLong(ByteBuf out, long value) {
+    if (value == Long.MIN_VALUE) {
+      out.writeCharSequence("-9223372036854775808", CharsetUtil.US_ASCII);
+      return;
+    }
+    if (value < 0) {
+      out.writeByte('-');
+      value = -value;
+    }
+    int digits = 1;
+    for (long n = value / 10; n > 0; n /= 10) {
+      digits++;
+    }
+    int index = out.writerIndex() + digits;
+    out.ensureWritable(digits);
+    out.writerIndex(index);
+    do {
+      out.setByte(--index, (int) ('0' + value % 10));
+      value /= 10;
+    } while (value > 0);
+  }
+
+  private static void writeString(ByteBuf out, String value) {
+    out.writeByte('"');
+    int start = 0;
+    int length = value.length();
+    for (int i = 0; i < length; i++) {
+      char c = value.charAt(i);
+      if (c < 128 && ESCAPES[c] != 0) {
+        if (start < i) {
+          ByteBufUtil.writeUtf8(out, value, start, i);
+        }
+        out.writeByte('\\');
+        if (ESCAPES[c] > 0) {
+          out.writeByte(ESCAPES[c]);
+        } else {
+          out.writeByte('u').writeByte('0').writeByte('0').writeByte(HEX[c >> 4]).writeByte(HEX[c & 0xf]);
+        }
+        start = i + 1;
+      }
+    }
+    if (start < length) {
+      ByteBufUtil.writeUtf8(out, value, start, length);
+    }
+    out.writeByte('"');
+  }
+
+  static boolean pretty(RoutingContext ctx) {
+    HttpServerRequest request = ctx.request();
+    String param = request.getParam("pretty");
+    if (param != null) {
+      // "?pretty" alone enables it too
+      return param.isEmpty() || Boolean.parseBoolean(param);
+    }
+    return Boolean.parseBoolean(request.getHeader(PRETTY_HEADER));
+  }
+}
@@ -0,0 +1,91 @@
+package io.openshift.example;
+
+import io.openshift.example.service.impl.InMemoryProductStore;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.json.JsonObject;
+import io.vertx.rxjava.core.AbstractVerticle;
+import io.vertx.rxjava.ext.jdbc.JDBCClient;
+import rx.Completable;
+import rx.Observable;
+import rx.Single;
+
+import java.util.List;
+
+/**
+ * The entry point of the application.
+ * <p>
+ * It initializes the database (or loads the in-memory store) once, then deploys the {@link CrudApplication} verticle. The {@code INSTANCES} setting
+ * controls the number of instances: a number, or {@code auto} for one instance per core. The instances share the HTTP
+ * port and the JDBC data source.
+ * <p>
+ * The database is migrated unless {@code DB_MIGRATE} is {@code false}, and the demo data is inserted in an empty table
+ * when {@code DB_SEED} is {@code true}. When the items are sharded, each shard is migrated, and none is seeded. The
+ * time spent in each phase of the startup is printed once started. With {@code EXIT_AFTER_STARTUP}, the application
+ * exits once started, to record the classes it loads (see the {@code cds} profile).
+ */
+public class MainVerticle extends AbstractVerticle {
+
+  @Override
+  public Completable rxStart() {
+    StartupReport report = new StartupReport(vertx.isNativeTransportEnabled());
+    Settings settings = new Settings(config());
+    int instances = settings.instances();
+
+    return initStore(settings)
+      .doOnSuccess(detail -> report.phase("store", detail))
+      .flatMap(detail -> vertx.rxDeployVerticle(CrudApplication.class.getName(),
+        new DeploymentOptions().setConfig(config()).setInstances(instances)))
+      .doOnSuccess(id -> {
+        report.phase("deployment", instances + " instance(s)");
+        System.out.println(report);
+        if (settings.getBoolean("EXIT_AFTER_STARTUP", false)) {
+          vertx.close(done -> System.exit(0));
+        }
+      })
+      .toCompletable();
+  }
+
+  /**
+   * @return what was done
+   */
+  private Single<String> initStore(Settings settings) {
+    if ("memory".equals(settings.get("STORE_TYPE", "jdbc"))) {
+      // load the snapshot file, if any, away from the event loop
+      String snapshot = settings.get("MEMORY_SNAPSHOT", null);
+      return vertx.<Void>rxExecuteBlocking(future -> {
+        InMemoryProductStore.createShared(vertx, snapshot);
+        future.complete();
+      }).map(v -> snapshot == null ? "in memory" : "in memory, loaded " + snapshot);
+    }
+
+    List<JsonObject> shards = settings.shards();
+    if (!shards.isEmpty()) {
+      // the demo data would have the same ids in each shard, and the node generating the ids must be known
+      return Single.fromCallable(settings::nodeId)
+        .flatMap(node -> Observable.range(0, shards.size())
+          .concatMap(i -> migrate(settings, shards.get(i),
+            JDBCClient.createShared(vertx, shards.get(i), "shard-" + i)).toObservable())
+          .toList()
+          .map(details -> shards.size() + " shards, node " + node + ", " + details.get(0))
+          .toSingle());
+    }
+
+    JsonObject config = settings.jdbc();
+    JDBCClient jdbc = JDBCClient.createShared(vertx, config);
+    Single<String> migration = migrate(settings, config, jdbc);
+    if (!settings.getBoolean("DB_SEED", false)) {
+      return migration;
+    }
+    return migration.flatMap(detail -> DBInitHelper.seed(vertx, jdbc)
+      .map(seeded -> seeded ? detail + ", demo data inserted" : detail));
+  }
+
+  private Single<String> migrate(Settings settings, JsonObject config, JDBCClient jdbc) {
+    return settings.getBoolean("DB_MIGRATE", true)
+      ? DBInitHelper.migrate(vertx, jdbc, config.getString("url").startsWith("jdbc:postgresql:"))
+      .map(count -> count == 0
+        ? "schema version " + DBInitHelper.SCHEMA_VERSION + ", up to date"
+        : "schema version " + DBInitHelper.SCHEMA_VERSION + ", applied " + count + " migration(s)")
+      : Single.just("schema not migrated");
+  }
+}
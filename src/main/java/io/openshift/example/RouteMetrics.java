@@ -0,0 +1,78 @@
+package io.openshift.example;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.vertx.core.Handler;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.rxjava.ext.web.RoutingContext;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the duration of the requests handled by the routes of the application, per route, method and status class.
+ * <p>
+ * The timers of a route are registered when the route is declared, so handling a request does not look anything up in
+ * the registry. Requests ended before reaching a timed route (validation errors, static files...) are recorded with the
+ * {@code other} route.
+ */
+public class RouteMetrics {
+
+  private static final String START = "metrics.start";
+
+  private static final String TIMERS = "metrics.timers";
+
+  private static final String[] STATUSES = {"1xx", "2xx", "3xx", "4xx", "5xx"};
+
+  private final MeterRegistry registry;
+
+  private final Timer[] other;
+
+  public RouteMetrics(MeterRegistry registry) {
+    this.registry = registry;
+    this.other = timers("ANY", "other");
+  }
+
+  /**
+   * The handler to declare first on the router, it records when each request starts and ends.
+   */
+  public void start(RoutingContext ctx) {
+    long start = System.nanoTime();
+    ctx.addBodyEndHandler(v -> {
+      Timer[] timers = ctx.get(TIMERS);
+      if (timers == null) {
+        timers = other;
+      }
+      int status = ctx.response().getStatusCode() / 100;
+      timers[Math.min(Math.max(status, 1), 5) - 1].record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    });
+    ctx.next();
+  }
+
+  /**
+   * Wraps the handler of a route so its requests are recorded with the given method and path.
+   */
+  public Handler<RoutingContext> timed(HttpMethod method, String path, Handler<RoutingContext> handler) {
+    Timer[] timers = timers(method.name(), path);
+    return ctx -> {
+      ctx.put(TIMERS, timers);
+      handler.handle(ctx);
+    };
+  }
+
+  private Timer[] timers(String method, String route) {
+    Timer[] timers = new Timer[STATUSES.length];
+    for (int i = 0; i < STATUSES.length; i++) {
+      timers[i] = Timer.builder("http.server.requests")
+        .description("Duration of the HTTP requests")
+        .tag("method", method)
+        .tag("route", route)
+        .tag("status", STATUSES[i])
+        .publishPercentileHistogram()
+        .minimumExpectedValue(Duration.ofNanos(100_000))
+        .maximumExpectedValue(Duration.ofSeconds(30))
+        .register(registry);
+    }
+    return timers;
+  }
+}
@@ -0,0 +1,113 @@
+package io.openshift.example;
+
+import io.openshift.example.service.impl.PooledDataSourceProvider;
+import io.vertx.core.json.JsonObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the settings of the application from the verticle configuration, then from the environment variable of the
+ * same name.
+ */
+public class Settings {
+
+  private final JsonObject config;
+
+  public Settings(JsonObject config) {
+    this.config = config;
+  }
+
+  public String get(String key, String dv) {
+    Object value = config.getValue(key);
+    if (value != null) {
+      return value.toString();
+    }
+    String s = System.getenv(key);
+    if (s == null) {
+      return dv;
+    }
+    return s;
+  }
+
+  public int getInt(String key, int dv) {
+    return Integer.parseInt(get(key, String.valueOf(dv)));
+  }
+
+  public long getLong(String key, long dv) {
+    return Long.parseLong(get(key, String.valueOf(dv)));
+  }
+
+  public boolean getBoolean(String key, boolean dv) {
+    return Boolean.parseBoolean(get(key, String.valueOf(dv)));
+  }
+
+  /**
+   * @return the comma-separated values of a setting, none when it is not set
+   */
+  public List<String> getList(String key) {
+    List<String> values = new ArrayList<>();
+    for (String value : get(key, "").split(",")) {
+      if (!value.trim().isEmpty()) {
+        values.add(value.trim());
+      }
+    }
+    return values;
+  }
+
+  /**
+   * @return the configuration of the JDBC client, see {@link PooledDataSourceProvider}
+   */
+  public JsonObject jdbc() {
+    return new JsonObject()
+      .put("provider_class", PooledDataSourceProvider.class.getName())
+      .put("url", get("DB_URL",
+        "jdbc:postgresql://" + get("MY_DATABASE_SERVICE_HOST", "localhost") + ":5432/my_data"
+          // let the driver turn batched inserts into multi-rows inserts
+          + "?reWriteBatchedInserts=true"
+          // and use a server-side prepared statement from the first execution
+          + "&prepareThreshold=1"))
+      .put("driver_class", get("DB_DRIVER", "org.postgresql.Driver"))
+      .put("user", get("DB_USERNAME", "user"))
+      .put("password", get("DB_PASSWORD", "password"))
+      .put("min_pool_size", getInt("DB_POOL_MIN_SIZE", 3))
+      .put("max_pool_size", getInt("DB_POOL_SIZE", 15))
+      .put("acquire_timeout", getInt("DB_ACQUIRE_TIMEOUT", 2000))
+      .put("max_idle_time", getInt("DB_IDLE_TIMEOUT", 300))
+      .put("statement_cache_size", getInt("DB_STATEMENT_CACHE_SIZE", 32));
+  }
+
+  /**
+   * @return the number of verticle instances to deploy, from the {@code INSTANCES} setting, {@code auto} for one per
+   * core, default 1
+   */
+  public int instances() {
+    String setting = get("INSTANCES", "1");
+    return "auto".equals(setting) ? Runtime.getRuntime().availableProcessors() : Integer.parseInt(setting);
+  }
+
+  /**
+   * @return the number of this node of the application, from the {@code NODE_ID} setting, which has no default: two
+   * nodes with the same number would generate the same ids
+   * @throws IllegalStateException when it is not set
+   */
+  public int nodeId() {
+    String node = get("NODE_ID", null);
+    if (node == null) {
+      throw new IllegalStateException("NODE_ID must be set, to a different number on each node of the application");
+    }
+    return Integer.parseInt(node);
+  }
+
+  /**
+   * @return the configurations of the JDBC clients of the shards, from the {@code DB_SHARD_URLS} setting, none when the
+   * items are not sharded. The shards share the other settings of {@link #jdbc()}, and are named {@code shard-<index>}
+   */
+  public List<JsonObject> shards() {
+    List<JsonObject> shards = new ArrayList<>();
+    for (String url : getList("DB_SHARD_URLS")) {
+      shards.add(jdbc().put("url", url));
+    }
+    return shards;
+  }
+}
@@ -0,0 +1,51 @@
+package io.openshift.example;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Times the phases of the startup of the application, to print them once started.
+ * <p>
+ * The first phase, from the launch of the JVM to the creation of the report, covers the loading of the classes and
+ * the start of Vert.x. Each following phase lasts from the end of the previous one to its own end.
+ */
+public class StartupReport {
+
+  private final StringBuilder phases = new StringBuilder();
+
+  private long last;
+
+  /**
+   * @param nativeTransport whether Vert.x uses the native transport
+   */
+  public StartupReport(boolean nativeTransport) {
+    last = uptime();
+    append("jvm and vert.x", last, nativeTransport ? "native transport" : "NIO transport");
+  }
+
+  private static long uptime() {
+    return ManagementFactory.getRuntimeMXBean().getUptime();
+  }
+
+  /**
+   * Ends a phase.
+   *
+   * @param detail what was done during the phase, or {@code null}
+   */
+  public void phase(String name, String detail) {
+    long now = uptime();
+    append(name, now - last, detail);
+    last = now;
+  }
+
+  private void append(String name, long duration, String detail) {
+    phases.append(String.format("%n  %-16s %6d ms", name, duration));
+    if (detail != null) {
+      phases.append("  ").append(detail);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "Started in " + last + " ms" + phases;
+  }
+}
@@ -0,0 +1,172 @@
+package io.openshift.example.service;
+
+import java.util.Objects;
+
+/**
+ * The filters, order and page of a search, see {@link Store#search(ProductQuery)}.
+ * <p>
+ * All the filters are optional, the items are sorted by id by default.
+ */
+public class ProductQuery {
+
+  /**
+   * The fields the items can be sorted by, ties are broken by id.
+   */
+  public enum Sort {
+    ID("id"), NAME("name"), STOCK("stock");
+
+    private final String column;
+
+    Sort(String column) {
+      this.column = column;
+    }
+
+    public String column() {
+      return column;
+    }
+  }
+
+  private String namePrefix;
+
+  private String nameContains;
+
+  private Long minStock;
+
+  private Long maxStock;
+
+  private Sort sort = Sort.ID;
+
+  private boolean descending;
+
+  private Long after;
+
+  private Object afterValue;
+
+  private int limit = 100;
+
+  public String getNamePrefix() {
+    return namePrefix;
+  }
+
+  /**
+   * Only keeps the items whose name starts with the given prefix, case-sensitive.
+   */
+  public ProductQuery setNamePrefix(String namePrefix) {
+    this.namePrefix = namePrefix;
+    return this;
+  }
+
+  public String getNameContains() {
+    return nameContains;
+  }
+
+  /**
+   * Only keeps the items whose name contains the given string, case-insensitive.
+   */
+  public ProductQuery setNameContains(String nameContains) {
+    this.nameContains = nameContains;
+    return this;
+  }
+
+  public Long getMinStock() {
+    return minStock;
+  }
+
+  /**
+   * Only keeps the items with at least this stock.
+   */
+  public ProductQuery setMinStock(Long minStock) {
+    this.minStock = minStock;
+    return this;
+  }
+
+  public Long getMaxStock() {
+    return maxStock;
+  }
+
+  /**
+   * Only keeps the items with at most this stock.
+   */
+  public ProductQuery setMaxStock(Long maxStock) {
+    this.maxStock = maxStock;
+    return this;
+  }
+
+  public Sort getSort() {
+    return sort;
+  }
+
+  public ProductQuery setSort(Sort sort) {
+    this.sort = sort;
+    return this;
+  }
+
+  public boolean isDescending() {
+    return descending;
+  }
+
+  public ProductQuery setDescending(boolean descending) {
+    this.descending = descending;
+    return this;
+  }
+
+  public Long getAfter() {
+    return after;
+  }
+
+  /**
+   * Starts after the item with this id (keyset pagination). When not sorting by id, the item is the one with this id
+   * and the {@link #setAfterValue(Object) value} of the sorted field, as the items are sorted by this field first.
+   */
+  public ProductQuery setAfter(Long after) {
+    this.after = after;
+    return this;
+  }
+
+  public Object getAfterValue() {
+    return afterValue;
+  }
+
+  /**
+   * Starts after the item with this value of the sorted field, a name or a stock, and the {@link #setAfter(Long) id},
+   * when not sorting by id. The stock may be {@code null}, for an item without stock.
+   */
+  public ProductQuery setAfterValue(Object afterValue) {
+    this.afterValue = afterValue;
+    return this;
+  }
+
+  public int getLimit() {
+    return limit;
+  }
+
+  public ProductQuery setLimit(int limit) {
+    this.limit = limit;
+    return this;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof ProductQuery)) {
+      return false;
+    }
+    ProductQuery other = (ProductQuery) o;
+    return descending == other.descending
+      && limit == other.limit
+      && sort == other.sort
+      && Objects.equals(namePrefix, other.namePrefix)
+      && Objects.equals(nameContains, other.nameContains)
+      && Objects.equals(minStock, other.minStock)
+      && Objects.equals(maxStock, other.maxStock)
+      && Objects.equals(after, other.after)
+      && Objects.equals(afterValue, other.afterValue);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(namePrefix, nameContains, minStock, maxStock, sort, descending, after, afterValue, limit);
+  }
+}
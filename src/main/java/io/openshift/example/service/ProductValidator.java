@@ -0,0 +1,33 @@
+package io.openshift.example.service;
+
+import io.vertx.core.json.JsonObject;
+
+import java.util.Optional;
+
+/**
+ * The validation rules applied to the items given to {@link Store#create(JsonObject)} and
+ * {@link Store#update(long, JsonObject, long)}, shared by all the store implementations.
+ */
+public class ProductValidator {
+
+  private ProductValidator() {
+    // Private constructor.
+  }
+
+  public static Optional<Exception> validateRequestBody(JsonObject item) {
+    if (item == null) {
+      return Optional.of(new IllegalArgumentException("The item must not be null"));
+    }
+    if (!(item.getValue("name") instanceof String) || item.getString("name") == null
+        || item.getString("name").isEmpty()) {
+      return Optional.of(new IllegalArgumentException("The name is required!"));
+    }
+    if (!(item.getValue("stock") instanceof Integer) || item.getInteger("stock") < 0) {
+      return Optional.of(new IllegalArgumentException("The stock must be greater or equal to 0!"));
+    }
+    if (item.containsKey("id")) {
+      return Optional.of(new IllegalArgumentException("Id was invalidly set on request."));
+    }
+    return Optional.empty();
+  }
+}
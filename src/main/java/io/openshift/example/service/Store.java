@@ -5,18 +5,84 @@ import rx.Completable;
 import rx.Observable;
 import rx.Single;
 
+import java.util.List;
+
 /**
  * A CRUD to SQL interface
  */
 public interface Store {
 
+  /**
+   * The version to give to {@link #update(long, JsonObject, long)} to update an item whatever its current version.
+   */
+  long ANY_VERSION = -1;
+
   Single<JsonObject> create(JsonObject item);
 
+  /**
+   * Creates an item with the given id, rather than one generated by the store, for the stores spreading the items over
+   * several databases.
+   *
+   * @return the created item, or an error: an {@link IllegalStateException} when an item has the same id
+   */
+  Single<JsonObject> create(long id, JsonObject item);
+
   Observable<JsonObject> readAll();
 
+  /**
+   * Reads all the items for a caller consuming them at its own pace, such as a streamed response. Unlike
+   * {@link #readAll()}, the read is never shared with other callers, as a slow caller would make it buffer the list.
+   */
+  default Observable<JsonObject> streamAll() {
+    return readAll();
+  }
+
+  /**
+   * Reads a page of items ordered by id (keyset pagination).
+   *
+   * @param after the id of the last item of the previous page, {@code 0} for the first page
+   * @param limit the maximum number of items to return
+   */
+  Observable<JsonObject> readAll(long after, int limit);
+
+  /**
+   * Reads the items matching the filters of a query, in the order of the query, a page at a time.
+   */
+  Observable<JsonObject> search(ProductQuery query);
+
   Single<JsonObject> read(long id);
 
-  Completable update(long id, JsonObject item);
+  /**
+   * Replaces the name and the stock of an item, and increments its version.
+   *
+   * @param version the version the item must have, or {@link #ANY_VERSION}
+   * @return a completable failing with a {@link java.util.NoSuchElementException} when the item does not exist, and
+   * with a {@link VersionMismatchException} when it does not have the expected version
+   */
+  Completable update(long id, JsonObject item, long version);
+
+  /**
+   * Adds a delta to the stock of an item, and increments its version, in a single atomic update.
+   *
+   * @param delta the number to add to the stock, negative to remove items
+   * @param floor whether the update must be rejected when it would make the stock negative
+   * @return the updated item, or an error: a {@link java.util.NoSuchElementException} when the item does not exist, and
+   * an {@link IllegalStateException} when the floor would be crossed
+   */
+  Single<JsonObject> adjustStock(long id, long delta, boolean floor);
 
   Completable delete(long id);
+
+  /**
+   * Executes a list of create, update and delete operations in a single transaction.
+   * <p>
+   * Each operation is a JSON object with an {@code op} field ({@code create}, {@code update} or {@code delete}), an
+   * {@code id} field for updates and deletes, and an {@code item} field for creates and updates. A create may have an
+   * {@code id} field too, see {@link #create(long, JsonObject)}. Operations failing the validation are reported as such
+   * and not executed, the other ones are executed in order.
+   *
+   * @return one result per operation, in the same order, with the HTTP-like {@code status} of the operation, the
+   * {@code id} of the item and, for failed operations, an {@code error} message
+   */
+  Single<List<JsonObject>> bulk(List<JsonObject> operations);
 }
@@ -0,0 +1,12 @@
+package io.openshift.example.service;
+
+/**
+ * Reported when the store did not acknowledge a write in time. The write was cancelled on our side, but may still have
+ * been applied, so it must not be blindly retried: the client should read the item to know its outcome.
+ */
+public class StoreTimeoutException extends RuntimeException {
+
+  public StoreTimeoutException(String message) {
+    super(message);
+  }
+}
@@ -0,0 +1,22 @@
+package io.openshift.example.service;
+
+/**
+ * Reported when the store cannot serve a call, because it did not answer in time or because it has been failing and
+ * is not called for a while.
+ */
+public class StoreUnavailableException extends RuntimeException {
+
+  private final long retryAfter;
+
+  /**
+   * @param retryAfter the time, in milliseconds, after which the call may succeed
+   */
+  public StoreUnavailableException(String message, long retryAfter) {
+    super(message);
+    this.retryAfter = retryAfter;
+  }
+
+  public long getRetryAfter() {
+    return retryAfter;
+  }
+}
@@ -0,0 +1,12 @@
+package io.openshift.example.service;
+
+/**
+ * Reported when an item is updated with an expected version that is not its current version, because another
+ * client updated it in the meantime.
+ */
+public class VersionMismatchException extends RuntimeException {
+
+  public VersionMismatchException(long id, long version) {
+    super("Item '" + id + "' is not at version " + version);
+  }
+}
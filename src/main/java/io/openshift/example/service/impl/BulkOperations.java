@@ -0,0 +1,105 @@
+package io.openshift.example.service.impl;
+
+import io.vertx.core.json.JsonObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static io.openshift.example.service.ProductValidator.validateRequestBody;
+
+/**
+ * Helpers shared by the stores to execute the operations given to
+ * {@link io.openshift.example.service.Store#bulk(List)}.
+ */
+final class BulkOperations {
+
+  static final String CREATE = "create";
+
+  static final String UPDATE = "update";
+
+  static final String DELETE = "delete";
+
+  private BulkOperations() {
+    // Private constructor.
+  }
+
+  /**
+   * Validates the operations and splits the valid ones into runs of consecutive operations of the same type, so each
+   * run can be executed as a single batch while keeping the order of the operations.
+   *
+   * @param operations the operations
+   * @param results    filled with the results of the invalid operations
+   * @return the indexes of the valid operations, grouped in runs
+   */
+  static List<List<Integer>> plan(List<JsonObject> operations, JsonObject[] results) {
+    List<List<Integer>> runs = new ArrayList<>();
+    List<Integer> run = null;
+    String previous = null;
+    for (int i = 0; i < operations.size(); i++) {
+      JsonObject operation = operations.get(i);
+      Optional<String> error = validate(operation);
+      if (error.isPresent()) {
+        results[i] = new JsonObject().put("status", 422).put("error", error.get());
+        continue;
+      }
+      String type = operation.getString("op");
+      if (!type.equals(previous)) {
+        run = new ArrayList<>();
+        runs.add(run);
+        previous = type;
+      }
+      run.add(i);
+    }
+    return runs;
+  }
+
+  /**
+   * @return the number of creates of a run not giving the id of their item
+   */
+  static int missingIds(List<JsonObject> operations, List<Integer> run) {
+    int missing = 0;
+    for (int index : run) {
+      if (operations.get(index).getValue("id") == null) {
+        missing++;
+      }
+    }
+    return missing;
+  }
+
+  static JsonObject success(int status, long id) {
+    return new JsonObject().put("status", status).put("id", id);
+  }
+
+  static JsonObject notFound(long id) {
+    return new JsonObject().put("status", 404).put("id", id).put("error", "Unknown item '" + id + "'");
+  }
+
+  private static Optional<String> validate(JsonObject operation) {
+    Object type = operation == null ? null : operation.getValue("op");
+    if (CREATE.equals(type)) {
+      if (operation.getValue("id") != null && !(operation.getValue("id") instanceof Number)) {
+        return Optional.of("The id must be a number!");
+      }
+      return validateItem(operation);
+    } else if (UPDATE.equals(type)) {
+      if (!(operation.getValue("id") instanceof Number)) {
+        return Optional.of("The id is required!");
+      }
+      return validateItem(operation);
+    } else if (DELETE.equals(type)) {
+      if (!(operation.getValue("id") instanceof Number)) {
+        return Optional.of("The id is required!");
+      }
+      return Optional.empty();
+    }
+    return Optional.of("The op must be one of create, update or delete!");
+  }
+
+  private static Optional<String> validateItem(JsonObject operation) {
+    if (!(operation.getValue("item") instanceof JsonObject)) {
+      return Optional.of("The item is required!");
+    }
+    return validateRequestBody(operation.getJsonObject("item")).map(Exception::getMessage);
+  }
+}
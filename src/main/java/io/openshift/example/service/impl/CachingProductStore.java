@@ -0,0 +1,225 @@
+package io.openshift.example.service.impl;
+
+import io.openshift.example.service.ProductQuery;
+import io.openshift.example.service.Store;
+import io.vertx.core.json.JsonObject;
+import io.vertx.rxjava.core.eventbus.EventBus;
+import rx.Completable;
+import rx.Observable;
+import rx.Single;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * A read-through cache in front of another store.
+ * <p>
+ * Single items returned by {@link #read(long)} are kept in a bounded, least recently used, map for a limited time.
+ * Writes going through this store invalidate the cached entry of the item they modify. Lists are never cached.
+ * <p>
+ * When created with an event bus, each write is also published on {@link #INVALIDATIONS_ADDRESS}, and the
+ * invalidations published by the other caches (other verticle instances, or other nodes when Vert.x is clustered)
+ * evict the matching local entries.
+ */
+public class CachingProductStore implements Store {
+
+  public static final String INVALIDATIONS_ADDRESS = "products.invalidations";
+
+  private final Store delegate;
+
+  private final EventBus eventBus;
+
+  private final String origin = UUID.randomUUID().toString();
+
+  private final int maxSize;
+
+  private final long ttl;
+
+  private final Map<Long, Entry> entries;
+
+  /**
+   * Incremented by each write, a read only populates the cache if no write happened while it was in flight.
+   */
+  private long writes;
+
+  private long hits;
+
+  private long misses;
+
+  private long evictions;
+
+  private long remoteInvalidations;
+
+  /**
+   * @param delegate the store holding the data
+   * @param maxSize  the maximum number of cached items
+   * @param ttl      the time, in milliseconds, an item stays in the cache
+   */
+  public CachingProductStore(Store delegate, int maxSize, long ttl) {
+    this(delegate, maxSize, ttl, null);
+  }
+
+  /**
+   * @param delegate the store holding the data
+   * @param maxSize  the maximum number of cached items
+   * @param ttl      the time, in milliseconds, an item stays in the cache
+   * @param eventBus the event bus used to exchange invalidations with the other caches, may be {@code null}
+   */
+  public CachingProductStore(Store delegate, int maxSize, long ttl, EventBus eventBus) {
+    this.delegate = delegate;
+    this.eventBus = eventBus;
+    this.maxSize = maxSize;
+    this.ttl = ttl;
+    this.entries = new LinkedHashMap<Long, Entry>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+        if (size() > CachingProductStore.this.maxSize) {
+          evictions++;
+          return true;
+        }
+        return false;
+      }
+    };
+    if (eventBus != null) {
+      eventBus.<JsonObject>consumer(INVALIDATIONS_ADDRESS, msg -> {
+        JsonObject body = msg.body();
+        if (!origin.equals(body.getString("origin"))) {
+          synchronized (this) {
+            remoteInvalidations++;
+            evict(body.getLong("id"));
+          }
+        }
+      });
+    }
+  }
+
+  @Override
+  public Single<JsonObject> create(JsonObject item) {
+    return delegate.create(item)
+      .doOnSuccess(json -> invalidate(json.getLong("id")));
+  }
+
+  @Override
+  public Single<JsonObject> create(long id, JsonObject item) {
+    return delegate.create(id, item)
+      .doOnSuccess(json -> invalidate(id));
+  }
+
+  @Override
+  public Observable<JsonObject> readAll() {
+    return delegate.readAll();
+  }
+
+  @Override
+  public Observable<JsonObject> streamAll() {
+    return delegate.streamAll();
+  }
+
+  @Override
+  public Observable<JsonObject> readAll(long after, int limit) {
+    return delegate.readAll(after, limit);
+  }
+
+  @Override
+  public Observable<JsonObject> search(ProductQuery query) {
+    return delegate.search(query);
+  }
+
+  @Override
+  public Single<JsonObject> read(long id) {
+    return Single.defer(() -> {
+      long version;
+      synchronized (this) {
+        Entry entry = entries.get(id);
+        if (entry != null && entry.expiration > System.currentTimeMillis()) {
+          hits++;
+          return Single.just(entry.item.copy());
+        }
+        if (entry != null) {
+          entries.remove(id);
+          evictions++;
+        }
+        misses++;
+        version = writes;
+      }
+      return delegate.read(id)
+        .doOnSuccess(json -> {
+          synchronized (this) {
+            if (version == writes) {
+              entries.put(id, new Entry(json.copy(), System.currentTimeMillis() + ttl));
+            }
+          }
+        });
+    });
+  }
+
+  @Override
+  public Completable update(long id, JsonObject item, long version) {
+    return delegate.update(id, item, version)
+      .doOnTerminate(() -> invalidate(id));
+  }
+
+  @Override
+  public Single<JsonObject> adjustStock(long id, long delta, boolean floor) {
+    return delegate.adjustStock(id, delta, floor)
+      .doAfterTerminate(() -> invalidate(id));
+  }
+
+  @Override
+  public Completable delete(long id) {
+    return delegate.delete(id)
+      .doOnTerminate(() -> invalidate(id));
+  }
+
+  @Override
+  public Single<List<JsonObject>> bulk(List<JsonObject> operations) {
+    return delegate.bulk(operations)
+      .doAfterTerminate(() -> {
+        for (JsonObject operation : operations) {
+          if (operation != null && operation.getValue("id") instanceof Number) {
+            invalidate(operation.getLong("id"));
+          }
+        }
+      });
+  }
+
+  /**
+   * @return the hit, miss, eviction and remote invalidation counters and the current size of the cache
+   */
+  public synchronized JsonObject stats() {
+    return new JsonObject()
+      .put("size", entries.size())
+      .put("maxSize", maxSize)
+      .put("hits", hits)
+      .put("misses", misses)
+      .put("evictions", evictions)
+      .put("remoteInvalidations", remoteInvalidations);
+  }
+
+  private void invalidate(long id) {
+    evict(id);
+    if (eventBus != null) {
+      // the writes counter is local to this cache, so only the id is published
+      eventBus.publish(INVALIDATIONS_ADDRESS, new JsonObject()
+        .put("id", id)
+        .put("origin", origin));
+    }
+  }
+
+  private synchronized void evict(long id) {
+    entries.remove(id);
+    writes++;
+  }
+
+  private static class Entry {
+    private final JsonObject item;
+    private final long expiration;
+
+    private Entry(JsonObject item, long expiration) {
+      this.item = item;
+      this.expiration = expiration;
+    }
+  }
+}
@@ -0,0 +1,146 @@
+package io.openshift.example.service.impl;
+
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+import io.vertx.rxjava.core.Vertx;
+import io.vertx.rxjava.core.eventbus.EventBus;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * The sequence of the changes made to the items through this process, shared by the verticle instances of a Vert.x
+ * instance. The changes made through the other processes, such as the other pods, are not seen.
+ * <p>
+ * Each change gets the next sequence number and is published on {@link #ADDRESS}, in sequence order. The most recent
+ * changes are kept so a client can resume from the last change it received. The sequence restarts with each process,
+ * so the positions also contain the epoch of the log, a random id.
+ */
+public class ChangeLog {
+
+  public static final String ADDRESS = "products.changes";
+
+  public static final String CREATED = "created";
+
+  public static final String UPDATED = "updated";
+
+  public static final String DELETED = "deleted";
+
+  private static final String SHARED_MAP = "products.changes";
+
+  private final EventBus eventBus;
+
+  private final int capacity;
+
+  private final String epoch = UUID.randomUUID().toString().substring(0, 8);
+
+  private final Deque<JsonObject> recent = new ArrayDeque<>();
+
+  private long sequence;
+
+  /**
+   * @param eventBus the event bus the changes are published on
+   * @param capacity the number of changes kept for the clients resuming
+   */
+  public ChangeLog(EventBus eventBus, int capacity) {
+    this.eventBus = eventBus;
+    this.capacity = capacity;
+  }
+
+  /**
+   * Gets the log shared by the verticle instances of the given Vert.x instance, creating it if needed.
+   */
+  public static ChangeLog createShared(Vertx vertx, int capacity) {
+    LocalMap<String, Holder> map = vertx.getDelegate().sharedData().getLocalMap(SHARED_MAP);
+    synchronized (ChangeLog.class) {
+      Holder holder = map.get(SHARED_MAP);
+      if (holder == null) {
+        holder = new Holder(new ChangeLog(vertx.eventBus(), capacity));
+        map.put(SHARED_MAP, holder);
+      }
+      return holder.log;
+    }
+  }
+
+  /**
+   * Records and publishes a change.
+   *
+   * @param type one of {@link #CREATED}, {@link #UPDATED} or {@link #DELETED}
+   * @param id   the id of the item
+   * @param item the new state of the item, {@code null} for a deletion
+   */
+  public synchronized void append(String type, long id, JsonObject item) {
+    JsonObject change = new JsonObject()
+      .put("position", position(++sequence))
+      .put("type", type)
+      .put("id", id);
+    if (item != null) {
+      change.put("item", item.copy());
+    }
+    recent.addLast(change);
+    if (recent.size() > capacity) {
+      recent.removeFirst();
+    }
+    // published while holding the lock, so the consumers receive the changes in sequence order
+    eventBus.publish(ADDRESS, change);
+  }
+
+  /**
+   * @return the position of the last change
+   */
+  public synchronized String position() {
+    return position(sequence);
+  }
+
+  /**
+   * @param position the position of the last change seen by a client
+   * @return the changes after this position, or {@code null} when some of them are not kept anymore or the position
+   * comes from another epoch
+   */
+  public synchronized List<JsonObject> since(String position) {
+    long after = sequence(position);
+    if (after < 0 || after > sequence || (after < sequence - recent.size())) {
+      return null;
+    }
+    List<JsonObject> changes = new ArrayList<>();
+    for (JsonObject change : recent) {
+      if (sequence(change.getString("position")) > after) {
+        changes.add(change);
+      }
+    }
+    return changes;
+  }
+
+  /**
+   * @return the sequence number of a position of this log, {@code -1} when the position is invalid or comes from
+   * another epoch
+   */
+  public long sequence(String position) {
+    int separator = position == null ? -1 : position.lastIndexOf('-');
+    if (separator < 0 || !epoch.equals(position.substring(0, separator))) {
+      return -1;
+    }
+    try {
+      return Long.parseLong(position.substring(separator + 1));
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  private String position(long sequence) {
+    return epoch + "-" + sequence;
+  }
+
+  private static final class Holder implements Shareable {
+
+    private final ChangeLog log;
+
+    private Holder(ChangeLog log) {
+      this.log = log;
+    }
+  }
+}
@@ -0,0 +1,176 @@
+package io.openshift.example.service.impl;
+
+import io.openshift.example.service.StoreUnavailableException;
+import io.openshift.example.service.VersionMismatchException;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+import io.vertx.rxjava.core.Vertx;
+import rx.Observable;
+
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Stops calling a failing store for a while, so the requests fail at once instead of waiting for it to fail.
+ * <p>
+ * The breaker is closed while the calls succeed. After a number of consecutive failures, it opens and the calls fail
+ * with a {@link StoreUnavailableException} without reaching the store. Once the reset timeout is elapsed, it is
+ * half-open: a single call goes through, as a probe, and closes the breaker if it succeeds or opens it again if it
+ * fails. The errors reporting a wrong request, such as an unknown item, are not failures of the store.
+ * <p>
+ * One instance is shared by all the verticle instances of a Vert.x instance, see
+ * {@link #createShared(Vertx, int, long)}.
+ */
+public class CircuitBreaker {
+
+  private static final String SHARED_MAP = "store.circuit-breaker";
+
+  public enum State {
+    CLOSED, OPEN, HALF_OPEN
+  }
+
+  private final int maxFailures;
+
+  private final long resetTimeout;
+
+  private State state = State.CLOSED;
+
+  private int failures;
+
+  private long openedAt;
+
+  private boolean probing;
+
+  /**
+   * @param maxFailures  the number of consecutive failures opening the breaker
+   * @param resetTimeout the time, in milliseconds, the breaker stays open before letting a probe through
+   */
+  public CircuitBreaker(int maxFailures, long resetTimeout) {
+    this.maxFailures = maxFailures;
+    this.resetTimeout = TimeUnit.MILLISECONDS.toNanos(resetTimeout);
+  }
+
+  /**
+   * Gets the breaker shared by the verticle instances of the given Vert.x instance, creating it if needed.
+   */
+  public static CircuitBreaker createShared(Vertx vertx, int maxFailures, long resetTimeout) {
+    return createShared(vertx, SHARED_MAP, maxFailures, resetTimeout);
+  }
+
+  /**
+   * Gets the breaker of the given name shared by the verticle instances of the given Vert.x instance, creating it if
+   * needed, for the stores having a breaker each.
+   */
+  public static CircuitBreaker createShared(Vertx vertx, String name, int maxFailures, long resetTimeout) {
+    LocalMap<String, Holder> map = vertx.getDelegate().sharedData().getLocalMap(SHARED_MAP);
+    synchronized (CircuitBreaker.class) {
+      Holder holder = map.get(name);
+      if (holder == null) {
+        holder = new Holder(new CircuitBreaker(maxFailures, resetTimeout));
+        map.put(name, holder);
+      }
+      return holder.breaker;
+    }
+  }
+
+  /**
+   * Makes a call, when the breaker lets it through. The call is made on subscription.
+   */
+  public <T> Observable<T> protect(Observable<T> call) {
+    return Observable.defer(() -> {
+      long retryAfter = acquire(System.nanoTime());
+      if (retryAfter > 0) {
+        return Observable.error(new StoreUnavailableException("the store is unavailable", retryAfter));
+      }
+      AtomicBoolean done = new AtomicBoolean();
+      return call
+        .doOnCompleted(() -> {
+          if (done.compareAndSet(false, true)) {
+            succeeded();
+          }
+        })
+        .doOnError(err -> {
+          if (done.compareAndSet(false, true)) {
+            if (isFailure(err)) {
+              failed(System.nanoTime());
+            } else {
+              succeeded();
+            }
+          }
+        })
+        .doOnUnsubscribe(() -> {
+          if (done.compareAndSet(false, true)) {
+            cancelled();
+          }
+        });
+    });
+  }
+
+  public synchronized State state() {
+    if (state == State.OPEN && System.nanoTime() - openedAt >= resetTimeout) {
+      return State.HALF_OPEN;
+    }
+    return state;
+  }
+
+  /**
+   * @return {@code 0} when the call can be made, otherwise the time, in milliseconds, before a probe is let through
+   */
+  private synchronized long acquire(long now) {
+    if (state == State.OPEN) {
+      long remaining = openedAt + resetTimeout - now;
+      if (remaining > 0) {
+        return Math.max(1, TimeUnit.NANOSECONDS.toMillis(remaining));
+      }
+      state = State.HALF_OPEN;
+    }
+    if (state == State.HALF_OPEN) {
+      if (probing) {
+        // wait for the outcome of the probe
+        return TimeUnit.NANOSECONDS.toMillis(resetTimeout);
+      }
+      probing = true;
+    }
+    return 0;
+  }
+
+  private synchronized void succeeded() {
+    if (state != State.OPEN) {
+      state = State.CLOSED;
+      failures = 0;
+      probing = false;
+    }
+  }
+
+  private synchronized void failed(long now) {
+    if (state == State.HALF_OPEN || (state == State.CLOSED && ++failures >= maxFailures)) {
+      state = State.OPEN;
+      openedAt = now;
+      probing = false;
+    }
+  }
+
+  private synchronized void cancelled() {
+    if (state == State.HALF_OPEN) {
+      // no outcome, let another probe through
+      probing = false;
+    }
+  }
+
+  static boolean isFailure(Throwable err) {
+    return !(err instanceof NoSuchElementException
+      || err instanceof IllegalArgumentException
+      || err instanceof IllegalStateException
+      || err instanceof VersionMismatchException);
+  }
+
+  private static final class Holder implements Shareable {
+
+    private final CircuitBreaker breaker;
+
+    private Holder(CircuitBreaker breaker) {
+      this.breaker = breaker;
+    }
+  }
+}
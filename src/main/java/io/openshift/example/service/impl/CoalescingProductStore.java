@@ -0,0 +1,296 @@
+package io.openshift.example.service.impl;
+
+import io.openshift.example.service.ProductQuery;
+import io.openshift.example.service.Store;
+import io.vertx.core.json.JsonObject;
+import io.vertx.rxjava.core.Vertx;
+import rx.Completable;
+import rx.Observable;
+import rx.Single;
+import rx.SingleSubscriber;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Merges the stock adjustments of each item before writing them to another store (write-behind).
+ * <p>
+ * The deltas given to {@link #adjustStock(long, long, boolean)} are held in memory for a short window, or until a
+ * number of adjustments are pending, then the deltas of each item are summed and written with a single update. Each
+ * caller is only notified once the update holding its delta is written, and receives the item as updated by the
+ * merged delta. Reads return the written items, without the deltas not written yet, so the version of an item read
+ * always describes the stock read with it. An update expecting this version is checked once the pending deltas of the
+ * item are written, and rejected if some were, as the item changed since it was read.
+ * <p>
+ * Merged adjustments are seen as concurrent: when their sum does not cross the floor, there is an order in which none
+ * of them crosses it (the increments first). When it does, the adjustments are written one by one, in order, so only
+ * the ones crossing the floor fail.
+ * <p>
+ * A read of an item whose adjustments are being written waits for the write, so it neither misses them nor counts them
+ * twice, and the lists wait for all the writes in progress. The adjustments of an item are written in order, a write
+ * waiting for the previous one.
+ * <p>
+ * The pending adjustments are held by each store, so by each verticle instance: only the adjustments received by the
+ * same instance are merged, and the floor is checked against the adjustments of this instance.
+ */
+public class CoalescingProductStore implements Store {
+
+  private final Store delegate;
+
+  private final Vertx vertx;
+
+  private final long window;
+
+  private final int maxPending;
+
+  /**
+   * The adjustments not written yet, per item.
+   */
+  private Map<Long, Batch> pending = new LinkedHashMap<>();
+
+  private int pendingCount;
+
+  /**
+   * The writes in progress, per item, completed once every adjustment they hold is written or failed.
+   */
+  private final Map<Long, Completable> writing = new HashMap<>();
+
+  private long timer = -1;
+
+  /**
+   * @param delegate   the store holding the data
+   * @param vertx      the Vert.x instance used to schedule the writes
+   * @param window     the time, in milliseconds, an adjustment is held before being written
+   * @param maxPending the number of pending adjustments triggering a write before the end of the window
+   */
+  public CoalescingProductStore(Store delegate, Vertx vertx, long window, int maxPending) {
+    this.delegate = delegate;
+    this.vertx = vertx;
+    this.window = window;
+    this.maxPending = maxPending;
+  }
+
+  @Override
+  public Single<JsonObject> adjustStock(long id, long delta, boolean floor) {
+    return Single.create(subscriber -> {
+      boolean full;
+      synchronized (this) {
+        pending.computeIfAbsent(id, Batch::new).add(new Adjustment(delta, floor, subscriber));
+        pendingCount++;
+        full = pendingCount >= maxPending;
+        if (!full && timer == -1) {
+          timer = vertx.setTimer(window, t -> flushAll());
+        }
+      }
+      if (full) {
+        flushAll();
+      }
+    });
+  }
+
+  private void flushAll() {
+    Map<Long, Batch> batches;
+    synchronized (this) {
+      if (timer != -1) {
+        vertx.cancelTimer(timer);
+        timer = -1;
+      }
+      batches = pending;
+      pending = new LinkedHashMap<>();
+      pendingCount = 0;
+    }
+    for (Batch batch : batches.values()) {
+      flush(batch);
+    }
+  }
+
+  /**
+   * Writes the pending adjustments of an item, if any, so a write replacing the item is not followed by older deltas.
+   */
+  private Completable drain(long id) {
+    return Completable.defer(() -> {
+      Batch batch;
+      synchronized (this) {
+        batch = pending.remove(id);
+        if (batch != null) {
+          pendingCount -= batch.adjustments.size();
+        }
+      }
+      return batch == null ? Completable.complete() : flush(batch);
+    });
+  }
+
+  /**
+   * Starts writing the adjustments of a batch, once the previous write of the item, if any, is done.
+   *
+   * @return a completable completed once every adjustment of the batch is written or failed, it never fails itself as
+   * the outcome of each adjustment is reported to its caller
+   */
+  private Completable flush(Batch batch) {
+    Completable written;
+    synchronized (this) {
+      Completable previous = writing.get(batch.id);
+      Completable write = previous == null ? write(batch) : previous.andThen(write(batch));
+      written = write.toObservable().cache().toCompletable();
+      writing.put(batch.id, written);
+    }
+    written.subscribe(() -> {
+      synchronized (this) {
+        writing.remove(batch.id, written);
+      }
+    });
+    return written;
+  }
+
+  private Completable write(Batch batch) {
+    return delegate.adjustStock(batch.id, batch.delta, batch.floor)
+      .doOnSuccess(json -> {
+        for (Adjustment adjustment : batch.adjustments) {
+          adjustment.subscriber.onSuccess(json.copy());
+        }
+      })
+      .toCompletable()
+      .onErrorResumeNext(err -> {
+        if (err instanceof IllegalStateException && batch.adjustments.size() > 1) {
+          // the merged delta crosses the floor, some of the adjustments may not
+          return Observable.from(batch.adjustments)
+            .concatMap(adjustment ->
+              delegate.adjustStock(batch.id, adjustment.delta, adjustment.floor)
+                .doOnSuccess(adjustment.subscriber::onSuccess)
+                .doOnError(adjustment.subscriber::onError)
+                .toObservable()
+                .onErrorResumeNext(Observable.empty()))
+            .toCompletable();
+        }
+        for (Adjustment adjustment : batch.adjustments) {
+          adjustment.subscriber.onError(err);
+        }
+        return Completable.complete();
+      });
+  }
+
+  /**
+   * @return a completable completed once the adjustments of the item being written, if any, are written
+   */
+  private Completable written(long id) {
+    return Completable.defer(() -> {
+      synchronized (this) {
+        Completable write = writing.get(id);
+        return write == null ? Completable.complete() : write;
+      }
+    });
+  }
+
+  /**
+   * @return a completable completed once the adjustments being written are written
+   */
+  private Completable writtenAll() {
+    return Completable.defer(() -> {
+      synchronized (this) {
+        return writing.isEmpty() ? Completable.complete() : Completable.merge(new ArrayList<>(writing.values()));
+      }
+    });
+  }
+
+  @Override
+  public Single<JsonObject> create(JsonObject item) {
+    return delegate.create(item);
+  }
+
+  @Override
+  public Single<JsonObject> create(long id, JsonObject item) {
+    return delegate.create(id, item);
+  }
+
+  @Override
+  public Observable<JsonObject> readAll() {
+    return writtenAll().andThen(Observable.defer(delegate::readAll));
+  }
+
+  @Override
+  public Observable<JsonObject> streamAll() {
+    return writtenAll().andThen(Observable.defer(delegate::streamAll));
+  }
+
+  @Override
+  public Observable<JsonObject> readAll(long after, int limit) {
+    return writtenAll().andThen(Observable.defer(() -> delegate.readAll(after, limit)));
+  }
+
+  @Override
+  public Observable<JsonObject> search(ProductQuery query) {
+    // the stock filters apply to the written stocks
+    return writtenAll().andThen(Observable.defer(() -> delegate.search(query)));
+  }
+
+  @Override
+  public Single<JsonObject> read(long id) {
+    return written(id).andThen(Single.defer(() -> delegate.read(id)));
+  }
+
+  @Override
+  public Completable update(long id, JsonObject item, long version) {
+    return drain(id).andThen(delegate.update(id, item, version));
+  }
+
+  @Override
+  public Completable delete(long id) {
+    return drain(id).andThen(delegate.delete(id));
+  }
+
+  @Override
+  public Single<List<JsonObject>> bulk(List<JsonObject> operations) {
+    List<Completable> drains = new ArrayList<>();
+    for (JsonObject operation : operations) {
+      if (operation != null && operation.getValue("id") instanceof Number) {
+        drains.add(drain(operation.getLong("id")));
+      }
+    }
+    return Completable.merge(drains).andThen(delegate.bulk(operations));
+  }
+
+  /**
+   * The pending adjustments of an item.
+   */
+  private static class Batch {
+
+    private final long id;
+
+    private final List<Adjustment> adjustments = new ArrayList<>();
+
+    private long delta;
+
+    /**
+     * Whether at least one of the adjustments must not cross the floor.
+     */
+    private boolean floor;
+
+    private Batch(long id) {
+      this.id = id;
+    }
+
+    private void add(Adjustment adjustment) {
+      adjustments.add(adjustment);
+      delta += adjustment.delta;
+      floor |= adjustment.floor;
+    }
+  }
+
+  private static class Adjustment {
+
+    private final long delta;
+
+    private final boolean floor;
+
+    private final SingleSubscriber<? super JsonObject> subscriber;
+
+    private Adjustment(long delta, boolean floor, SingleSubscriber<? super JsonObject> subscriber) {
+      this.delta = delta;
+      this.floor = floor;
+      this.subscriber = subscriber;
+    }
+  }
+}
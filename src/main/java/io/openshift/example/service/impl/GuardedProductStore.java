@@ -0,0 +1,148 @@
+package io.openshift.example.service.impl;
+
+import io.openshift.example.service.ProductQuery;
+import io.openshift.example.service.Store;
+import io.openshift.example.service.StoreTimeoutException;
+import io.openshift.example.service.StoreUnavailableException;
+import io.vertx.core.json.JsonObject;
+import io.vertx.rxjava.core.RxHelper;
+import io.vertx.rxjava.core.Vertx;
+import rx.Completable;
+import rx.Observable;
+import rx.Scheduler;
+import rx.Single;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Bounds the time spent calling another store, and stops calling it while it fails.
+ * <p>
+ * Each call has a deadline, depending on its kind: reads, writes and bulk operations. A call missing it is cancelled,
+ * which releases its connection, and fails with a {@link StoreUnavailableException} for the reads, which may be retried,
+ * or with a {@link StoreTimeoutException} for the writes, which may still be applied by the store. The lists must
+ * produce their first item within the read deadline, the following ones may take as long as the client takes to read
+ * them. The calls go through a {@link CircuitBreaker}, timeouts being failures.
+ */
+public class GuardedProductStore implements Store {
+
+  private final Store delegate;
+
+  private final CircuitBreaker breaker;
+
+  private final Scheduler scheduler;
+
+  private final long readTimeout;
+
+  private final long writeTimeout;
+
+  private final long bulkTimeout;
+
+  /**
+   * @param delegate     the store to call
+   * @param breaker      the circuit breaker of the store
+   * @param vertx        the Vert.x instance, the deadlines fire on the event loop of the caller
+   * @param readTimeout  the deadline, in milliseconds, of the reads
+   * @param writeTimeout the deadline, in milliseconds, of the writes
+   * @param bulkTimeout  the deadline, in milliseconds, of the bulk operations
+   */
+  public GuardedProductStore(Store delegate, CircuitBreaker breaker, Vertx vertx,
+                             long readTimeout, long writeTimeout, long bulkTimeout) {
+    this.delegate = delegate;
+    this.breaker = breaker;
+    this.scheduler = RxHelper.scheduler(vertx.getOrCreateContext());
+    this.readTimeout = readTimeout;
+    this.writeTimeout = writeTimeout;
+    this.bulkTimeout = bulkTimeout;
+  }
+
+  private <T> Observable<T> guard(Observable<T> call, long timeout, boolean write) {
+    // only the first item has a deadline, the next ones are requested at the pace of the client
+    Observable<T> bounded = call.timeout(() -> Observable.timer(timeout, TimeUnit.MILLISECONDS, scheduler),
+      item -> Observable.never());
+    return breaker.protect(bounded)
+      .onErrorResumeNext(err -> {
+        if (err instanceof TimeoutException && write) {
+          return Observable.error(new StoreTimeoutException(
+            "the store did not acknowledge the write within " + timeout + " ms, it may have been applied"));
+        }
+        if (err instanceof TimeoutException) {
+          return Observable.error(
+            new StoreUnavailableException("the store did not answer within " + timeout + " ms", timeout));
+        }
+        return Observable.error(err);
+      });
+  }
+
+  private <T> Observable<T> guard(Observable<T> call, long timeout) {
+    return guard(call, timeout, false);
+  }
+
+  private <T> Single<T> guard(Single<T> call, long timeout) {
+    return guard(call.toObservable(), timeout, false).toSingle();
+  }
+
+  private <T> Single<T> guardWrite(Single<T> call, long timeout) {
+    return guard(call.toObservable(), timeout, true).toSingle();
+  }
+
+  private Completable guardWrite(Completable call, long timeout) {
+    return guard(call.toObservable(), timeout, true).toCompletable();
+  }
+
+  @Override
+  public Single<JsonObject> create(JsonObject item) {
+    return guardWrite(delegate.create(item), writeTimeout);
+  }
+
+  @Override
+  public Single<JsonObject> create(long id, JsonObject item) {
+    return guardWrite(delegate.create(id, item), writeTimeout);
+  }
+
+  @Override
+  public Observable<JsonObject> readAll() {
+    return guard(delegate.readAll(), readTimeout);
+  }
+
+  @Override
+  public Observable<JsonObject> streamAll() {
+    return guard(delegate.streamAll(), readTimeout);
+  }
+
+  @Override
+  public Observable<JsonObject> readAll(long after, int limit) {
+    return guard(delegate.readAll(after, limit), readTimeout);
+  }
+
+  @Override
+  public Observable<JsonObject> search(ProductQuery query) {
+    return guard(delegate.search(query), readTimeout);
+  }
+
+  @Override
+  public Single<JsonObject> read(long id) {
+    return guard(delegate.read(id), readTimeout);
+  }
+
+  @Override
+  public Completable update(long id, JsonObject item, long version) {
+    return guardWrite(delegate.update(id, item, version), writeTimeout);
+  }
+
+  @Override
+  public Single<JsonObject> adjustStock(long id, long delta, boolean floor) {
+    return guardWrite(delegate.adjustStock(id, delta, floor), writeTimeout);
+  }
+
+  @Override
+  public Completable delete(long id) {
+    return guardWrite(delegate.delete(id), writeTimeout);
+  }
+
+  @Override
+  public Single<List<JsonObject>> bulk(List<JsonObject> operations) {
+    return guardWrite(delegate.bulk(operations), bulkTimeout);
+  }
+}
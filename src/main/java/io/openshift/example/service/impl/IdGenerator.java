@@ -0,0 +1,79 @@
+package io.openshift.example.service.impl;
+
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+import io.vertx.rxjava.core.Vertx;
+
+/**
+ * Generates ids unique across the nodes of the application without any coordination, in place of the sequence of a
+ * database.
+ * <p>
+ * An id is made of the milliseconds elapsed since 2020 (41 bits), the number of the node (6 bits) and a sequence
+ * (6 bits), so the ids fit in the 53 bits a JSON number keeps exactly, and grow with time as the cursors expect. When
+ * the 64 ids of a millisecond are used, the next ones borrow the following millisecond, so the ids never repeat even if
+ * the clock goes back, the time of the ids catching up with the clock once the burst is over.
+ * <p>
+ * Each node must have its own number. One instance is shared by all the verticle instances of a Vert.x instance, see
+ * {@link #createShared(Vertx, int)}.
+ */
+public class IdGenerator implements Shareable {
+
+  private static final String SHARED_MAP = "store.ids";
+
+  /**
+   * 2020-01-01T00:00:00Z.
+   */
+  private static final long EPOCH = 1_577_836_800_000L;
+
+  private static final int NODE_BITS = 6;
+
+  private static final int SEQUENCE_BITS = 6;
+
+  static final int MAX_NODE = (1 << NODE_BITS) - 1;
+
+  private static final long SEQUENCE_MASK = (1 << SEQUENCE_BITS) - 1;
+
+  private final long node;
+
+  private long time;
+
+  private long sequence;
+
+  /**
+   * @param node the number of the node, from 0 to 63
+   */
+  public IdGenerator(int node) {
+    if (node < 0 || node > MAX_NODE) {
+      throw new IllegalArgumentException("The node must be between 0 and " + MAX_NODE);
+    }
+    this.node = node;
+  }
+
+  /**
+   * Gets the generator shared by the verticle instances of the given Vert.x instance, creating it if needed.
+   */
+  public static IdGenerator createShared(Vertx vertx, int node) {
+    LocalMap<String, IdGenerator> map = vertx.getDelegate().sharedData().getLocalMap(SHARED_MAP);
+    synchronized (IdGenerator.class) {
+      IdGenerator generator = map.get(SHARED_MAP);
+      if (generator == null) {
+        generator = new IdGenerator(node);
+        map.put(SHARED_MAP, generator);
+      }
+      return generator;
+    }
+  }
+
+  public synchronized long next() {
+    long now = System.currentTimeMillis() - EPOCH;
+    if (now > time) {
+      time = now;
+      sequence = 0;
+    } else if (++sequence > SEQUENCE_MASK) {
+      // all the ids of the millisecond are used, or the clock went back
+      time++;
+      sequence = 0;
+    }
+    return (time << (NODE_BITS + SEQUENCE_BITS)) | (node << SEQUENCE_BITS) | sequence;
+  }
+}
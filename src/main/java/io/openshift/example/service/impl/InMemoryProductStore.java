@@ -0,0 +1,462 @@
+package io.openshift.example.service.impl;
+
+import io.openshift.example.service.ProductQuery;
+import io.openshift.example.service.Store;
+import io.openshift.example.service.VersionMismatchException;
+import io.vertx.core.json.DecodeException;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+import io.vertx.rxjava.core.Vertx;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import rx.Completable;
+import rx.Observable;
+import rx.Single;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static io.openshift.example.service.ProductValidator.validateRequestBody;
+
+/**
+ * A store keeping the items in memory, for the tests, the benchmarks and the nodes not needing a database.
+ * <p>
+ * The items are immutable values in a concurrent map sorted by id, replaced with compare-and-set loops, so neither
+ * reads nor writes take a lock. One instance is shared by all the verticle instances of a Vert.x instance, see
+ * {@link #createShared(Vertx, String)}.
+ * <p>
+ * When given a snapshot file, each write is appended to it by a background thread, and the file is replayed, then
+ * compacted, when the store is created. The writes are acknowledged before being appended, so the last ones may be lost
+ * if the process crashes. The records of an item can be appended out of order, the replay keeps the highest version.
+ */
+public class InMemoryProductStore implements Store {
+
+  private static final Logger LOG = LoggerFactory.getLogger(InMemoryProductStore.class);
+
+  private static final String SHARED_MAP = "products.in-memory";
+
+  private final NavigableMap<Long, Product> items = new ConcurrentSkipListMap<>();
+
+  private final AtomicLong ids = new AtomicLong();
+
+  private final Journal journal;
+
+  /**
+   * @param snapshot the path of the snapshot file, {@code null} to keep the items in memory only
+   */
+  public InMemoryProductStore(String snapshot) {
+    this.journal = snapshot == null ? null : new Journal(Paths.get(snapshot), items, ids);
+  }
+
+  /**
+   * Gets the store shared by the verticle instances of the given Vert.x instance, creating it if needed. Creating it
+   * replays the snapshot file, so it should be done on a worker thread first.
+   */
+  public static InMemoryProductStore createShared(Vertx vertx, String snapshot) {
+    LocalMap<String, Holder> map = vertx.getDelegate().sharedData().getLocalMap(SHARED_MAP);
+    synchronized (InMemoryProductStore.class) {
+      Holder holder = map.get(SHARED_MAP);
+      if (holder == null) {
+        holder = new Holder(new InMemoryProductStore(snapshot));
+        map.put(SHARED_MAP, holder);
+      }
+      return holder.store;
+    }
+  }
+
+  /**
+   * @return the number of writes that could not be appended to the snapshot file, {@code 0} without a snapshot file
+   */
+  public long snapshotFailures() {
+    return journal == null ? 0 : journal.failures.get();
+  }
+
+  /**
+   * @return whether the last write could not be appended to the snapshot file, so the writes would be lost on a restart
+   */
+  public boolean isSnapshotFailing() {
+    return journal != null && journal.failing;
+  }
+
+  @Override
+  public Single<JsonObject> create(JsonObject item) {
+    Optional<Exception> error = validateRequestBody(item);
+    if (error.isPresent()) {
+      return Single.error(error.get());
+    }
+
+    return Single.fromCallable(() -> {
+      Product product = new Product(ids.incrementAndGet(), item.getString("name"), item.getInteger("stock"), 0);
+      items.put(product.id, product);
+      append(product);
+      return item.put("id", product.id).put("version", 0L);
+    });
+  }
+
+  @Override
+  public Single<JsonObject> create(long id, JsonObject item) {
+    Optional<Exception> error = validateRequestBody(item);
+    if (error.isPresent()) {
+      return Single.error(error.get());
+    }
+
+    return Single.fromCallable(() -> {
+      Product product = new Product(id, item.getString("name"), item.getInteger("stock"), 0);
+      if (items.putIfAbsent(id, product) != null) {
+        throw new IllegalStateException("Item '" + id + "' already exists");
+      }
+      // the generated ids stay above the given ones
+      ids.accumulateAndGet(id, Math::max);
+      append(product);
+      return item.put("id", id).put("version", 0L);
+    });
+  }
+
+  @Override
+  public Observable<JsonObject> readAll() {
+    return Observable.defer(() -> Observable.from(items.values())).map(Product::toJson);
+  }
+
+  @Override
+  public Observable<JsonObject> readAll(long after, int limit) {
+    return Observable.defer(() -> Observable.from(items.tailMap(after, false).values()))
+      .limit(limit)
+      .map(Product::toJson);
+  }
+
+  @Override
+  public Observable<JsonObject> search(ProductQuery query) {
+    return Observable.defer(() -> {
+      if (query.getSort() == ProductQuery.Sort.ID) {
+        // already in order, stop as soon as the page is full
+        NavigableMap<Long, Product> range = query.isDescending() ? items.descendingMap() : items;
+        if (query.getAfter() != null) {
+          range = range.tailMap(query.getAfter(), false);
+        }
+        return Observable.from(range.values()).filter(product -> product.matches(query));
+      }
+      List<Product> matching = new ArrayList<>();
+      for (Product product : items.values()) {
+        if (product.matches(query) && (query.getAfter() == null || product.follows(query))) {
+          matching.add(product);
+        }
+      }
+      Comparator<Product> comparator = query.getSort() == ProductQuery.Sort.NAME
+        ? Comparator.comparing((Product product) -> product.name)
+        : Comparator.comparingLong((Product product) -> product.stock);
+      comparator = comparator.thenComparingLong(product -> product.id);
+      matching.sort(query.isDescending() ? comparator.reversed() : comparator);
+      return Observable.from(matching);
+    })
+      .limit(query.getLimit())
+      .map(Product::toJson);
+  }
+
+  @Override
+  public Single<JsonObject> read(long id) {
+    return Single.defer(() -> {
+      Product product = items.get(id);
+      if (product == null) {
+        return Single.error(new NoSuchElementException("Item '" + id + "' not found"));
+      }
+      return Single.just(product.toJson());
+    });
+  }
+
+  @Override
+  public Completable update(long id, JsonObject item, long version) {
+    Optional<Exception> error = validateRequestBody(item);
+    if (error.isPresent()) {
+      return Completable.error(error.get());
+    }
+
+    return Completable.fromAction(() -> {
+      while (true) {
+        Product current = items.get(id);
+        if (current == null) {
+          throw new NoSuchElementException("Unknown item '" + id + "'");
+        }
+        if (version != ANY_VERSION && current.version != version) {
+          throw new VersionMismatchException(id, version);
+        }
+        Product next = new Product(id, item.getString("name"), item.getInteger("stock"), current.version + 1);
+        if (items.replace(id, current, next)) {
+          append(next);
+          return;
+        }
+      }
+    });
+  }
+
+  @Override
+  public Single<JsonObject> adjustStock(long id, long delta, boolean floor) {
+    return Single.fromCallable(() -> {
+      while (true) {
+        Product current = items.get(id);
+        if (current == null) {
+          throw new NoSuchElementException("Item '" + id + "' not found");
+        }
+        if (floor && current.stock + delta < 0) {
+          throw new IllegalStateException("Not enough stock for item '" + id + "'");
+        }
+        Product next = new Product(id, current.name, current.stock + delta, current.version + 1);
+        if (items.replace(id, current, next)) {
+          append(next);
+          return next.toJson();
+        }
+      }
+    });
+  }
+
+  @Override
+  public Completable delete(long id) {
+    return Completable.fromAction(() -> {
+      if (items.remove(id) == null) {
+        throw new NoSuchElementException("Unknown item '" + id + "'");
+      }
+      if (journal != null) {
+        journal.append(new JsonObject().put("op", "delete").put("id", id));
+      }
+    });
+  }
+
+  /**
+   * Executes the operations in order. Unlike the database stores, the other requests may see the first operations
+   * applied before the last ones.
+   */
+  @Override
+  public Single<List<JsonObject>> bulk(List<JsonObject> operations) {
+    return Single.defer(() -> {
+      JsonObject[] results = new JsonObject[operations.size()];
+      List<List<Integer>> runs = BulkOperations.plan(operations, results);
+      return Observable.from(runs)
+        .concatMapIterable(run -> run)
+        .concatMap(index -> execute(operations.get(index)).doOnSuccess(result -> results[index] = result).toObservable())
+        .toCompletable()
+        .andThen(Single.fromCallable(() -> Arrays.asList(results)));
+    });
+  }
+
+  private Single<JsonObject> execute(JsonObject operation) {
+    String type = operation.getString("op");
+    if (BulkOperations.CREATE.equals(type)) {
+      Long given = operation.getLong("id");
+      JsonObject item = operation.getJsonObject("item").copy();
+      return (given == null ? create(item) : create(given, item))
+        .map(json -> BulkOperations.success(201, json.getLong("id")));
+    }
+    long id = operation.getLong("id");
+    Completable completable = BulkOperations.UPDATE.equals(type)
+      ? update(id, operation.getJsonObject("item"), ANY_VERSION)
+      : delete(id);
+    return completable
+      .toSingleDefault(BulkOperations.success(BulkOperations.UPDATE.equals(type) ? 200 : 204, id))
+      .onErrorReturn(err -> BulkOperations.notFound(id));
+  }
+
+  private void append(Product product) {
+    if (journal != null) {
+      journal.append(product.toJson().put("op", "put"));
+    }
+  }
+
+  /**
+   * An item, never modified once in the map.
+   */
+  private static final class Product {
+
+    private final long id;
+
+    private final String name;
+
+    private final long stock;
+
+    private final long version;
+
+    private Product(long id, String name, long stock, long version) {
+      this.id = id;
+      this.name = name;
+      this.stock = stock;
+      this.version = version;
+    }
+
+    private static Product fromJson(JsonObject json) {
+      return new Product(json.getLong("id"), json.getString("name"), json.getLong("stock"), json.getLong("version"));
+    }
+
+    private JsonObject toJson() {
+      return new JsonObject()
+        .put("id", id)
+        .put("name", name)
+        .put("stock", stock)
+        .put("version", version);
+    }
+
+    private boolean matches(ProductQuery query) {
+      return (query.getNamePrefix() == null || name.startsWith(query.getNamePrefix()))
+        && (query.getNameContains() == null
+        || name.toLowerCase(Locale.ROOT).contains(query.getNameContains().toLowerCase(Locale.ROOT)))
+        && (query.getMinStock() == null || stock >= query.getMinStock())
+        && (query.getMaxStock() == null || stock <= query.getMaxStock());
+    }
+
+    /**
+     * @return whether the item follows the cursor of a query not sorted by id, in the order of the query
+     */
+    private boolean follows(ProductQuery query) {
+      Object value = query.getAfterValue();
+      int order;
+      if (query.getSort() == ProductQuery.Sort.NAME) {
+        order = name.compareTo((String) value);
+      } else {
+        // an unknown stock is after all the others
+        order = value == null ? -1 : Long.compare(stock, ((Number) value).longValue());
+      }
+      if (order == 0) {
+        order = Long.compare(id, query.getAfter());
+      }
+      return query.isDescending() ? order < 0 : order > 0;
+    }
+  }
+
+  /**
+   * The snapshot file: one JSON record per line, either the new state of an item or its deletion.
+   */
+  private static final class Journal {
+
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+      Thread thread = new Thread(r, "in-memory-store-journal");
+      thread.setDaemon(true);
+      return thread;
+    });
+
+    private final Path path;
+
+    private final BufferedWriter out;
+
+    /**
+     * The number of records that could not be appended.
+     */
+    private final AtomicLong failures = new AtomicLong();
+
+    /**
+     * Whether the last record could not be appended.
+     */
+    private volatile boolean failing;
+
+    private Journal(Path path, NavigableMap<Long, Product> items, AtomicLong ids) {
+      this.path = path;
+      try {
+        if (Files.exists(path)) {
+          replay(path, items, ids);
+        }
+        // rewrite the file with the current items only, so it does not grow forever
+        Path compacted = path.resolveSibling(path.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(compacted, StandardCharsets.UTF_8)) {
+          for (Product product : items.values()) {
+            writer.write(product.toJson().put("op", "put").encode());
+            writer.newLine();
+          }
+        }
+        Files.move(compacted, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        out = Files.newBufferedWriter(path, StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+      } catch (IOException e) {
+        throw new UncheckedIOException("Cannot open the snapshot file " + path, e);
+      }
+    }
+
+    private static void replay(Path path, NavigableMap<Long, Product> items, AtomicLong ids) throws IOException {
+      Set<Long> deleted = new HashSet<>();
+      try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+        int number = 0;
+        String following = reader.readLine();
+        while (following != null) {
+          String line = following;
+          following = reader.readLine();
+          number++;
+          if (line.isEmpty()) {
+            continue;
+          }
+          JsonObject record;
+          try {
+            record = new JsonObject(line);
+          } catch (DecodeException e) {
+            if (following == null) {
+              // the process stopped while appending the last record, the previous ones are complete
+              LOG.warn("Skipping the truncated last record of the snapshot file {}", path);
+              break;
+            }
+            throw new IOException("Invalid record on line " + number + " of the snapshot file " + path, e);
+          }
+          long id = record.getLong("id");
+          ids.accumulateAndGet(id, Math::max);
+          if ("delete".equals(record.getString("op"))) {
+            // the ids are never reused, a deletion is final
+            deleted.add(id);
+            items.remove(id);
+          } else if (!deleted.contains(id)) {
+            Product product = Product.fromJson(record);
+            items.merge(id, product, (current, next) -> next.version > current.version ? next : current);
+          }
+        }
+      }
+    }
+
+    private void append(JsonObject record) {
+      String line = record.encode();
+      writer.execute(() -> {
+        try {
+          out.write(line);
+          out.newLine();
+          out.flush();
+          if (failing) {
+            failing = false;
+            LOG.info("Appending to the snapshot file {} again", path);
+          }
+        } catch (IOException e) {
+          failures.incrementAndGet();
+          if (!failing) {
+            // logged once, until a record is appended again
+            failing = true;
+            LOG.error("Cannot append to the snapshot file {}, the writes will be lost on a restart", path, e);
+          }
+        }
+      });
+    }
+  }
+
+  /**
+   * Lets the store be kept in a local map, by reference.
+   */
+  private static final class Holder implements Shareable {
+
+    private final InMemoryProductStore store;
+
+    private Holder(InMemoryProductStore store) {
+      this.store = store;
+    }
+  }
+}
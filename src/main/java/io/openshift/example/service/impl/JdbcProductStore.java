@@ -1,18 +1,37 @@
 package io.openshift.example.service.impl;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Handler;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.sql.ResultSet;
 import io.vertx.ext.sql.SQLOptions;
 import io.vertx.rxjava.ext.jdbc.JDBCClient;
+import io.vertx.rxjava.ext.sql.SQLConnection;
 import io.vertx.rxjava.ext.sql.SQLRowStream;
+import io.openshift.example.service.ProductQuery;
 import io.openshift.example.service.Store;
+import io.openshift.example.service.VersionMismatchException;
 import rx.Completable;
 import rx.Observable;
 import rx.Single;
+import rx.functions.Action0;
+import rx.functions.Func1;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static io.openshift.example.service.ProductValidator.validateRequestBody;
 
 /**
  * The implementation of the store.
@@ -22,18 +41,172 @@ public class JdbcProductStore implements Store {
 
   private static final String INSERT = "INSERT INTO products (name, stock) VALUES (?, ?::BIGINT)";
 
-  private static final String SELECT_ONE = "SELECT * FROM products WHERE id = ?";
+  private static final String SELECT_ONE = "SELECT id, name, stock, version FROM products WHERE id = ?";
+
+  private static final String SELECT_ALL = "SELECT id, name, stock, version FROM products";
+
+  private static final String SELECT_PAGE = "SELECT id, name, stock, version FROM products WHERE id > ? ORDER BY id LIMIT ?";
+
+  private static final String UPDATE = "UPDATE products SET name = ?, stock = ?::BIGINT, version = version + 1 WHERE id = ?";
+
+  private static final String UPDATE_VERSION =
+    "UPDATE products SET name = ?, stock = ?::BIGINT, version = version + 1 WHERE id = ? AND version = ?";
 
-  private static final String SELECT_ALL = "SELECT * FROM products";
+  private static final String ADJUST_STOCK = "UPDATE products SET stock = stock + ?, version = version + 1 WHERE id = ?";
 
-  private static final String UPDATE = "UPDATE products SET name = ?, stock = ?::BIGINT WHERE id = ?";
+  private static final String ADJUST_STOCK_WITH_FLOOR =
+    "UPDATE products SET stock = stock + ?, version = version + 1 WHERE id = ? AND stock + ? >= 0";
+
+  private static final String RETURNING = " RETURNING id, name, stock, version";
 
   private static final String DELETE = "DELETE FROM products WHERE id = ?";
 
+  private static final String NEXT_IDS = "SELECT nextval('products_id_seq') FROM generate_series(1, ?)";
+
+  private static final String INSERT_WITH_ID = "INSERT INTO products (id, name, stock) VALUES (?, ?, ?::BIGINT)";
+
+  /**
+   * The number of rows of a streamed list read from the database at once.
+   */
+  static final int STREAM_FETCH_SIZE = 128;
+
   private final JDBCClient db;
 
+  private final Timer acquisition;
+
+  private final Timer queries;
+
+  private final SQLOptions options;
+
+  private final SQLOptions insertOptions;
+
+  private final SQLOptions streamOptions;
+
+  private final boolean postgresql;
+
+  private final boolean codePointNames;
+
   public JdbcProductStore(JDBCClient db) {
+    this(db, new CompositeMeterRegistry());
+  }
+
+  public JdbcProductStore(JDBCClient db, MeterRegistry registry) {
+    this(db, registry, 0, false);
+  }
+
+  /**
+   * @param db           the JDBC client
+   * @param registry     the registry of the timers measuring the time spent getting a connection from the pool and the
+   *                     time spent executing statements
+   * @param queryTimeout the time, in seconds, after which the driver cancels a statement, {@code 0} for no limit
+   * @param postgresql   whether the database is PostgreSQL, to adjust the stocks with a single statement returning the
+   *                     updated item, rather than an update and a select in a transaction
+   */
+  public JdbcProductStore(JDBCClient db, MeterRegistry registry, int queryTimeout, boolean postgresql) {
+    this(db, registry, queryTimeout, postgresql, false);
+  }
+
+  /**
+   * @param db             the JDBC client
+   * @param registry       the registry of the timers measuring the time spent getting a connection from the pool and
+   *                       the time spent executing statements
+   * @param queryTimeout   the time, in seconds, after which the driver cancels a statement, {@code 0} for no limit
+   * @param postgresql     whether the database is PostgreSQL, to adjust the stocks with a single statement returning
+   *                       the updated item, rather than an update and a select in a transaction
+   * @param codePointNames whether the searches sort the names by code point, whatever the collation of the database,
+   *                       as needed to merge the results of several databases (PostgreSQL only)
+   */
+  public JdbcProductStore(JDBCClient db, MeterRegistry registry, int queryTimeout, boolean postgresql,
+                          boolean codePointNames) {
     this.db = db;
+    this.postgresql = postgresql;
+    this.codePointNames = codePointNames;
+    this.options = new SQLOptions().setQueryTimeout(queryTimeout);
+    this.insertOptions = new SQLOptions(options).setAutoGeneratedKeys(true);
+    this.streamOptions = new SQLOptions(options).setFetchSize(STREAM_FETCH_SIZE);
+    this.acquisition = timer(registry, "jdbc.connection.acquisition", "Time spent getting a connection from the pool");
+    this.queries = timer(registry, "jdbc.queries", "Time spent executing a statement");
+  }
+
+  private static Timer timer(MeterRegistry registry, String name, String description) {
+    return Timer.builder(name)
+      .description(description)
+      .publishPercentileHistogram()
+      .minimumExpectedValue(Duration.ofNanos(100_000))
+      .maximumExpectedValue(Duration.ofSeconds(30))
+      .register(registry);
+  }
+
+  private Single<SQLConnection> connect() {
+    return Single.create(subscriber -> {
+      long start = System.nanoTime();
+      db.getConnection(ar -> {
+        if (ar.failed()) {
+          subscriber.onError(ar.cause());
+          return;
+        }
+        acquisition.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        SQLConnection conn = ar.result().setOptions(options);
+        if (subscriber.isUnsubscribed()) {
+          // cancelled while waiting for the connection
+          conn.close();
+        } else {
+          subscriber.onSuccess(conn);
+        }
+      });
+    });
+  }
+
+  /**
+   * Runs statements on a connection, released once they complete, fail or are cancelled.
+   */
+  private <T> Single<T> withConnection(Func1<SQLConnection, Single<T>> statements) {
+    return connect().flatMap(conn -> {
+      AtomicBoolean released = new AtomicBoolean();
+      Action0 release = () -> {
+        if (released.compareAndSet(false, true)) {
+          conn.close();
+        }
+      };
+      return statements.call(conn)
+        .doAfterTerminate(release)
+        .doOnUnsubscribe(release);
+    });
+  }
+
+  /**
+   * Runs statements in a transaction, rolled back when they fail or are cancelled.
+   */
+  private <T> Single<T> inTransaction(Func1<SQLConnection, Single<T>> statements) {
+    return connect().flatMap(conn -> {
+      AtomicBoolean ended = new AtomicBoolean();
+      AtomicBoolean released = new AtomicBoolean();
+      Action0 release = () -> {
+        if (released.compareAndSet(false, true)) {
+          if (ended.get()) {
+            conn.setAutoCommit(true, ar -> conn.close());
+          } else {
+            // the statements run on the connection in order, so this waits for the pending one
+            conn.rollback(ar -> conn.setAutoCommit(true, ar2 -> conn.close()));
+          }
+        }
+      };
+      return conn.rxSetAutoCommit(false)
+        .flatMap(v -> statements.call(conn))
+        .flatMap(result -> conn.rxCommit().map(v -> result))
+        .onErrorResumeNext(err -> conn.rxRollback().toCompletable().onErrorComplete().andThen(Single.error(err)))
+        .doOnEach(notification -> ended.set(true))
+        .doAfterTerminate(release)
+        .doOnUnsubscribe(release);
+    });
+  }
+
+  private <T> Single<T> query(Single<T> statement) {
+    return Single.defer(() -> {
+      long start = System.nanoTime();
+      return statement
+        .doOnEach(notification -> queries.record(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+    });
   }
 
   @Override
@@ -43,103 +216,235 @@ public class JdbcProductStore implements Store {
       return Single.error(error.get());
     }
 
-    return db.rxGetConnection()
-      .map(con -> con.setOptions(new SQLOptions().setAutoGeneratedKeys(true)))
-      .flatMap(conn -> {
-        JsonArray params = new JsonArray().add(item.getValue("name")).add(item.getValue("stock", 0));
-        return conn
-          .rxUpdateWithParams(INSERT, params)
-          .map(ur -> item.put("id", ur.getKeys().getLong(0)))
-          .doAfterTerminate(conn::close);
-      });
+    return withConnection(conn -> {
+      JsonArray params = new JsonArray().add(item.getValue("name")).add(item.getValue("stock", 0));
+      conn.setOptions(insertOptions);
+      return query(conn.rxUpdateWithParams(INSERT, params))
+        .map(ur -> item.put("id", ur.getKeys().getLong(0)).put("version", 0L));
+    });
   }
 
   @Override
-  public Completable update(long id, JsonObject item) {
+  public Single<JsonObject> create(long id, JsonObject item) {
+    Optional<Exception> error = validateRequestBody(item);
+    if (error.isPresent()) {
+      return Single.error(error.get());
+    }
+
+    return withConnection(conn -> {
+      JsonArray params = new JsonArray().add(id).add(item.getValue("name")).add(item.getValue("stock", 0));
+      return query(conn.rxUpdateWithParams(INSERT_WITH_ID, params))
+        .map(ur -> item.put("id", id).put("version", 0L));
+    });
+  }
+
+  @Override
+  public Completable update(long id, JsonObject item, long version) {
     Optional<Exception> error = validateRequestBody(item);
     if (validateRequestBody(item).isPresent()){
       return Completable.error(error.get());
     }
 
-    return db.rxGetConnection()
-      .flatMapCompletable(conn -> {
-        JsonArray params = new JsonArray().add(item.getValue("name")).add(item.getValue("stock", 0)).add(id);
-        return conn.rxUpdateWithParams(UPDATE, params)
-          .flatMapCompletable(up -> {
-            if (up.getUpdated() == 0) {
-              return Completable.error(new NoSuchElementException("Unknown item '" + id + "'"));
-            }
-            return Completable.complete();
-          })
-          .doAfterTerminate(conn::close);
-      });
+    return withConnection(conn -> {
+      JsonArray params = new JsonArray().add(item.getValue("name")).add(item.getValue("stock", 0)).add(id);
+      if (version != ANY_VERSION) {
+        params.add(version);
+      }
+      return query(conn.rxUpdateWithParams(version == ANY_VERSION ? UPDATE : UPDATE_VERSION, params))
+        .flatMap(up -> {
+          if (up.getUpdated() == 0 && version == ANY_VERSION) {
+            return Single.error(new NoSuchElementException("Unknown item '" + id + "'"));
+          } else if (up.getUpdated() == 0) {
+            // either the item does not exist or it has another version
+            return selectOne(conn, id).flatMap(current -> Single.error(new VersionMismatchException(id, version)));
+          }
+          return Single.just(up);
+        });
+    }).toCompletable();
   }
 
-  private Optional<Exception> validateRequestBody(JsonObject item) {
-    if (item == null) {
-      return Optional.of(new IllegalArgumentException("The item must not be null"));
-    }
-    if (!(item.getValue("name") instanceof String) || item.getString("name") == null
-        || item.getString("name").isEmpty()) {
-      return Optional.of(new IllegalArgumentException("The name is required!"));
-    }
-    if (!(item.getValue("stock") instanceof Integer) || item.getInteger("stock") < 0) {
-      return Optional.of(new IllegalArgumentException("The stock must be greater or equal to 0!"));
+  @Override
+  public Single<JsonObject> adjustStock(long id, long delta, boolean floor) {
+    JsonArray params = new JsonArray().add(delta).add(id);
+    if (floor) {
+      params.add(delta);
     }
-    if (item.containsKey("id")) {
-      return Optional.of(new IllegalArgumentException("Id was invalidly set on request."));
+    String sql = floor ? ADJUST_STOCK_WITH_FLOOR : ADJUST_STOCK;
+    if (postgresql) {
+      return withConnection(conn ->
+        query(conn.rxQueryWithParams(sql + RETURNING, params))
+          .flatMap(rs -> {
+            if (rs.getResults().isEmpty()) {
+              // either the item does not exist or there is not enough stock
+              return selectOne(conn, id).flatMap(current ->
+                Single.<JsonObject>error(new IllegalStateException("Not enough stock for item '" + id + "'")));
+            }
+            return Single.just(toJson(rs.getResults().get(0)));
+          }));
     }
-    return Optional.empty();
+    // other databases, such as H2, cannot return the updated row
+    return inTransaction(conn ->
+      query(conn.rxUpdateWithParams(sql, params))
+        .flatMap(up -> {
+          if (up.getUpdated() == 0) {
+            // either the item does not exist or there is not enough stock
+            return selectOne(conn, id).flatMap(current ->
+              Single.<JsonObject>error(new IllegalStateException("Not enough stock for item '" + id + "'")));
+          }
+          // the row is locked until the commit, so this reads the value written by the update
+          return selectOne(conn, id);
+        }));
   }
 
   @Override
   public Observable<JsonObject> readAll() {
-    return db.rxGetConnection()
-      .flatMapObservable(conn ->
-        conn
-          .rxQueryStream(SELECT_ALL)
-          .flatMapObservable(SQLRowStream::toObservable)
-          .doAfterTerminate(conn::close))
-      .map(array ->
-        new JsonObject()
-          .put("id", array.getLong(0))
-          .put("name", array.getString(1))
-          .put("stock", array.getInteger(2))
-      );
+    return stream(SELECT_ALL, new JsonArray());
   }
 
   @Override
-  public Single<JsonObject> read(long id) {
-    return db.rxGetConnection()
-      .flatMap(conn -> {
-        JsonArray param = new JsonArray().add(id);
-        return conn
-          .rxQueryWithParams(SELECT_ONE, param)
-          .map(ResultSet::getRows)
-          .flatMap(list -> {
-            if (list.isEmpty()) {
-              return Single.error(new NoSuchElementException("Item '" + id + "' not found"));
+  public Observable<JsonObject> readAll(long after, int limit) {
+    return stream(SELECT_PAGE, new JsonArray().add(after).add(limit));
+  }
+
+  @Override
+  public Observable<JsonObject> search(ProductQuery query) {
+    List<Object> params = new ArrayList<>();
+    String sql = ProductQueries.toSql(query, params, false, codePointNames);
+    return stream(sql, new JsonArray(params));
+  }
+
+  private Observable<JsonObject> stream(String sql, JsonArray params) {
+    // rows are fetched on demand, STREAM_FETCH_SIZE at a time, so a slow subscriber pauses the underlying cursor. The
+    // PostgreSQL driver only uses a cursor inside a transaction: with autocommit on, it reads the whole result first.
+    // The transaction ends and the connection is released on completion, failure or when the subscriber goes away
+    return connect()
+      .flatMapObservable(conn -> {
+        AtomicBoolean completed = new AtomicBoolean();
+        AtomicBoolean released = new AtomicBoolean();
+        Action0 release = () -> {
+          if (released.compareAndSet(false, true)) {
+            Handler<AsyncResult<Void>> end = ar -> conn.setAutoCommit(true, ar2 -> conn.close());
+            if (completed.get()) {
+              conn.commit(end);
             } else {
-              return Single.just(list.get(0));
+              // the statements run on the connection in order, so this waits for the pending fetch
+              conn.rollback(end);
             }
-          })
-          .doAfterTerminate(conn::close);
+          }
+        };
+        conn.setOptions(streamOptions);
+        return conn.rxSetAutoCommit(false)
+          .flatMap(v -> query(conn.rxQueryStreamWithParams(sql, params)))
+          .flatMapObservable(SQLRowStream::toObservable)
+          .doOnCompleted(() -> completed.set(true))
+          .doAfterTerminate(release)
+          .doOnUnsubscribe(release);
+      })
+      .map(JdbcProductStore::toJson);
+  }
+
+  /**
+   * Maps a row of the selected columns ({@code id, name, stock, version}) to the JSON representation of an item.
+   */
+  public static JsonObject toJson(JsonArray row) {
+    return new JsonObject()
+      .put("id", row.getLong(0))
+      .put("name", row.getString(1))
+      .put("stock", row.getInteger(2))
+      .put("version", row.getLong(3));
+  }
+
+  @Override
+  public Single<JsonObject> read(long id) {
+    return withConnection(conn -> selectOne(conn, id));
+  }
+
+  private Single<JsonObject> selectOne(SQLConnection conn, long id) {
+    JsonArray param = new JsonArray().add(id);
+    return query(conn.rxQueryWithParams(SELECT_ONE, param))
+      .map(ResultSet::getResults)
+      .flatMap(list -> {
+        if (list.isEmpty()) {
+          return Single.error(new NoSuchElementException("Item '" + id + "' not found"));
+        } else {
+          return Single.just(toJson(list.get(0)));
+        }
       });
   }
 
   @Override
   public Completable delete(long id) {
-    return db.rxGetConnection()
-      .flatMapCompletable(conn -> {
-        JsonArray params = new JsonArray().add(id);
-        return conn.rxUpdateWithParams(DELETE, params)
-          .flatMapCompletable(up -> {
-            if (up.getUpdated() == 0) {
-              return Completable.error(new NoSuchElementException("Unknown item '" + id + "'"));
-            }
-            return Completable.complete();
-          })
-          .doAfterTerminate(conn::close);
-      });
+    return withConnection(conn -> {
+      JsonArray params = new JsonArray().add(id);
+      return query(conn.rxUpdateWithParams(DELETE, params))
+        .flatMap(up -> {
+          if (up.getUpdated() == 0) {
+            return Single.error(new NoSuchElementException("Unknown item '" + id + "'"));
+          }
+          return Single.just(up);
+        });
+    }).toCompletable();
+  }
+
+  @Override
+  public Single<List<JsonObject>> bulk(List<JsonObject> operations) {
+    JsonObject[] results = new JsonObject[operations.size()];
+    List<List<Integer>> runs = BulkOperations.plan(operations, results);
+    if (runs.isEmpty()) {
+      return Single.just(Arrays.asList(results));
+    }
+
+    return inTransaction(conn ->
+      Observable.from(runs)
+        .concatMap(run -> execute(conn, operations, run, results).toObservable())
+        .toCompletable()
+        .andThen(Single.fromCallable(() -> Arrays.asList(results))));
+  }
+
+  private Completable execute(SQLConnection conn, List<JsonObject> operations, List<Integer> run, JsonObject[] results) {
+    String type = operations.get(run.get(0)).getString("op");
+    if (BulkOperations.CREATE.equals(type)) {
+      // reserve the ids not given first, as batched inserts do not return the generated keys
+      int missing = BulkOperations.missingIds(operations, run);
+      Single<List<JsonArray>> reserved = missing == 0
+        ? Single.just(new ArrayList<>())
+        : query(conn.rxQueryWithParams(NEXT_IDS, new JsonArray().add(missing))).map(ResultSet::getResults);
+      return reserved
+        .flatMap(ids -> {
+          List<JsonArray> params = new ArrayList<>(run.size());
+          Iterator<JsonArray> next = ids.iterator();
+          for (int index : run) {
+            JsonObject operation = operations.get(index);
+            JsonObject item = operation.getJsonObject("item");
+            long id = operation.getValue("id") != null ? operation.getLong("id") : next.next().getLong(0);
+            params.add(new JsonArray().add(id).add(item.getValue("name")).add(item.getValue("stock")));
+            results[index] = BulkOperations.success(201, id);
+          }
+          return query(conn.rxBatchWithParams(INSERT_WITH_ID, params));
+        })
+        .toCompletable();
+    }
+
+    boolean update = BulkOperations.UPDATE.equals(type);
+    List<JsonArray> params = new ArrayList<>(run.size());
+    for (int index : run) {
+      JsonObject operation = operations.get(index);
+      if (update) {
+        JsonObject item = operation.getJsonObject("item");
+        params.add(new JsonArray().add(item.getValue("name")).add(item.getValue("stock")).add(operation.getLong("id")));
+      } else {
+        params.add(new JsonArray().add(operation.getLong("id")));
+      }
+    }
+    return query(conn.rxBatchWithParams(update ? UPDATE : DELETE, params))
+      .doOnSuccess(counts -> {
+        for (int i = 0; i < run.size(); i++) {
+          long id = operations.get(run.get(i)).getLong("id");
+          results[run.get(i)] = counts.get(i) == 0
+            ? BulkOperations.notFound(id)
+            : BulkOperations.success(update ? 200 : 204, id);
+        }
+      })
+      .toCompletable();
   }
 }
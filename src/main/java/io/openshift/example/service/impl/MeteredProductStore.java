@@ -0,0 +1,167 @@
+package io.openshift.example.service.impl;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.openshift.example.service.ProductQuery;
+import io.openshift.example.service.Store;
+import io.vertx.core.json.JsonObject;
+import rx.Completable;
+import rx.Observable;
+import rx.Single;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records the duration and the outcome of each call to another store.
+ * <p>
+ * The timers are registered once, so recording a call does not look anything up in the registry.
+ */
+public class MeteredProductStore implements Store {
+
+  private final Store delegate;
+
+  private final Call create;
+
+  private final Call readAll;
+
+  private final Call readPage;
+
+  private final Call search;
+
+  private final Call read;
+
+  private final Call update;
+
+  private final Call adjustStock;
+
+  private final Call delete;
+
+  private final Call bulk;
+
+  public MeteredProductStore(Store delegate, MeterRegistry registry) {
+    this.delegate = delegate;
+    this.create = new Call(registry, "create");
+    this.readAll = new Call(registry, "readAll");
+    this.readPage = new Call(registry, "readPage");
+    this.search = new Call(registry, "search");
+    this.read = new Call(registry, "read");
+    this.update = new Call(registry, "update");
+    this.adjustStock = new Call(registry, "adjustStock");
+    this.delete = new Call(registry, "delete");
+    this.bulk = new Call(registry, "bulk");
+  }
+
+  @Override
+  public Single<JsonObject> create(JsonObject item) {
+    return create.time(delegate.create(item));
+  }
+
+  @Override
+  public Single<JsonObject> create(long id, JsonObject item) {
+    return create.time(delegate.create(id, item));
+  }
+
+  @Override
+  public Observable<JsonObject> readAll() {
+    return readAll.time(delegate.readAll());
+  }
+
+  @Override
+  public Observable<JsonObject> streamAll() {
+    return readAll.time(delegate.streamAll());
+  }
+
+  @Override
+  public Observable<JsonObject> readAll(long after, int limit) {
+    return readPage.time(delegate.readAll(after, limit));
+  }
+
+  @Override
+  public Observable<JsonObject> search(ProductQuery query) {
+    return search.time(delegate.search(query));
+  }
+
+  @Override
+  public Single<JsonObject> read(long id) {
+    return read.time(delegate.read(id));
+  }
+
+  @Override
+  public Completable update(long id, JsonObject item, long version) {
+    return update.time(delegate.update(id, item, version));
+  }
+
+  @Override
+  public Single<JsonObject> adjustStock(long id, long delta, boolean floor) {
+    return adjustStock.time(delegate.adjustStock(id, delta, floor));
+  }
+
+  @Override
+  public Completable delete(long id) {
+    return delete.time(delegate.delete(id));
+  }
+
+  @Override
+  public Single<List<JsonObject>> bulk(List<JsonObject> operations) {
+    return bulk.time(delegate.bulk(operations));
+  }
+
+  /**
+   * The timers of one method of the store, one per outcome.
+   */
+  private static class Call {
+
+    private final Timer success;
+
+    private final Timer failure;
+
+    private Call(MeterRegistry registry, String method) {
+      this.success = timer(registry, method, "success");
+      this.failure = timer(registry, method, "failure");
+    }
+
+    private static Timer timer(MeterRegistry registry, String method, String outcome) {
+      return Timer.builder("store.calls")
+        .description("Duration of the calls to the store")
+        .tag("method", method)
+        .tag("outcome", outcome)
+        .publishPercentileHistogram()
+        .minimumExpectedValue(Duration.ofNanos(100_000))
+        .maximumExpectedValue(Duration.ofSeconds(30))
+        .register(registry);
+    }
+
+    private <T> Single<T> time(Single<T> single) {
+      return Single.defer(() -> {
+        long start = System.nanoTime();
+        return single
+          .doOnSuccess(x -> record(success, start))
+          .doOnError(x -> record(failure, start));
+      });
+    }
+
+    private <T> Observable<T> time(Observable<T> observable) {
+      return Observable.defer(() -> {
+        long start = System.nanoTime();
+        return observable
+          .doOnCompleted(() -> record(success, start))
+          .doOnError(x -> record(failure, start));
+      });
+    }
+
+    private Completable time(Completable completable) {
+      return Completable.defer(() -> {
+        long start = System.nanoTime();
+        return completable
+          .doOnCompleted(() -> record(success, start))
+          .doOnError(x -> record(failure, start));
+      });
+    }
+
+    private static void record(Timer timer, long start) {
+      timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+  }
+}
@@ -0,0 +1,270 @@
+package io.openshift.example.service.impl;
+
+import io.openshift.example.service.ProductQuery;
+import io.openshift.example.service.Store;
+import io.openshift.example.service.VersionMismatchException;
+import io.vertx.core.json.JsonObject;
+import io.vertx.rxjava.pgclient.PgPool;
+import io.vertx.rxjava.sqlclient.Row;
+import io.vertx.rxjava.sqlclient.RowIterator;
+import io.vertx.rxjava.sqlclient.RowSet;
+import io.vertx.rxjava.sqlclient.Transaction;
+import io.vertx.rxjava.sqlclient.Tuple;
+import rx.Completable;
+import rx.Observable;
+import rx.Single;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static io.openshift.example.service.ProductValidator.validateRequestBody;
+
+/**
+ * An implementation of the store using the reactive PostgreSQL client.
+ * <p>
+ * Statements are executed directly on the event loop, without any worker thread, and several statements can be
+ * pipelined on the same connection of the pool.
+ */
+public class PgProductStore implements Store {
+
+  private static final String INSERT = "INSERT INTO products (name, stock) VALUES ($1, $2) RETURNING id";
+
+  private static final String SELECT_ONE = "SELECT id, name, stock, version FROM products WHERE id = $1";
+
+  private static final String SELECT_ALL = "SELECT id, name, stock, version FROM products";
+
+  private static final String SELECT_PAGE = "SELECT id, name, stock, version FROM products WHERE id > $1 ORDER BY id LIMIT $2";
+
+  private static final String UPDATE = "UPDATE products SET name = $1, stock = $2, version = version + 1 WHERE id = $3";
+
+  private static final String UPDATE_VERSION =
+    "UPDATE products SET name = $1, stock = $2, version = version + 1 WHERE id = $3 AND version = $4";
+
+  private static final String ADJUST_STOCK =
+    "UPDATE products SET stock = stock + $1, version = version + 1 WHERE id = $2 RETURNING id, name, stock, version";
+
+  private static final String ADJUST_STOCK_WITH_FLOOR = "UPDATE products SET stock = stock + $1, version = version + 1"
+    + " WHERE id = $2 AND stock + $1 >= 0 RETURNING id, name, stock, version";
+
+  private static final String DELETE = "DELETE FROM products WHERE id = $1";
+
+  private static final String NEXT_IDS = "SELECT nextval('products_id_seq') FROM generate_series(1, $1)";
+
+  private static final String INSERT_WITH_ID = "INSERT INTO products (id, name, stock) VALUES ($1, $2, $3)";
+
+  /**
+   * The number of rows fetched at once by the cursor used by {@link #readAll()}.
+   */
+  private static final int FETCH_SIZE = 128;
+
+  private final PgPool pool;
+
+  public PgProductStore(PgPool pool) {
+    this.pool = pool;
+  }
+
+  @Override
+  public Single<JsonObject> create(JsonObject item) {
+    Optional<Exception> error = validateRequestBody(item);
+    if (error.isPresent()) {
+      return Single.error(error.get());
+    }
+
+    return pool.preparedQuery(INSERT)
+      .rxExecute(Tuple.of(item.getString("name"), item.getInteger("stock").longValue()))
+      .map(rows -> item.put("id", rows.iterator().next().getLong("id")).put("version", 0L));
+  }
+
+  @Override
+  public Single<JsonObject> create(long id, JsonObject item) {
+    Optional<Exception> error = validateRequestBody(item);
+    if (error.isPresent()) {
+      return Single.error(error.get());
+    }
+
+    return pool.preparedQuery(INSERT_WITH_ID)
+      .rxExecute(Tuple.of(id, item.getString("name"), item.getInteger("stock").longValue()))
+      .map(rows -> item.put("id", id).put("version", 0L));
+  }
+
+  @Override
+  public Completable update(long id, JsonObject item, long version) {
+    Optional<Exception> error = validateRequestBody(item);
+    if (error.isPresent()) {
+      return Completable.error(error.get());
+    }
+
+    Tuple params = Tuple.of(item.getString("name"), item.getInteger("stock").longValue(), id);
+    if (version != ANY_VERSION) {
+      params.addLong(version);
+    }
+    return pool.preparedQuery(version == ANY_VERSION ? UPDATE : UPDATE_VERSION)
+      .rxExecute(params)
+      .flatMapCompletable(rows -> {
+        if (rows.rowCount() == 0 && version == ANY_VERSION) {
+          return Completable.error(new NoSuchElementException("Unknown item '" + id + "'"));
+        } else if (rows.rowCount() == 0) {
+          // either the item does not exist or it has another version
+          return read(id).flatMapCompletable(current -> Completable.error(new VersionMismatchException(id, version)));
+        }
+        return Completable.complete();
+      });
+  }
+
+  @Override
+  public Single<JsonObject> adjustStock(long id, long delta, boolean floor) {
+    return pool.preparedQuery(floor ? ADJUST_STOCK_WITH_FLOOR : ADJUST_STOCK)
+      .rxExecute(Tuple.of(delta, id))
+      .map(RowSet::iterator)
+      .flatMap(it -> {
+        if (!it.hasNext()) {
+          // either the item does not exist or there is not enough stock
+          return read(id).flatMap(current ->
+            Single.<JsonObject>error(new IllegalStateException("Not enough stock for item '" + id + "'")));
+        }
+        return Single.just(toJson(it.next()));
+      });
+  }
+
+  @Override
+  public Observable<JsonObject> readAll() {
+    // a cursor needs a transaction, it is committed (and the connection released) once the stream is done
+    return pool.rxBegin()
+      .flatMapObservable(tx ->
+        tx.rxPrepare(SELECT_ALL)
+          .flatMapObservable(ps -> ps.createStream(FETCH_SIZE, Tuple.tuple()).toObservable())
+          .doOnUnsubscribe(tx::commit))
+      .map(PgProductStore::toJson);
+  }
+
+  @Override
+  public Observable<JsonObject> readAll(long after, int limit) {
+    return pool.preparedQuery(SELECT_PAGE)
+      .rxExecute(Tuple.of(after, (long) limit))
+      .flatMapObservable(Observable::from)
+      .map(PgProductStore::toJson);
+  }
+
+  @Override
+  public Observable<JsonObject> search(ProductQuery query) {
+    List<Object> params = new ArrayList<>();
+    String sql = ProductQueries.toSql(query, params, true);
+    return pool.preparedQuery(sql)
+      .rxExecute(Tuple.tuple(params))
+      .flatMapObservable(Observable::from)
+      .map(PgProductStore::toJson);
+  }
+
+  @Override
+  public Single<JsonObject> read(long id) {
+    return pool.preparedQuery(SELECT_ONE)
+      .rxExecute(Tuple.of(id))
+      .map(RowSet::iterator)
+      .flatMap(it -> {
+        if (!it.hasNext()) {
+          return Single.error(new NoSuchElementException("Item '" + id + "' not found"));
+        } else {
+          return Single.just(toJson(it.next()));
+        }
+      });
+  }
+
+  @Override
+  public Completable delete(long id) {
+    return pool.preparedQuery(DELETE)
+      .rxExecute(Tuple.of(id))
+      .flatMapCompletable(rows -> {
+        if (rows.rowCount() == 0) {
+          return Completable.error(new NoSuchElementException("Unknown item '" + id + "'"));
+        }
+        return Completable.complete();
+      });
+  }
+
+  @Override
+  public Single<List<JsonObject>> bulk(List<JsonObject> operations) {
+    JsonObject[] results = new JsonObject[operations.size()];
+    List<List<Integer>> runs = BulkOperations.plan(operations, results);
+    if (runs.isEmpty()) {
+      return Single.just(Arrays.asList(results));
+    }
+
+    return pool.rxBegin()
+      .flatMap(tx -> {
+        AtomicBoolean ended = new AtomicBoolean();
+        return Observable.from(runs)
+          .concatMap(run -> execute(tx, operations, run, results).toObservable())
+          .toCompletable()
+          .andThen(tx.rxCommit().toCompletable())
+          .doOnTerminate(() -> ended.set(true))
+          .doOnError(err -> tx.close())
+          .andThen(Single.fromCallable(() -> Arrays.asList(results)))
+          .doOnUnsubscribe(() -> {
+            if (!ended.get()) {
+              // cancelled, roll back and release the connection
+              tx.close();
+            }
+          });
+      });
+  }
+
+  private Completable execute(Transaction tx, List<JsonObject> operations, List<Integer> run, JsonObject[] results) {
+    String type = operations.get(run.get(0)).getString("op");
+    if (BulkOperations.CREATE.equals(type)) {
+      // reserve the ids not given first, so the inserts can be batched
+      return tx.preparedQuery(NEXT_IDS)
+        .rxExecute(Tuple.of((long) BulkOperations.missingIds(operations, run)))
+        .flatMap(ids -> {
+          List<Tuple> batch = new ArrayList<>(run.size());
+          RowIterator<Row> it = ids.iterator();
+          for (int index : run) {
+            JsonObject operation = operations.get(index);
+            JsonObject item = operation.getJsonObject("item");
+            long id = operation.getValue("id") != null ? operation.getLong("id") : it.next().getLong(0);
+            batch.add(Tuple.of(id, item.getString("name"), item.getInteger("stock").longValue()));
+            results[index] = BulkOperations.success(201, id);
+          }
+          return tx.preparedQuery(INSERT_WITH_ID).rxExecuteBatch(batch);
+        })
+        .toCompletable();
+    }
+
+    boolean update = BulkOperations.UPDATE.equals(type);
+    List<Tuple> batch = new ArrayList<>(run.size());
+    for (int index : run) {
+      JsonObject operation = operations.get(index);
+      if (update) {
+        JsonObject item = operation.getJsonObject("item");
+        batch.add(Tuple.of(item.getString("name"), item.getInteger("stock").longValue(), operation.getLong("id")));
+      } else {
+        batch.add(Tuple.of(operation.getLong("id")));
+      }
+    }
+    return tx.preparedQuery(update ? UPDATE : DELETE)
+      .rxExecuteBatch(batch)
+      .doOnSuccess(rows -> {
+        // a batch returns one result per tuple, chained with next()
+        RowSet<Row> current = rows;
+        for (int index : run) {
+          long id = operations.get(index).getLong("id");
+          results[index] = current.rowCount() == 0
+            ? BulkOperations.notFound(id)
+            : BulkOperations.success(update ? 200 : 204, id);
+          current = current.next();
+        }
+      })
+      .toCompletable();
+  }
+
+  private static JsonObject toJson(Row row) {
+    return new JsonObject()
+      .put("id", row.getLong("id"))
+      .put("name", row.getString("name"))
+      .put("stock", row.getInteger("stock"))
+      .put("version", row.getLong("version"));
+  }
+}
@@ -0,0 +1,63 @@
+package io.openshift.example.service.impl;
+
+import com.mchange.v2.c3p0.ComboPooledDataSource;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.jdbc.spi.DataSourceProvider;
+
+import javax.sql.DataSource;
+import java.beans.PropertyVetoException;
+import java.sql.SQLException;
+
+/**
+ * Creates the C3P0 pool of the JDBC client, with the settings the default provider ignores: the time to wait for a
+ * connection, the eviction of the idle connections and the cache of prepared statements.
+ * <p>
+ * Each connection keeps its prepared statements open, so running the same SQL again on the connection skips the
+ * parsing and the planning, on the client and, with the PostgreSQL driver, on the server.
+ * <p>
+ * The configuration takes, besides {@code url}, {@code driver_class}, {@code user} and {@code password}:
+ * <ul>
+ * <li>{@code min_pool_size}, the connections opened at startup and kept even when idle (default 0)</li>
+ * <li>{@code max_pool_size}, the maximum number of connections (default 15)</li>
+ * <li>{@code acquire_timeout}, the time, in milliseconds, to wait for a connection before failing, 0 to wait forever
+ * (default)</li>
+ * <li>{@code max_idle_time}, the time, in seconds, after which the idle connections above the minimum are closed, 0 to
+ * keep them (default)</li>
+ * <li>{@code statement_cache_size}, the number of prepared statements kept open per connection, 0 to not cache them
+ * (default)</li>
+ * </ul>
+ */
+public class PooledDataSourceProvider implements DataSourceProvider {
+
+  @Override
+  public DataSource getDataSource(JsonObject config) throws SQLException {
+    ComboPooledDataSource pool = new ComboPooledDataSource();
+    pool.setJdbcUrl(config.getString("url"));
+    try {
+      pool.setDriverClass(config.getString("driver_class"));
+    } catch (PropertyVetoException e) {
+      throw new SQLException("Cannot load the JDBC driver " + config.getString("driver_class"), e);
+    }
+    pool.setUser(config.getString("user"));
+    pool.setPassword(config.getString("password"));
+
+    int minSize = config.getInteger("min_pool_size", 0);
+    pool.setMinPoolSize(minSize);
+    pool.setInitialPoolSize(minSize);
+    pool.setMaxPoolSize(config.getInteger("max_pool_size", 15));
+    pool.setCheckoutTimeout(config.getInteger("acquire_timeout", 0));
+    pool.setMaxIdleTimeExcessConnections(config.getInteger("max_idle_time", 0));
+    pool.setMaxStatementsPerConnection(config.getInteger("statement_cache_size", 0));
+    return pool;
+  }
+
+  @Override
+  public int maximumPoolSize(DataSource dataSource, JsonObject config) {
+    return ((ComboPooledDataSource) dataSource).getMaxPoolSize();
+  }
+
+  @Override
+  public void close(DataSource dataSource) {
+    ((ComboPooledDataSource) dataSource).close();
+  }
+}
@@ -0,0 +1,124 @@
+package io.openshift.example.service.impl;
+
+import io.openshift.example.service.ProductQuery;
+
+import java.util.List;
+
+/**
+ * Translates the searches given to {@link io.openshift.example.service.Store#search(ProductQuery)} to parameterized
+ * SQL, shared by the stores.
+ */
+final class ProductQueries {
+
+  private static final String SELECT = "SELECT id, name, stock, version FROM products";
+
+  private ProductQueries() {
+    // Private constructor.
+  }
+
+  /**
+   * @param query    the search
+   * @param params   filled with the values of the parameters, in order
+   * @param numbered whether the parameters are numbered ({@code $1}, as used by the PostgreSQL client) or not
+   *                 ({@code ?}, as used by JDBC)
+   * @return the SQL statement
+   */
+  static String toSql(ProductQuery query, List<Object> params, boolean numbered) {
+    return toSql(query, params, numbered, false);
+  }
+
+  /**
+   * @param query          the search
+   * @param params         filled with the values of the parameters, in order
+   * @param numbered       whether the parameters are numbered ({@code $1}, as used by the PostgreSQL client) or not
+   *                       ({@code ?}, as used by JDBC)
+   * @param codePointNames whether the names are sorted by code point, with the {@code "C"} collation of PostgreSQL,
+   *                       rather than with the collation of the database
+   * @return the SQL statement
+   */
+  static String toSql(ProductQuery query, List<Object> params, boolean numbered, boolean codePointNames) {
+    StringBuilder sql = new StringBuilder(SELECT);
+    String and = " WHERE ";
+    if (query.getNamePrefix() != null) {
+      params.add(escape(query.getNamePrefix()) + "%");
+      sql.append(and).append("name LIKE ").append(param(params, numbered));
+      and = " AND ";
+    }
+    if (query.getNameContains() != null) {
+      params.add("%" + escape(query.getNameContains()) + "%");
+      sql.append(and).append("name ILIKE ").append(param(params, numbered));
+      and = " AND ";
+    }
+    if (query.getMinStock() != null) {
+      params.add(query.getMinStock());
+      sql.append(and).append("stock >= ").append(param(params, numbered));
+      and = " AND ";
+    }
+    if (query.getMaxStock() != null) {
+      params.add(query.getMaxStock());
+      sql.append(and).append("stock <= ").append(param(params, numbered));
+      and = " AND ";
+    }
+    String column = query.getSort().column();
+    if (codePointNames && query.getSort() == ProductQuery.Sort.NAME) {
+      column += " COLLATE \"C\"";
+    }
+    if (query.getAfter() != null) {
+      sql.append(and);
+      after(query, column, params, numbered, sql);
+    }
+
+    String direction = query.isDescending() ? " DESC" : "";
+    sql.append(" ORDER BY ").append(column).append(direction);
+    if (query.getSort() == ProductQuery.Sort.STOCK) {
+      // the default of PostgreSQL, not of every database, the cursor relies on it
+      sql.append(query.isDescending() ? " NULLS FIRST" : " NULLS LAST");
+    }
+    if (query.getSort() != ProductQuery.Sort.ID) {
+      sql.append(", id").append(direction);
+    }
+    params.add((long) query.getLimit());
+    sql.append(" LIMIT ").append(param(params, numbered));
+    return sql.toString();
+  }
+
+  /**
+   * Appends the condition keeping the items following the cursor, in the order of the query: by id, or by the sorted
+   * field then by id, comparing both as a row so the index of the order can be used.
+   */
+  private static void after(ProductQuery query, String column, List<Object> params, boolean numbered,
+                            StringBuilder sql) {
+    String operator = query.isDescending() ? " < " : " > ";
+    if (query.getSort() == ProductQuery.Sort.ID) {
+      params.add(query.getAfter());
+      sql.append("id").append(operator).append(param(params, numbered));
+    } else if (query.getAfterValue() != null) {
+      params.add(query.getAfterValue());
+      String value = param(params, numbered);
+      params.add(query.getAfter());
+      sql.append(query.getSort() == ProductQuery.Sort.STOCK && !query.isDescending() ? "((" : "(")
+        .append(column).append(", id)").append(operator)
+        .append("(").append(value).append(", ").append(param(params, numbered)).append(")");
+      if (query.getSort() == ProductQuery.Sort.STOCK && !query.isDescending()) {
+        // the unknown stocks are last in the ascending order
+        sql.append(" OR stock IS NULL)");
+      }
+    } else {
+      // the last item has no stock: the unknown stocks are last in the ascending order, first in the descending one
+      params.add(query.getAfter());
+      sql.append(query.isDescending() ? "(stock IS NOT NULL OR id < " : "(stock IS NULL AND id > ")
+        .append(param(params, numbered)).append(")");
+    }
+  }
+
+  private static String param(List<Object> params, boolean numbered) {
+    return numbered ? "$" + params.size() : "?";
+  }
+
+  /**
+   * Escapes the LIKE wildcards, so they match literally.
+   */
+  private static String escape(String value) {
+    return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+  }
+}
@@ -0,0 +1,107 @@
+package io.openshift.example.service.impl;
+
+import io.openshift.example.service.ProductQuery;
+import io.openshift.example.service.Store;
+import io.vertx.core.json.JsonObject;
+import rx.Completable;
+import rx.Observable;
+import rx.Single;
+
+import java.util.List;
+
+/**
+ * Records the successful writes made to another store in a {@link ChangeLog}.
+ */
+public class PublishingProductStore implements Store {
+
+  private final Store delegate;
+
+  private final ChangeLog log;
+
+  public PublishingProductStore(Store delegate, ChangeLog log) {
+    this.delegate = delegate;
+    this.log = log;
+  }
+
+  @Override
+  public Single<JsonObject> create(JsonObject item) {
+    return delegate.create(item)
+      .doOnSuccess(json -> log.append(ChangeLog.CREATED, json.getLong("id"), json));
+  }
+
+  @Override
+  public Single<JsonObject> create(long id, JsonObject item) {
+    return delegate.create(id, item)
+      .doOnSuccess(json -> log.append(ChangeLog.CREATED, id, json));
+  }
+
+  @Override
+  public Observable<JsonObject> readAll() {
+    return delegate.readAll();
+  }
+
+  @Override
+  public Observable<JsonObject> streamAll() {
+    return delegate.streamAll();
+  }
+
+  @Override
+  public Observable<JsonObject> readAll(long after, int limit) {
+    return delegate.readAll(after, limit);
+  }
+
+  @Override
+  public Observable<JsonObject> search(ProductQuery query) {
+    return delegate.search(query);
+  }
+
+  @Override
+  public Single<JsonObject> read(long id) {
+    return delegate.read(id);
+  }
+
+  @Override
+  public Completable update(long id, JsonObject item, long version) {
+    return delegate.update(id, item, version)
+      .doOnCompleted(() -> {
+        JsonObject json = item.copy().put("id", id);
+        if (version == ANY_VERSION) {
+          json.remove("version");
+        } else {
+          json.put("version", version + 1);
+        }
+        log.append(ChangeLog.UPDATED, id, json);
+      });
+  }
+
+  @Override
+  public Single<JsonObject> adjustStock(long id, long delta, boolean floor) {
+    return delegate.adjustStock(id, delta, floor)
+      .doOnSuccess(json -> log.append(ChangeLog.UPDATED, id, json));
+  }
+
+  @Override
+  public Completable delete(long id) {
+    return delegate.delete(id)
+      .doOnCompleted(() -> log.append(ChangeLog.DELETED, id, null));
+  }
+
+  @Override
+  public Single<List<JsonObject>> bulk(List<JsonObject> operations) {
+    return delegate.bulk(operations)
+      .doOnSuccess(results -> {
+        for (int i = 0; i < results.size(); i++) {
+          JsonObject result = results.get(i);
+          int status = result.getInteger("status");
+          long id = result.getLong("id", -1L);
+          if (status == 201) {
+            log.append(ChangeLog.CREATED, id, operations.get(i).getJsonObject("item").copy().put("id", id));
+          } else if (status == 200) {
+            log.append(ChangeLog.UPDATED, id, operations.get(i).getJsonObject("item").copy().put("id", id));
+          } else if (status == 204) {
+            log.append(ChangeLog.DELETED, id, null);
+          }
+        }
+      });
+  }
+}
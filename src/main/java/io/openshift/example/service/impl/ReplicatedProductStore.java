@@ -0,0 +1,287 @@
+package io.openshift.example.service.impl;
+
+import io.openshift.example.service.ProductQuery;
+import io.openshift.example.service.Store;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+import io.vertx.rxjava.core.Vertx;
+import io.vertx.rxjava.core.eventbus.EventBus;
+import rx.Completable;
+import rx.Observable;
+import rx.Single;
+import rx.functions.Func1;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends the writes to a primary store, and spreads the reads over its replicas.
+ * <p>
+ * The reads go to the replicas in turn. Each replica has a {@link CircuitBreaker}: a replica failing, or whose breaker
+ * is open, is skipped and the read goes to the next one, then to the primary when none is left. A list fails over only
+ * until it produces its first item.
+ * <p>
+ * The replicas lag behind the primary, so the reads following a write go to the primary for a short window (see
+ * {@link Writes}): the reads of an item written during the window, and the lists while any item was written during the
+ * window of the lists. A client reads its own writes, as long as the replication lag is below the window, and so does
+ * the cache refilled after a write. Under a steady flow of writes, the lists only go to the replicas with a shorter
+ * window for the lists, at the cost of missing the last writes.
+ * <p>
+ * The writes are also published on the event bus, so the other processes, such as the other pods when Vert.x is
+ * clustered, read the written items from the primary too: their caches, invalidated by the same write, are not refilled
+ * from a lagging replica, and a client reads its own writes whatever the pod serving it.
+ */
+public class ReplicatedProductStore implements Store {
+
+  private final Store primary;
+
+  private final List<Store> replicas;
+
+  private final List<CircuitBreaker> breakers;
+
+  private final Writes writes;
+
+  private final AtomicInteger next = new AtomicInteger();
+
+  /**
+   * @param primary  the store of the primary database
+   * @param replicas the stores of the replicas
+   * @param breakers the circuit breakers of the replicas, in the same order
+   * @param writes   the recent writes, shared by the stores of the same databases
+   */
+  public ReplicatedProductStore(Store primary, List<Store> replicas, List<CircuitBreaker> breakers, Writes writes) {
+    if (replicas.isEmpty() || replicas.size() != breakers.size()) {
+      throw new IllegalArgumentException("each replica needs a circuit breaker");
+    }
+    this.primary = primary;
+    this.replicas = replicas;
+    this.breakers = breakers;
+    this.writes = writes;
+  }
+
+  /**
+   * @param id the item read, {@code null} for a list
+   */
+  private <T> Observable<T> read(Long id, Func1<Store, Observable<T>> call) {
+    return Observable.defer(() -> (id == null ? writes.recent() : writes.recent(id))
+      ? call.call(primary)
+      : fromReplica(call, Math.floorMod(next.getAndIncrement(), replicas.size()), 0));
+  }
+
+  private <T> Observable<T> fromReplica(Func1<Store, Observable<T>> call, int first, int attempt) {
+    if (attempt == replicas.size()) {
+      return call.call(primary);
+    }
+    int index = (first + attempt) % replicas.size();
+    CircuitBreaker breaker = breakers.get(index);
+    if (breaker.state() == CircuitBreaker.State.OPEN) {
+      return fromReplica(call, first, attempt + 1);
+    }
+    AtomicBoolean emitted = new AtomicBoolean();
+    return breaker.protect(call.call(replicas.get(index)))
+      .doOnNext(item -> emitted.set(true))
+      .onErrorResumeNext(err -> !emitted.get() && CircuitBreaker.isFailure(err)
+        ? fromReplica(call, first, attempt + 1)
+        : Observable.error(err));
+  }
+
+  @Override
+  public Single<JsonObject> create(JsonObject item) {
+    return primary.create(item).doOnSuccess(created -> writes.written(created.getLong("id")));
+  }
+
+  @Override
+  public Single<JsonObject> create(long id, JsonObject item) {
+    return primary.create(id, item).doOnSuccess(created -> writes.written(id));
+  }
+
+  @Override
+  public Observable<JsonObject> readAll() {
+    return read(null, Store::readAll);
+  }
+
+  @Override
+  public Observable<JsonObject> readAll(long after, int limit) {
+    return read(null, store -> store.readAll(after, limit));
+  }
+
+  @Override
+  public Observable<JsonObject> search(ProductQuery query) {
+    return read(null, store -> store.search(query));
+  }
+
+  @Override
+  public Single<JsonObject> read(long id) {
+    return read(id, store -> store.read(id).toObservable()).toSingle();
+  }
+
+  @Override
+  public Completable update(long id, JsonObject item, long version) {
+    // whatever the outcome, as a write timing out may still be committed
+    return primary.update(id, item, version).doOnTerminate(() -> writes.written(id));
+  }
+
+  @Override
+  public Single<JsonObject> adjustStock(long id, long delta, boolean floor) {
+    return primary.adjustStock(id, delta, floor)
+      .doOnSuccess(item -> writes.written(id))
+      .doOnError(err -> writes.written(id));
+  }
+
+  @Override
+  public Completable delete(long id) {
+    return primary.delete(id).doOnTerminate(() -> writes.written(id));
+  }
+
+  @Override
+  public Single<List<JsonObject>> bulk(List<JsonObject> operations) {
+    return primary.bulk(operations)
+      .doOnSuccess(results -> results.forEach(result -> {
+        Long id = result.getLong("id");
+        if (id != null) {
+          writes.written(id);
+        }
+      }))
+      // the written items are not known
+      .doOnError(err -> writes.writtenAny());
+  }
+
+  /**
+   * The items written during the last window, shared by the verticle instances of a Vert.x instance, see
+   * {@link #createShared(Vertx, long, long)}.
+   */
+  public static final class Writes implements Shareable {
+
+    /**
+     * The address the writes are exchanged on, with the id of the item written, if known.
+     */
+    public static final String ADDRESS = "products.writes";
+
+    private static final String SHARED_MAP = "store.replicated-writes";
+
+    /**
+     * The number of items above which the items written before the window are forgotten.
+     */
+    private static final int PRUNE_SIZE = 1024;
+
+    private final long window;
+
+    private final long listWindow;
+
+    private final Map<Long, Long> items = new ConcurrentHashMap<>();
+
+    private volatile long lastWrite;
+
+    private volatile long lastUnknownWrite;
+
+    private final String origin = UUID.randomUUID().toString();
+
+    private volatile EventBus eventBus;
+
+    /**
+     * @param window     the time, in milliseconds, during which the reads of an item written go to the primary, above
+     *                   the usual replication lag
+     * @param listWindow the time, in milliseconds, during which the lists following a write go to the primary,
+     *                   {@code 0} to always read them from the replicas
+     */
+    public Writes(long window, long listWindow) {
+      this.window = TimeUnit.MILLISECONDS.toNanos(window);
+      this.listWindow = TimeUnit.MILLISECONDS.toNanos(listWindow);
+      // out of the windows
+      this.lastWrite = System.nanoTime() - Math.max(this.window, this.listWindow);
+      this.lastUnknownWrite = lastWrite;
+    }
+
+    /**
+     * Gets the writes shared by the verticle instances of the given Vert.x instance, creating them if needed.
+     */
+    public static Writes createShared(Vertx vertx, long window, long listWindow) {
+      LocalMap<String, Writes> map = vertx.getDelegate().sharedData().getLocalMap(SHARED_MAP);
+      synchronized (Writes.class) {
+        Writes writes = map.get(SHARED_MAP);
+        if (writes == null) {
+          writes = new Writes(window, listWindow);
+          writes.exchange(vertx.eventBus());
+          map.put(SHARED_MAP, writes);
+        }
+        return writes;
+      }
+    }
+
+    /**
+     * Publishes the writes to the other processes, and records theirs. The clocks of the processes differ, so a write
+     * received is recorded as made at reception: its window starts a bit late, never early.
+     */
+    public void exchange(EventBus eventBus) {
+      this.eventBus = eventBus;
+      eventBus.<JsonObject>consumer(ADDRESS, msg -> {
+        JsonObject write = msg.body();
+        if (!origin.equals(write.getString("origin"))) {
+          Long id = write.getLong("id");
+          if (id == null) {
+            markAny();
+          } else {
+            mark(id);
+          }
+        }
+      });
+    }
+
+    void written(long id) {
+      mark(id);
+      publish(new JsonObject().put("id", id));
+    }
+
+    void writtenAny() {
+      markAny();
+      publish(new JsonObject());
+    }
+
+    private void publish(JsonObject write) {
+      EventBus eventBus = this.eventBus;
+      if (eventBus != null) {
+        eventBus.publish(ADDRESS, write.put("origin", origin));
+      }
+    }
+
+    private void mark(long id) {
+      long now = System.nanoTime();
+      items.put(id, now);
+      lastWrite = now;
+      if (items.size() > PRUNE_SIZE) {
+        items.values().removeIf(time -> now - time >= window);
+      }
+    }
+
+    private void markAny() {
+      long now = System.nanoTime();
+      lastUnknownWrite = now;
+      lastWrite = now;
+    }
+
+    /**
+     * @return whether an item was written during the window of the lists
+     */
+    boolean recent() {
+      return System.nanoTime() - lastWrite < listWindow;
+    }
+
+    /**
+     * @return whether the given item may have been written during the window
+     */
+    boolean recent(long id) {
+      long now = System.nanoTime();
+      if (now - lastUnknownWrite < window) {
+        return true;
+      }
+      Long time = items.get(id);
+      return time != null && now - time < window;
+    }
+  }
+}
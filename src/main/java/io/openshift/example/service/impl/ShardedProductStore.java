@@ -0,0 +1,288 @@
+package io.openshift.example.service.impl;
+
+import io.openshift.example.service.ProductQuery;
+import io.openshift.example.service.Store;
+import io.vertx.core.json.JsonObject;
+import rx.Completable;
+import rx.Observable;
+import rx.Single;
+import rx.functions.Func1;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+
+/**
+ * Spreads the items over several stores, the shards, each holding a part of the items, by id.
+ * <p>
+ * The shard of an item is found by consistent hashing: each shard owns many points of a ring of hashes, and an item
+ * belongs to the shard owning the first point following the hash of its id. Adding a shard at the end of the list moves
+ * about {@code 1 / N} of the items to it, the other items keep their shard. Moving them is not done by the store: until
+ * they are moved, the reads and the writes of an item not found on its shard look for it on the other shards, one after
+ * the other, and the bulk operations only look for it on its shard.
+ * <p>
+ * The ids are generated by an {@link IdGenerator} rather than by the databases, so they are unique across the shards.
+ * The lists are read from all the shards at once, and merged as they are read with a {@link SortedMerge}, so they keep
+ * their order and are streamed as well. The names are ordered by code point, as the {@code C} collation does.
+ * <p>
+ * Each shard has a {@link CircuitBreaker}, so a failing shard only fails the requests it has to serve, at once once its
+ * breaker is open. The bulk operations are split by shard, each part being executed in a transaction of its shard: when
+ * a part fails, its operations are reported with a {@code 503} status, and the other parts are still applied.
+ */
+public class ShardedProductStore implements Store {
+
+  /**
+   * The number of points of each shard on the ring, the more the evener the shards.
+   */
+  private static final int POINTS_PER_SHARD = 128;
+
+  private static final Comparator<JsonObject> BY_ID = Comparator.comparingLong(item -> item.getLong("id"));
+
+  private final List<Store> shards;
+
+  private final List<CircuitBreaker> breakers;
+
+  private final IdGenerator ids;
+
+  private final long[] points;
+
+  private final int[] owners;
+
+  /**
+   * @param shards   the stores of the shards, their order sets the shard of each item
+   * @param breakers the circuit breakers of the shards, in the same order
+   * @param ids      the generator of the ids of the created items
+   */
+  public ShardedProductStore(List<Store> shards, List<CircuitBreaker> breakers, IdGenerator ids) {
+    if (shards.isEmpty() || shards.size() != breakers.size()) {
+      throw new IllegalArgumentException("each shard needs a circuit breaker");
+    }
+    this.shards = shards;
+    this.breakers = breakers;
+    this.ids = ids;
+
+    // the points of a shard only depend on its index, not on the number of shards
+    TreeMap<Long, Integer> ring = new TreeMap<>();
+    for (int shard = 0; shard < shards.size(); shard++) {
+      for (int point = 0; point < POINTS_PER_SHARD; point++) {
+        ring.put(hash(((long) shard << 32) | point), shard);
+      }
+    }
+    this.points = new long[ring.size()];
+    this.owners = new int[ring.size()];
+    int i = 0;
+    for (Map.Entry<Long, Integer> entry : ring.entrySet()) {
+      points[i] = entry.getKey();
+      owners[i++] = entry.getValue();
+    }
+  }
+
+  /**
+   * A 64-bit mix of the bits of a value (the finalizer of SplitMix64).
+   */
+  private static long hash(long value) {
+    long h = value;
+    h = (h ^ (h >>> 30)) * 0xbf58476d1ce4e5b9L;
+    h = (h ^ (h >>> 27)) * 0x94d049bb133111ebL;
+    return h ^ (h >>> 31);
+  }
+
+  /**
+   * @return the index of the shard of the given item
+   */
+  int shardOf(long id) {
+    int index = Arrays.binarySearch(points, hash(id));
+    if (index < 0) {
+      index = -index - 1;
+    }
+    // past the last point, the ring wraps around to the first one
+    return owners[index == points.length ? 0 : index];
+  }
+
+  private <T> Observable<T> call(int shard, Func1<Store, Observable<T>> call) {
+    return breakers.get(shard).protect(Observable.defer(() -> call.call(shards.get(shard))));
+  }
+
+  /**
+   * Calls the shard of an item, then the other shards in order when it does not hold the item, as an item keeps its
+   * previous shard until it is moved to the one it belongs to.
+   */
+  private <T> Observable<T> owner(long id, Func1<Store, Observable<T>> call) {
+    int owner = shardOf(id);
+    return call(owner, call).onErrorResumeNext(err -> {
+      if (!(err instanceof NoSuchElementException)) {
+        return Observable.error(err);
+      }
+      List<Observable<T>> others = new ArrayList<>(shards.size() - 1);
+      for (int shard = 0; shard < shards.size(); shard++) {
+        if (shard != owner) {
+          others.add(call(shard, call).onErrorResumeNext(other ->
+            other instanceof NoSuchElementException ? Observable.empty() : Observable.error(other)));
+        }
+      }
+      return Observable.concat(Observable.from(others)).take(1).switchIfEmpty(Observable.error(err));
+    });
+  }
+
+  private Single<JsonObject> single(long id, Func1<Store, Single<JsonObject>> call) {
+    return owner(id, store -> call.call(store).toObservable()).toSingle();
+  }
+
+  private Completable completable(long id, Func1<Store, Completable> call) {
+    // a value tells the shard holding the item from the ones not holding it
+    return owner(id, store -> call.call(store).andThen(Observable.just(Boolean.TRUE))).toCompletable();
+  }
+
+  /**
+   * Reads a list from every shard, and merges them.
+   */
+  private Observable<JsonObject> all(Comparator<JsonObject> order, Func1<Store, Observable<JsonObject>> call) {
+    List<Observable<JsonObject>> lists = new ArrayList<>(shards.size());
+    for (int shard = 0; shard < shards.size(); shard++) {
+      lists.add(call(shard, call));
+    }
+    return SortedMerge.merge(lists, order);
+  }
+
+  @Override
+  public Single<JsonObject> create(JsonObject item) {
+    return Single.defer(() -> create(ids.next(), item));
+  }
+
+  @Override
+  public Single<JsonObject> create(long id, JsonObject item) {
+    return call(shardOf(id), store -> store.create(id, item).toObservable()).toSingle();
+  }
+
+  @Override
+  public Observable<JsonObject> readAll() {
+    // the pages are ordered by id, unlike the whole lists
+    return all(BY_ID, store -> store.readAll(0, Integer.MAX_VALUE));
+  }
+
+  @Override
+  public Observable<JsonObject> readAll(long after, int limit) {
+    // each shard may hold the whole page
+    return all(BY_ID, store -> store.readAll(after, limit)).take(limit);
+  }
+
+  @Override
+  public Observable<JsonObject> search(ProductQuery query) {
+    return all(order(query), store -> store.search(query)).take(query.getLimit());
+  }
+
+  /**
+   * @return the order of the results of a search, as sorted by the database
+   */
+  static Comparator<JsonObject> order(ProductQuery query) {
+    Comparator<JsonObject> order;
+    switch (query.getSort()) {
+      case NAME:
+        // by code point, as the shards sort them (the "C" collation of PostgreSQL, unlike String.compareTo)
+        order = Comparator.<JsonObject, String>comparing(item -> item.getString("name"),
+          ShardedProductStore::compareCodePoints).thenComparing(BY_ID);
+        break;
+      case STOCK:
+        // the unknown stocks last, then first in the descending order, as PostgreSQL does
+        order = Comparator.<JsonObject, Long>comparing(item -> item.getLong("stock"),
+          Comparator.nullsLast(Comparator.naturalOrder())).thenComparing(BY_ID);
+        break;
+      default:
+        order = BY_ID;
+    }
+    return query.isDescending() ? order.reversed() : order;
+  }
+
+  static int compareCodePoints(String a, String b) {
+    int i = 0;
+    int j = 0;
+    while (i < a.length() && j < b.length()) {
+      int x = a.codePointAt(i);
+      int y = b.codePointAt(j);
+      if (x != y) {
+        return Integer.compare(x, y);
+      }
+      i += Character.charCount(x);
+      j += Character.charCount(y);
+    }
+    return Integer.compare(a.length() - i, b.length() - j);
+  }
+
+  @Override
+  public Single<JsonObject> read(long id) {
+    return single(id, store -> store.read(id));
+  }
+
+  @Override
+  public Completable update(long id, JsonObject item, long version) {
+    return completable(id, store -> store.update(id, item, version));
+  }
+
+  @Override
+  public Single<JsonObject> adjustStock(long id, long delta, boolean floor) {
+    return single(id, store -> store.adjustStock(id, delta, floor));
+  }
+
+  @Override
+  public Completable delete(long id) {
+    return completable(id, store -> store.delete(id));
+  }
+
+  @Override
+  public Single<List<JsonObject>> bulk(List<JsonObject> operations) {
+    return Single.defer(() -> {
+      JsonObject[] results = new JsonObject[operations.size()];
+      List<List<Integer>> runs = BulkOperations.plan(operations, results);
+
+      // the operations of each shard, in order, the creates getting their ids
+      List<List<Integer>> indexes = new ArrayList<>(shards.size());
+      List<List<JsonObject>> parts = new ArrayList<>(shards.size());
+      for (int shard = 0; shard < shards.size(); shard++) {
+        indexes.add(new ArrayList<>());
+        parts.add(new ArrayList<>());
+      }
+      for (List<Integer> run : runs) {
+        for (int index : run) {
+          JsonObject operation = operations.get(index);
+          if (BulkOperations.CREATE.equals(operation.getString("op")) && operation.getValue("id") == null) {
+            operation = operation.copy().put("id", ids.next());
+          }
+          int shard = shardOf(operation.getLong("id"));
+          indexes.get(shard).add(index);
+          parts.get(shard).add(operation);
+        }
+      }
+
+      List<Observable<List<JsonObject>>> calls = new ArrayList<>();
+      for (int shard = 0; shard < shards.size(); shard++) {
+        List<Integer> part = indexes.get(shard);
+        List<JsonObject> ops = parts.get(shard);
+        if (part.isEmpty()) {
+          continue;
+        }
+        calls.add(call(shard, store -> store.bulk(ops).toObservable())
+          .doOnNext(list -> {
+            for (int i = 0; i < part.size(); i++) {
+              results[part.get(i)] = list.get(i);
+            }
+          })
+          .onErrorResumeNext(err -> {
+            for (int i = 0; i < part.size(); i++) {
+              results[part.get(i)] = new JsonObject()
+                .put("status", 503)
+                .put("id", ops.get(i).getLong("id"))
+                .put("error", "The shard of the item failed: " + err.getMessage());
+            }
+            return Observable.empty();
+          }));
+      }
+      return Observable.merge(calls)
+        .toCompletable()
+        .andThen(Single.fromCallable(() -> Arrays.asList(results)));
+    });
+  }
+}
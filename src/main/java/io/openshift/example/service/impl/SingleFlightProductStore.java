@@ -0,0 +1,134 @@
+package io.openshift.example.service.impl;
+
+import io.openshift.example.service.ProductQuery;
+import io.openshift.example.service.Store;
+import io.vertx.core.json.JsonObject;
+import rx.Completable;
+import rx.Observable;
+import rx.Single;
+import rx.functions.Func0;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Shares the reads in flight between the callers asking for the same data (single-flight).
+ * <p>
+ * A read of an item, or a page of items, while the same read is in flight does not reach the other store: it waits for
+ * the read in flight and gets a copy of its result. The read is forgotten once done, so nothing is kept longer than a
+ * query lasts. The read is cancelled when all its callers are gone.
+ * <p>
+ * A write going through this store forgets the reads in flight it may affect, so a read made after the write does not
+ * get a result read before it. The full list is shared too, except when streamed at the pace of each caller, see
+ * {@link Store#streamAll()}.
+ */
+public class SingleFlightProductStore implements Store {
+
+  private final Store delegate;
+
+  /**
+   * The key of the full list in {@link #lists}, no search has an unlimited page.
+   */
+  private static final ProductQuery ALL = new ProductQuery().setLimit(Integer.MAX_VALUE);
+
+  private final Map<Long, Observable<JsonObject>> reads = new ConcurrentHashMap<>();
+
+  /**
+   * The pages and searches in flight, a page being the search of the items after an id, sorted by id.
+   */
+  private final Map<ProductQuery, Observable<JsonObject>> lists = new ConcurrentHashMap<>();
+
+  public SingleFlightProductStore(Store delegate) {
+    this.delegate = delegate;
+  }
+
+  private static <K> Observable<JsonObject> share(Map<K, Observable<JsonObject>> flights, K key,
+                                                  Func0<Observable<JsonObject>> read) {
+    return Observable.defer(() -> flights.computeIfAbsent(key, k -> {
+      AtomicReference<Observable<JsonObject>> flight = new AtomicReference<>();
+      flight.set(read.call()
+        .doOnTerminate(() -> flights.remove(k, flight.get()))
+        .doOnUnsubscribe(() -> flights.remove(k, flight.get()))
+        .replay()
+        .refCount());
+      return flight.get();
+    }))
+      // the callers may modify the items they get
+      .map(JsonObject::copy);
+  }
+
+  private void forget(long id) {
+    reads.remove(id);
+    lists.clear();
+  }
+
+  @Override
+  public Single<JsonObject> read(long id) {
+    return share(reads, id, () -> delegate.read(id).toObservable()).toSingle();
+  }
+
+  @Override
+  public Observable<JsonObject> readAll() {
+    return share(lists, ALL, delegate::readAll);
+  }
+
+  @Override
+  public Observable<JsonObject> streamAll() {
+    return delegate.streamAll();
+  }
+
+  @Override
+  public Observable<JsonObject> readAll(long after, int limit) {
+    return share(lists, new ProductQuery().setAfter(after).setLimit(limit), () -> delegate.readAll(after, limit));
+  }
+
+  @Override
+  public Observable<JsonObject> search(ProductQuery query) {
+    return share(lists, query, () -> delegate.search(query));
+  }
+
+  @Override
+  public Single<JsonObject> create(JsonObject item) {
+    return delegate.create(item)
+      .doOnEach(notification -> lists.clear());
+  }
+
+  @Override
+  public Single<JsonObject> create(long id, JsonObject item) {
+    return delegate.create(id, item)
+      .doOnEach(notification -> lists.clear());
+  }
+
+  @Override
+  public Completable update(long id, JsonObject item, long version) {
+    return delegate.update(id, item, version)
+      .doOnTerminate(() -> forget(id));
+  }
+
+  @Override
+  public Single<JsonObject> adjustStock(long id, long delta, boolean floor) {
+    return delegate.adjustStock(id, delta, floor)
+      .doOnEach(notification -> forget(id));
+  }
+
+  @Override
+  public Completable delete(long id) {
+    return delegate.delete(id)
+      .doOnTerminate(() -> forget(id));
+  }
+
+  @Override
+  public Single<List<JsonObject>> bulk(List<JsonObject> operations) {
+    return delegate.bulk(operations)
+      .doOnEach(notification -> {
+        for (JsonObject operation : operations) {
+          if (operation != null && operation.getValue("id") instanceof Number) {
+            reads.remove(operation.getLong("id"));
+          }
+        }
+        lists.clear();
+      });
+  }
+}
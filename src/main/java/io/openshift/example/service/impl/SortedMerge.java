@@ -0,0 +1,182 @@
+package io.openshift.example.service.impl;
+
+import rx.Observable;
+import rx.Producer;
+import rx.Subscriber;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Merges streams sorted in the same order into one sorted stream (k-way merge), as they are read.
+ * <p>
+ * Each stream is read one item at a time: the smallest of the current items of the streams is emitted once every
+ * stream has a current item or is completed, then the next item of its stream is requested. So the merged stream is
+ * produced at the pace of its subscriber, and holds one item per stream at most. A stream failing fails the merged stream, and
+ * unsubscribing from the merged stream unsubscribes from all the streams.
+ */
+final class SortedMerge<T> implements Observable.OnSubscribe<T> {
+
+  private final List<Observable<T>> sources;
+
+  private final Comparator<? super T> order;
+
+  private SortedMerge(List<Observable<T>> sources, Comparator<? super T> order) {
+    this.sources = sources;
+    this.order = order;
+  }
+
+  static <T> Observable<T> merge(List<Observable<T>> sources, Comparator<? super T> order) {
+    return Observable.unsafeCreate(new SortedMerge<>(sources, order));
+  }
+
+  @Override
+  public void call(Subscriber<? super T> child) {
+    State<T> state = new State<>(child, sources.size(), order);
+    child.setProducer(state);
+    for (int i = 0; i < sources.size(); i++) {
+      Source<T> source = new Source<>(state, i);
+      state.sources.add(source);
+      child.add(source);
+    }
+    for (int i = 0; i < sources.size() && !child.isUnsubscribed(); i++) {
+      sources.get(i).unsafeSubscribe(state.sources.get(i));
+    }
+  }
+
+  private static final class State<T> implements Producer {
+
+    private final Subscriber<? super T> child;
+
+    private final Comparator<? super T> order;
+
+    private final List<Source<T>> sources;
+
+    /**
+     * The current item of each stream, {@code null} when it is awaited or the stream is completed.
+     */
+    private final AtomicReferenceArray<T> heads;
+
+    private final AtomicReferenceArray<Boolean> completed;
+
+    private final AtomicLong requested = new AtomicLong();
+
+    private final AtomicInteger wip = new AtomicInteger();
+
+    private volatile Throwable error;
+
+    private boolean terminated;
+
+    private State(Subscriber<? super T> child, int count, Comparator<? super T> order) {
+      this.child = child;
+      this.order = order;
+      this.sources = new ArrayList<>(count);
+      this.heads = new AtomicReferenceArray<>(count);
+      this.completed = new AtomicReferenceArray<>(count);
+    }
+
+    @Override
+    public void request(long n) {
+      if (n > 0) {
+        requested.getAndUpdate(current -> current + n < 0 ? Long.MAX_VALUE : current + n);
+        drain();
+      }
+    }
+
+    /**
+     * Emits the items that can be, from whichever thread calls it last.
+     */
+    private void drain() {
+      if (wip.getAndIncrement() != 0) {
+        return;
+      }
+      do {
+        while (!terminated && !child.isUnsubscribed()) {
+          if (error != null) {
+            terminated = true;
+            for (Source<T> source : sources) {
+              source.unsubscribe();
+            }
+            child.onError(error);
+            break;
+          }
+          int smallest = -1;
+          boolean ready = true;
+          for (int i = 0; i < heads.length(); i++) {
+            T head = heads.get(i);
+            if (head == null) {
+              if (completed.get(i) == null) {
+                // the next item of this stream may be the smallest
+                ready = false;
+                break;
+              }
+            } else if (smallest < 0 || order.compare(head, heads.get(smallest)) < 0) {
+              smallest = i;
+            }
+          }
+          if (!ready) {
+            break;
+          }
+          if (smallest < 0) {
+            terminated = true;
+            child.onCompleted();
+            break;
+          }
+          if (requested.get() == 0) {
+            break;
+          }
+          if (requested.get() != Long.MAX_VALUE) {
+            requested.decrementAndGet();
+          }
+          T item = heads.get(smallest);
+          heads.set(smallest, null);
+          child.onNext(item);
+          sources.get(smallest).requestMore();
+        }
+      } while (wip.decrementAndGet() != 0);
+    }
+  }
+
+  private static final class Source<T> extends Subscriber<T> {
+
+    private final State<T> state;
+
+    private final int index;
+
+    private Source(State<T> state, int index) {
+      this.state = state;
+      this.index = index;
+    }
+
+    @Override
+    public void onStart() {
+      request(1);
+    }
+
+    private void requestMore() {
+      request(1);
+    }
+
+    @Override
+    public void onNext(T item) {
+      state.heads.set(index, item);
+      state.drain();
+    }
+
+    @Override
+    public void onError(Throwable e) {
+      state.error = e;
+      state.drain();
+    }
+
+    @Override
+    public void onCompleted() {
+      state.completed.set(index, Boolean.TRUE);
+      state.drain();
+    }
+  }
+}
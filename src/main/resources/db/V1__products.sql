@@ -0,0 +1,6 @@
+-- The products table
+CREATE TABLE IF NOT EXISTS products (
+  id        SERIAL PRIMARY KEY,
+  name      VARCHAR(40) NOT NULL,
+  stock     BIGINT
+);
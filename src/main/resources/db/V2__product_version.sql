@@ -0,0 +1,2 @@
+-- The version of the products, for the conditional updates
+ALTER TABLE products ADD COLUMN IF NOT EXISTS version BIGINT NOT NULL DEFAULT 0;
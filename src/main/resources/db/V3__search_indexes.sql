@@ -0,0 +1,3 @@
+-- Indexes of the searches: sorting by name, and stock ranges
+CREATE INDEX IF NOT EXISTS products_name_idx ON products (name);
+CREATE INDEX IF NOT EXISTS products_stock_idx ON products (stock);
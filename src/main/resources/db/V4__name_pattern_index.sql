@@ -0,0 +1,2 @@
+-- PostgreSQL only: let the name prefix searches (LIKE 'abc%') use an index whatever the collation of the database
+CREATE INDEX IF NOT EXISTS products_name_pattern_idx ON products (name text_pattern_ops);
@@ -0,0 +1,4 @@
+-- 64-bit ids, as generated for the shards (see ShardedProductStore)
+-- On PostgreSQL, the table is rewritten under an ACCESS EXCLUSIVE lock, blocking the reads and the writes until done:
+-- apply it as an offline migration (DB_MIGRATE=false on the pods) when the table is large.
+ALTER TABLE products ALTER COLUMN id SET DATA TYPE BIGINT;
@@ -0,0 +1,2 @@
+-- The sequence of the ids created by the SERIAL column is an integer one, failing once past 2^31 - 1
+ALTER SEQUENCE products_id_seq AS BIGINT;
@@ -0,0 +1,4 @@
+-- Demo data, inserted in an empty table when DB_SEED is true
+INSERT INTO products (name, stock) values ('Apple', 10);
+INSERT INTO products (name, stock) values ('Orange', 10);
+INSERT INTO products (name, stock) values ('Pear', 10);
@@ -0,0 +1,159 @@
+package io.openshift.example;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.HttpClientResponse;
+import io.vertx.rxjava.core.Vertx;
+import io.vertx.rxjava.ext.web.Router;
+import io.vertx.rxjava.ext.web.RoutingContext;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Check the requests rejected by the admission control, in front of a route holding the requests until released.
+ */
+public class AdmissionControlTest {
+
+  private Vertx vertx;
+
+  private HttpClient client;
+
+  private final List<RoutingContext> held = new CopyOnWriteArrayList<>();
+
+  private volatile boolean holding;
+
+  @Before
+  public void setup() {
+    vertx = Vertx.vertx();
+  }
+
+  @After
+  public void tearDown() {
+    vertx.close();
+  }
+
+  @Test
+  public void testClientsOverTheirRateAreRejected() throws Exception {
+    start(new AdmissionControl.Options().setRate(1, 2).setTrustedProxies(1));
+
+    assertThat(get("10.0.0.1").get(5, TimeUnit.SECONDS).statusCode()).isEqualTo(200);
+    assertThat(get("10.0.0.1").get(5, TimeUnit.SECONDS).statusCode()).isEqualTo(200);
+    HttpClientResponse rejected = get("10.0.0.1").get(5, TimeUnit.SECONDS);
+    assertThat(rejected.statusCode()).isEqualTo(429);
+    assertThat(rejected.getHeader("Retry-After")).isEqualTo("1");
+
+    // the other clients have their own bucket
+    assertThat(get("10.0.0.2").get(5, TimeUnit.SECONDS).statusCode()).isEqualTo(200);
+  }
+
+  @Test
+  public void testForwardedAddressesAreIgnoredWithoutTrustedProxies() throws Exception {
+    start(new AdmissionControl.Options().setRate(1, 2));
+
+    assertThat(get("10.0.0.1").get(5, TimeUnit.SECONDS).statusCode()).isEqualTo(200);
+    assertThat(get("10.0.0.2").get(5, TimeUnit.SECONDS).statusCode()).isEqualTo(200);
+    assertThat(get("10.0.0.3").get(5, TimeUnit.SECONDS).statusCode()).isEqualTo(429);
+  }
+
+  @Test
+  public void testRequestsOverTheInFlightCapAreRejected() throws Exception {
+    start(new AdmissionControl.Options().setConcurrency(1).setMaxInFlight(2).setDeadline(60_000));
+    hold();
+
+    CompletableFuture<HttpClientResponse> first = get("10.0.0.1");
+    CompletableFuture<HttpClientResponse> second = get("10.0.0.2");
+    awaitHeld(2);
+    HttpClientResponse rejected = get("10.0.0.3").get(5, TimeUnit.SECONDS);
+    assertThat(rejected.statusCode()).isEqualTo(503);
+    assertThat(rejected.getHeader("Retry-After")).isNotNull();
+
+    release();
+    assertThat(first.get(5, TimeUnit.SECONDS).statusCode()).isEqualTo(200);
+    assertThat(second.get(5, TimeUnit.SECONDS).statusCode()).isEqualTo(200);
+    assertThat(get("10.0.0.3").get(5, TimeUnit.SECONDS).statusCode()).isEqualTo(200);
+  }
+
+  @Test
+  public void testRequestsMissingTheDeadlineAreRejected() throws Exception {
+    start(new AdmissionControl.Options().setConcurrency(1).setMaxInFlight(100).setDeadline(50));
+
+    // teach the admission control that a request takes about 200 ms
+    hold();
+    CompletableFuture<HttpClientResponse> slow = get("10.0.0.1");
+    awaitHeld(1);
+    Thread.sleep(200);
+    release();
+    assertThat(slow.get(5, TimeUnit.SECONDS).statusCode()).isEqualTo(200);
+
+    // a second request would wait for the one being served
+    hold();
+    CompletableFuture<HttpClientResponse> served = get("10.0.0.1");
+    awaitHeld(1);
+    HttpClientResponse rejected = get("10.0.0.2").get(5, TimeUnit.SECONDS);
+    assertThat(rejected.statusCode()).isEqualTo(503);
+    assertThat(rejected.getHeader("Retry-After")).isEqualTo("1");
+    release();
+    assertThat(served.get(5, TimeUnit.SECONDS).statusCode()).isEqualTo(200);
+  }
+
+  private void start(AdmissionControl.Options options) throws Exception {
+    AdmissionControl admission = new AdmissionControl(options, new SimpleMeterRegistry());
+    Router router = Router.router(vertx);
+    router.route("/api/fruits*").handler(admission::admit);
+    router.get("/api/fruits").handler(ctx -> {
+      if (holding) {
+        held.add(ctx);
+      } else {
+        ctx.response().end("[]");
+      }
+    });
+    int port = vertx.createHttpServer()
+      .requestHandler(router)
+      .rxListen(0)
+      .toBlocking()
+      .value()
+      .actualPort();
+    client = vertx.getDelegate().createHttpClient(new HttpClientOptions()
+      .setDefaultPort(port)
+      .setMaxPoolSize(10));
+  }
+
+  private void hold() {
+    holding = true;
+  }
+
+  private void release() {
+    holding = false;
+    for (RoutingContext ctx : held) {
+      ctx.response().end("[]");
+    }
+    held.clear();
+  }
+
+  private void awaitHeld(int count) throws InterruptedException {
+    for (int i = 0; i < 500 && held.size() < count; i++) {
+      Thread.sleep(10);
+    }
+    assertThat(held).hasSize(count);
+  }
+
+  @SuppressWarnings("deprecation")
+  private CompletableFuture<HttpClientResponse> get(String forwardedFor) {
+    CompletableFuture<HttpClientResponse> future = new CompletableFuture<>();
+    client.get("/api/fruits", response -> response.bodyHandler(body -> future.complete(response)))
+      .exceptionHandler(future::completeExceptionally)
+      // the first address is sent by the client, the last one appended by the router
+      .putHeader("X-Forwarded-For", "192.168.0.1, " + forwardedFor)
+      .end();
+    return future;
+  }
+}
@@ -0,0 +1,74 @@
+package io.openshift.example;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Check that the binary formats read what they write, and the negotiation of the format.
+ */
+public class BinaryFormatTest {
+
+  private static final List<JsonObject> ITEMS = Arrays.asList(
+    new JsonObject().put("id", 1L).put("name", "Apple").put("stock", 10L),
+    new JsonObject().put("id", 300L).put("name", "Pêche de vigne").put("stock", 70_000L),
+    new JsonObject().put("id", 5_000_000_000L).put("name", "a name longer than thirty-two bytes").putNull("stock"),
+    new JsonObject().put("id", 4L).put("name", "Pear").put("stock", -100L)
+  );
+
+  @Test
+  public void testListsAreDecodedAsEncoded() {
+    for (BinaryFormat format : BinaryFormat.values()) {
+      Buffer buffer = Buffer.buffer();
+      format.beginList(buffer);
+      ITEMS.forEach(item -> format.writeItem(buffer, item));
+      format.endList(buffer, 0, ITEMS.size());
+
+      assertThat(format.decodeList(buffer)).as(format.name()).isEqualTo(ITEMS);
+    }
+  }
+
+  @Test
+  public void testEmptyListsAndItems() {
+    for (BinaryFormat format : BinaryFormat.values()) {
+      Buffer list = Buffer.buffer();
+      format.beginList(list);
+      format.endList(list, 0, 0);
+      assertThat(format.decodeList(list)).as(format.name()).isEmpty();
+
+      Buffer item = Buffer.buffer();
+      format.writeItem(item, ITEMS.get(1));
+      assertThat(format.decodeItem(item)).as(format.name()).isEqualTo(ITEMS.get(1));
+    }
+  }
+
+  @Test
+  public void testMapsKeepTheOtherFields() {
+    JsonObject item = new JsonObject().put("id", 1L).put("name", "Apple").put("stock", 10L).put("version", 3L)
+      .put("price", 1.5).put("organic", true);
+    for (BinaryFormat format : Arrays.asList(BinaryFormat.CBOR, BinaryFormat.MSGPACK)) {
+      Buffer buffer = Buffer.buffer();
+      format.writeItem(buffer, item);
+      assertThat(format.decodeItem(buffer)).as(format.name()).isEqualTo(item);
+    }
+  }
+
+  @Test
+  public void testNegotiation() {
+    assertThat(BinaryFormat.negotiate(null)).isNull();
+    assertThat(BinaryFormat.negotiate("application/json")).isNull();
+    assertThat(BinaryFormat.negotiate("text/html, */*")).isNull();
+    assertThat(BinaryFormat.negotiate("application/cbor")).isEqualTo(BinaryFormat.CBOR);
+    // a specific type wins over a wildcard of the same quality
+    assertThat(BinaryFormat.negotiate("*/*, application/msgpack")).isEqualTo(BinaryFormat.MSGPACK);
+    assertThat(BinaryFormat.negotiate("application/json, application/cbor")).isNull();
+    assertThat(BinaryFormat.negotiate("application/json;q=0.5, application/x-fruit-records"))
+      .isEqualTo(BinaryFormat.RECORDS);
+    assertThat(BinaryFormat.negotiate("application/cbor;q=0, application/json")).isNull();
+  }
+}
@@ -0,0 +1,141 @@
+package io.openshift.example;
+
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.HttpClientRequest;
+import io.vertx.core.http.HttpClientResponse;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.json.JsonObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.ServerSocket;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Check that the entity tag returned by a read is accepted by the conditional requests, against the in-memory store.
+ */
+public class ConditionalRequestsTest {
+
+  private Vertx vertx;
+
+  private HttpClient client;
+
+  @Before
+  public void setup() throws Exception {
+    int port;
+    try (ServerSocket socket = new ServerSocket(0)) {
+      port = socket.getLocalPort();
+    }
+    vertx = Vertx.vertx();
+    CompletableFuture<String> deployed = new CompletableFuture<>();
+    vertx.deployVerticle(MainVerticle.class.getName(), new DeploymentOptions().setConfig(new JsonObject()
+      .put("STORE_TYPE", "memory")
+      .put("HTTP_PORT", port)), ar -> {
+        if (ar.succeeded()) {
+          deployed.complete(ar.result());
+        } else {
+          deployed.completeExceptionally(ar.cause());
+        }
+      });
+    deployed.get(30, TimeUnit.SECONDS);
+    client = vertx.createHttpClient(new HttpClientOptions().setDefaultPort(port));
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    CompletableFuture<Void> closed = new CompletableFuture<>();
+    vertx.close(ar -> closed.complete(null));
+    closed.get(30, TimeUnit.SECONDS);
+  }
+
+  @Test
+  public void testReadThenUpdateIfMatch() throws Exception {
+    Response created = send(HttpMethod.POST, "/api/fruits", null, null, item("Apple", 10));
+    assertThat(created.status).isEqualTo(201);
+    String uri = "/api/fruits/" + created.body.toJsonObject().getLong("id");
+
+    Response read = send(HttpMethod.GET, uri, null, null);
+    String etag = read.response.getHeader("ETag");
+    assertThat(etag).isEqualTo("\"0\"");
+    Response notModified = send(HttpMethod.GET, uri, "If-None-Match", etag);
+    assertThat(notModified.status).isEqualTo(304);
+
+    // the tag read is sent back as is
+    Response updated = send(HttpMethod.PUT, uri, "If-Match", etag, item("Apple", 8));
+    assertThat(updated.status).isEqualTo(200);
+    assertThat(updated.response.getHeader("ETag")).isEqualTo("\"1\"");
+    assertThat(send(HttpMethod.GET, uri, "If-None-Match", etag).status).isEqualTo(200);
+
+    // the item changed since the tag was read
+    assertThat(send(HttpMethod.PUT, uri, "If-Match", etag, item("Apple", 6)).status).isEqualTo(412);
+    assertThat(send(HttpMethod.PUT, uri, "If-Match", "W/\"x\"", item("Apple", 6)).status).isEqualTo(400);
+  }
+
+  @Test
+  public void testEachRepresentationHasItsOwnTag() throws Exception {
+    Response created = send(HttpMethod.POST, "/api/fruits", null, null, item("Apple", 10));
+    String uri = "/api/fruits/" + created.body.toJsonObject().getLong("id");
+
+    String json = send(HttpMethod.GET, uri, null, null).response.getHeader("ETag");
+    Response cbor = send(HttpMethod.GET, uri, "Accept", "application/cbor");
+    String etag = cbor.response.getHeader("ETag");
+    assertThat(etag).isEqualTo("\"0-cbor\"");
+    assertThat(send(HttpMethod.GET, uri + "?pretty", null, null).response.getHeader("ETag")).isEqualTo("\"0-pretty\"");
+    // the client holding the compact JSON body does not have the indented one
+    assertThat(send(HttpMethod.GET, uri + "?pretty", "If-None-Match", json).status).isEqualTo(200);
+
+    // any representation of the version read can be sent back
+    Response updated = send(HttpMethod.PUT, uri, "If-Match", etag, item("Apple", 8));
+    assertThat(updated.status).isEqualTo(200);
+    assertThat(send(HttpMethod.PUT, uri, "If-Match", etag, item("Apple", 6)).status).isEqualTo(412);
+    assertThat(send(HttpMethod.PUT, uri, "If-Match", "\"1-xml\"", item("Apple", 6)).status).isEqualTo(400);
+  }
+
+  private static JsonObject item(String name, int stock) {
+    return new JsonObject().put("name", name).put("stock", stock);
+  }
+
+  private Response send(HttpMethod method, String uri, String header, String value) throws Exception {
+    return send(method, uri, header, value, null);
+  }
+
+  private Response send(HttpMethod method, String uri, String header, String value, JsonObject body)
+    throws Exception {
+    CompletableFuture<Response> done = new CompletableFuture<>();
+    @SuppressWarnings("deprecation")
+    HttpClientRequest request = client.request(method, uri, response ->
+      response.bodyHandler(buffer -> done.complete(new Response(response, buffer))));
+    if (header != null) {
+      request.putHeader(header, value);
+    }
+    if (body != null) {
+      request.putHeader("Content-Type", "application/json").end(body.encode());
+    } else {
+      request.end();
+    }
+    return done.get(10, TimeUnit.SECONDS);
+  }
+
+  private static class Response {
+
+    private final HttpClientResponse response;
+
+    private final int status;
+
+    private final Buffer body;
+
+    private Response(HttpClientResponse response, Buffer body) {
+      this.response = response;
+      this.status = response.statusCode();
+      this.body = body;
+    }
+  }
+}
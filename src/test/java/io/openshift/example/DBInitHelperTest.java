@@ -0,0 +1,112 @@
+package io.openshift.example;
+
+import io.openshift.example.service.impl.PooledDataSourceProvider;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import io.vertx.rxjava.core.Vertx;
+import io.vertx.rxjava.ext.jdbc.JDBCClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Check that the migrations are applied once, keep the data, and that the demo data only goes to an empty table.
+ */
+@RunWith(VertxUnitRunner.class)
+public class DBInitHelperTest {
+
+  private static final AtomicInteger DATABASES = new AtomicInteger();
+
+  private Vertx vertx;
+
+  private JDBCClient jdbc;
+
+  @Before
+  public void setup() {
+    vertx = Vertx.vertx();
+    jdbc = JDBCClient.createNonShared(vertx, new JsonObject()
+      .put("url", "jdbc:h2:mem:migration-" + DATABASES.incrementAndGet()
+        + ";MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1")
+      .put("driver_class", "org.h2.Driver")
+      .put("user", "sa")
+      .put("password", ""));
+  }
+
+  @After
+  public void tearDown(TestContext tc) {
+    jdbc.close();
+    vertx.close(tc.asyncAssertSuccess());
+  }
+
+  @Test
+  public void testMigrationsAreAppliedOnce(TestContext tc) {
+    tc.assertEquals(DBInitHelper.SCHEMA_VERSION, DBInitHelper.migrate(vertx, jdbc, false).toBlocking().value());
+    tc.assertEquals(0, DBInitHelper.migrate(vertx, jdbc, false).toBlocking().value());
+
+    tc.assertEquals((long) DBInitHelper.SCHEMA_VERSION, count("SELECT COUNT(*) FROM schema_version"));
+    // the migrated table has every column
+    jdbc.rxUpdate("INSERT INTO products (name, stock, version) VALUES ('Cherry', 1, 2)").toBlocking().value();
+  }
+
+  @Test
+  public void testFreshDatabaseBehindTheStatementCache(TestContext tc) {
+    // the pool of the application wraps the errors of the cached statements
+    JDBCClient pooled = JDBCClient.createNonShared(vertx, new JsonObject()
+      .put("provider_class", PooledDataSourceProvider.class.getName())
+      .put("url", "jdbc:h2:mem:migration-" + DATABASES.incrementAndGet()
+        + ";MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1")
+      .put("driver_class", "org.h2.Driver")
+      .put("user", "sa")
+      .put("password", "")
+      .put("statement_cache_size", 32));
+    try {
+      tc.assertEquals(DBInitHelper.SCHEMA_VERSION, DBInitHelper.migrate(vertx, pooled, false).toBlocking().value());
+    } finally {
+      pooled.close();
+    }
+  }
+
+  @Test
+  public void testMigrationKeepsTheData(TestContext tc) {
+    // a table created before the migrations were versioned
+    jdbc.rxUpdate("CREATE TABLE products (id SERIAL PRIMARY KEY, name VARCHAR(40) NOT NULL, stock BIGINT,"
+      + " version BIGINT NOT NULL DEFAULT 0)").toBlocking().value();
+    jdbc.rxUpdate("INSERT INTO products (name, stock) VALUES ('Cherry', 1)").toBlocking().value();
+
+    DBInitHelper.migrate(vertx, jdbc, false).toBlocking().value();
+    tc.assertEquals(1L, count("SELECT COUNT(*) FROM products"));
+  }
+
+  @Test
+  public void testOnlyAMissingVersionTableMeansAFreshDatabase(TestContext tc) {
+    // the versions cannot be read, the schema must not be migrated again
+    jdbc.rxUpdate("CREATE TABLE broken (divisor INTEGER)").toBlocking().value();
+    jdbc.rxUpdate("INSERT INTO broken VALUES (0)").toBlocking().value();
+    jdbc.rxUpdate("CREATE VIEW schema_version AS SELECT 1 / divisor AS version FROM broken").toBlocking().value();
+
+    try {
+      DBInitHelper.migrate(vertx, jdbc, false).toBlocking().value();
+      tc.fail("the migration should fail");
+    } catch (RuntimeException e) {
+      // expected
+    }
+    tc.assertEquals(0L, count("SELECT COUNT(*) FROM information_schema.tables WHERE table_name = 'products'"));
+  }
+
+  @Test
+  public void testSeedOnlyFillsAnEmptyTable(TestContext tc) {
+    DBInitHelper.migrate(vertx, jdbc, false).toBlocking().value();
+
+    tc.assertTrue(DBInitHelper.seed(vertx, jdbc).toBlocking().value());
+    tc.assertFalse(DBInitHelper.seed(vertx, jdbc).toBlocking().value());
+    tc.assertEquals(3L, count("SELECT COUNT(*) FROM products"));
+  }
+
+  private long count(String sql) {
+    return jdbc.rxQuery(sql).toBlocking().value().getResults().get(0).getLong(0);
+  }
+}
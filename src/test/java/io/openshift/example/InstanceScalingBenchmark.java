@@ -0,0 +1,111 @@
+package io.openshift.example;
+
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.json.JsonObject;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares the throughput of one verticle instance with the throughput of several instances.
+ * <p>
+ * Reads are served from the cache, so the event loops, and not the database, are the bottleneck. The result depends on
+ * the load of the machine, so it is a benchmark rather than a test. It is launched with:
+ * <pre>
+ * mvn test-compile exec:java -Dexec.mainClass=io.openshift.example.InstanceScalingBenchmark -Dexec.classpathScope=test
+ * </pre>
+ * The {@code instances} system property sets the number of instances compared with one, by default one per two cores.
+ */
+public class InstanceScalingBenchmark {
+
+  private static final int CONCURRENCY = 128;
+
+  public static void main(String[] args) throws Exception {
+    int instances = Integer.getInteger("instances", Math.max(2, Runtime.getRuntime().availableProcessors() / 2));
+
+    double single = measure(1);
+    double multiple = measure(instances);
+    System.out.printf("1 instance: %.0f req/s, %d instances: %.0f req/s (x%.2f)%n",
+      single, instances, multiple, multiple / single);
+  }
+
+  private static double measure(int instances) throws Exception {
+    int port = freePort();
+    Vertx vertx = Vertx.vertx();
+    try {
+      JsonObject config = new JsonObject()
+        .put("DB_URL", "jdbc:h2:mem:scaling-" + instances + ";MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1")
+        .put("DB_DRIVER", "org.h2.Driver")
+        .put("DB_USERNAME", "sa")
+        .put("DB_PASSWORD", "")
+        .put("CACHE_ENABLED", true)
+        .put("CACHE_TTL", 60_000)
+        .put("INSTANCES", instances)
+        .put("HTTP_PORT", port);
+      CompletableFuture<String> deployed = new CompletableFuture<>();
+      vertx.deployVerticle(MainVerticle.class.getName(), new DeploymentOptions().setConfig(config), ar -> {
+        if (ar.succeeded()) {
+          deployed.complete(ar.result());
+        } else {
+          deployed.completeExceptionally(ar.cause());
+        }
+      });
+      deployed.get(30, TimeUnit.SECONDS);
+
+      HttpClient client = vertx.createHttpClient(new HttpClientOptions()
+        .setDefaultPort(port)
+        .setKeepAlive(true)
+        .setMaxPoolSize(CONCURRENCY));
+      long id = create(client);
+
+      // closed loop: each response triggers the next request
+      AtomicLong completed = new AtomicLong();
+      AtomicBoolean running = new AtomicBoolean(true);
+      for (int i = 0; i < CONCURRENCY; i++) {
+        loop(client, "/api/fruits/" + id, completed, running);
+      }
+      Thread.sleep(1000);
+      long before = completed.get();
+      Thread.sleep(3000);
+      long after = completed.get();
+      running.set(false);
+      return (after - before) / 3.0;
+    } finally {
+      CompletableFuture<Void> closed = new CompletableFuture<>();
+      vertx.close(ar -> closed.complete(null));
+      closed.get(30, TimeUnit.SECONDS);
+    }
+  }
+
+  private static int freePort() throws IOException {
+    try (ServerSocket socket = new ServerSocket(0)) {
+      return socket.getLocalPort();
+    }
+  }
+
+  @SuppressWarnings("deprecation")
+  private static void loop(HttpClient client, String uri, AtomicLong completed, AtomicBoolean running) {
+    client.getNow(uri, response -> response.bodyHandler(body -> {
+      completed.incrementAndGet();
+      if (running.get()) {
+        loop(client, uri, completed, running);
+      }
+    }));
+  }
+
+  @SuppressWarnings("deprecation")
+  private static long create(HttpClient client) throws Exception {
+    CompletableFuture<JsonObject> created = new CompletableFuture<>();
+    client.post("/api/fruits", response -> response.bodyHandler(body -> created.complete(body.toJsonObject())))
+      .putHeader("Content-Type", "application/json")
+      .end(new JsonObject().put("name", "apple").put("stock", 10).encode());
+    return created.get(10, TimeUnit.SECONDS).getLong("id");
+  }
+}
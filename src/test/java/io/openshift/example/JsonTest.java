@@ -0,0 +1,37 @@
+package io.openshift.example;
+
+import io.netty.buffer.ByteBuf;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Check that the items written into buffers have the bytes of their usual encoding.
+ */
+public class JsonTest {
+
+  @Test
+  public void testItemsAreWrittenAsEncoded() {
+    check(new JsonObject().put("id", 1L).put("name", "Apple").put("stock", 10).put("version", 0L));
+    check(new JsonObject().put("id", Long.MAX_VALUE).put("name", "Pêche \"plate\" \\ 桃").put("stock", -42L));
+    check(new JsonObject().put("id", Long.MIN_VALUE).put("name", "tab\tnew line\ncontrol\u0001\u001f")
+      .putNull("stock"));
+    check(new JsonObject().put("price", 1.5).put("ratio", 0.1f).put("organic", true).put("nan", Double.NaN));
+    check(new JsonObject().put("nested", new JsonObject().put("a", 1)).put("array", new JsonArray().add(1).add("b")));
+    check(new JsonObject());
+  }
+
+  private static void check(JsonObject item) {
+    ByteBuf buffer = Json.allocate();
+    try {
+      Json.write(buffer, item);
+      assertThat(buffer.toString(StandardCharsets.UTF_8)).isEqualTo(item.encode());
+    } finally {
+      buffer.release();
+    }
+  }
+}
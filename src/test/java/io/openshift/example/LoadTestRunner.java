@@ -0,0 +1,200 @@
+package io.openshift.example;
+
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpVersion;
+import io.vertx.core.json.JsonObject;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * An end-to-end load test of the application, running in-process against an H2 database in PostgreSQL mode.
+ * <p>
+ * Requests are sent at a fixed rate whatever the response times are (open model), and each latency is measured from
+ * the time the request was supposed to be sent, so a stalled server is not hidden by a stalled load generator
+ * (coordinated omission). The traffic is 80% single reads, 5% list reads, 10% updates and 5% creations.
+ * <p>
+ * It is launched with:
+ * <pre>
+ * mvn test-compile exec:java -Dexec.mainClass=io.openshift.example.LoadTestRunner -Dexec.classpathScope=test
+ * </pre>
+ * The {@code rate} (requests per second), {@code duration} and {@code warmup} (seconds), {@code instances} (verticle
+ * instances), {@code poolSize} (database connections) and {@code connections} (HTTP connections) system properties
+ * tune the run.
+ * <p>
+ * With {@code -Dprotocol=h2c}, the requests are sent over HTTP/2 without TLS (prior knowledge) instead of HTTP/1.1
+ * keep-alive connections: each of the {@code connections} carries up to {@code streams} requests at once, to compare
+ * a few multiplexed connections with many HTTP/1.1 ones for the same traffic.
+ */
+public class LoadTestRunner {
+
+  private static final int PORT = 8080;
+
+  private static final int ITEMS = 100;
+
+  public static void main(String[] args) throws Exception {
+    int rate = Integer.getInteger("rate", 1000);
+    int duration = Integer.getInteger("duration", 30);
+    int warmup = Integer.getInteger("warmup", 10);
+    int instances = Integer.getInteger("instances", 1);
+    int poolSize = Integer.getInteger("poolSize", 15);
+    boolean h2c = "h2c".equals(System.getProperty("protocol", "http1"));
+    int connections = Integer.getInteger("connections", h2c ? 1 : 64);
+    int streams = Integer.getInteger("streams", 100);
+
+    Vertx vertx = Vertx.vertx();
+    try {
+      JsonObject config = new JsonObject()
+        .put("DB_URL", "jdbc:h2:mem:crud;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1")
+        .put("DB_DRIVER", "org.h2.Driver")
+        .put("DB_USERNAME", "sa")
+        .put("DB_PASSWORD", "")
+        .put("DB_POOL_SIZE", poolSize)
+        .put("INSTANCES", instances);
+      CompletableFuture<String> deployed = new CompletableFuture<>();
+      vertx.deployVerticle(MainVerticle.class.getName(),
+        new DeploymentOptions().setConfig(config),
+        ar -> {
+          if (ar.succeeded()) {
+            deployed.complete(ar.result());
+          } else {
+            deployed.completeExceptionally(ar.cause());
+          }
+        });
+      deployed.get(30, TimeUnit.SECONDS);
+
+      HttpClientOptions options = new HttpClientOptions()
+        .setDefaultPort(PORT)
+        .setKeepAlive(true)
+        .setMaxPoolSize(connections);
+      if (h2c) {
+        options
+          .setProtocolVersion(HttpVersion.HTTP_2)
+          .setHttp2ClearTextUpgrade(false)
+          .setHttp2MaxPoolSize(connections)
+          .setHttp2MultiplexingLimit(streams);
+      }
+      HttpClient client = vertx.createHttpClient(options);
+      awaitReady(client);
+      List<Long> ids = seed(client);
+
+      Histogram histogram = new ConcurrentHistogram(TimeUnit.MINUTES.toNanos(1), 3);
+      AtomicLong errors = new AtomicLong();
+      AtomicLong pending = new AtomicLong();
+
+      System.out.printf("rate %d req/s, %d s (+%d s warm-up), %d instance(s), %d database connection(s), %s%n",
+        rate, duration, warmup, instances, poolSize,
+        h2c ? "h2c, " + connections + " connection(s) x " + streams + " stream(s)"
+          : "HTTP/1.1, " + connections + " connection(s)");
+
+      long interval = TimeUnit.SECONDS.toNanos(1) / rate;
+      long start = System.nanoTime();
+      long measureFrom = start + TimeUnit.SECONDS.toNanos(warmup);
+      long end = measureFrom + TimeUnit.SECONDS.toNanos(duration);
+      for (long sent = 0; start + sent * interval < end; sent++) {
+        long intended = start + sent * interval;
+        long now;
+        while ((now = System.nanoTime()) < intended) {
+          LockSupport.parkNanos(intended - now);
+        }
+        boolean measured = intended >= measureFrom;
+        pending.incrementAndGet();
+        send(client, ids, status -> {
+          if (measured) {
+            histogram.recordValue(Math.min(System.nanoTime() - intended, histogram.getHighestTrackableValue()));
+            if (status < 200 || status >= 300) {
+              errors.incrementAndGet();
+            }
+          }
+          pending.decrementAndGet();
+        });
+      }
+
+      long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+      while (pending.get() > 0 && System.nanoTime() < deadline) {
+        Thread.sleep(10);
+      }
+
+      System.out.printf("throughput %.0f req/s, %d errors, %d not completed%n",
+        histogram.getTotalCount() / (double) duration, errors.get(), pending.get());
+      System.out.printf("latency (ms) p50 %.3f   p99 %.3f   p999 %.3f   max %.3f%n",
+        toMillis(histogram.getValueAtPercentile(50)),
+        toMillis(histogram.getValueAtPercentile(99)),
+        toMillis(histogram.getValueAtPercentile(99.9)),
+        toMillis(histogram.getMaxValue()));
+      histogram.outputPercentileDistribution(System.out, 5, 1_000_000.0);
+    } finally {
+      vertx.close();
+    }
+  }
+
+  private static void send(HttpClient client, List<Long> ids, StatusHandler handler) {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    int dice = random.nextInt(100);
+    long id = ids.get(random.nextInt(ids.size()));
+    String item = new JsonObject().put("name", "fruit-" + id).put("stock", random.nextInt(1000)).encode();
+    if (dice < 80) {
+      request(client, HttpMethod.GET, "/api/fruits/" + id, null, handler);
+    } else if (dice < 85) {
+      request(client, HttpMethod.GET, "/api/fruits?limit=100", null, handler);
+    } else if (dice < 95) {
+      request(client, HttpMethod.PUT, "/api/fruits/" + id, item, handler);
+    } else {
+      request(client, HttpMethod.POST, "/api/fruits", item, handler);
+    }
+  }
+
+  @SuppressWarnings("deprecation")
+  private static void request(HttpClient client, HttpMethod method, String uri, String body, StatusHandler handler) {
+    client.request(method, uri, response -> response.bodyHandler(b -> handler.handle(response.statusCode())))
+      .exceptionHandler(err -> handler.handle(-1))
+      .putHeader("Content-Type", "application/json")
+      .end(body == null ? "" : body);
+  }
+
+  private static void awaitReady(HttpClient client) throws Exception {
+    for (int i = 0; i < 300; i++) {
+      CompletableFuture<Integer> status = new CompletableFuture<>();
+      request(client, HttpMethod.GET, "/health", null, status::complete);
+      if (status.get(10, TimeUnit.SECONDS) == 200) {
+        return;
+      }
+      Thread.sleep(100);
+    }
+    throw new IllegalStateException("The application did not start");
+  }
+
+  @SuppressWarnings("deprecation")
+  private static List<Long> seed(HttpClient client) throws Exception {
+    List<Long> ids = new ArrayList<>();
+    for (int i = 0; i < ITEMS; i++) {
+      CompletableFuture<JsonObject> created = new CompletableFuture<>();
+      client.request(HttpMethod.POST, "/api/fruits",
+        response -> response.bodyHandler(b -> created.complete(b.toJsonObject())))
+        .exceptionHandler(created::completeExceptionally)
+        .putHeader("Content-Type", "application/json")
+        .end(new JsonObject().put("name", "fruit-" + i).put("stock", 100).encode());
+      ids.add(created.get(10, TimeUnit.SECONDS).getLong("id"));
+    }
+    return ids;
+  }
+
+  private static double toMillis(long nanos) {
+    return nanos / 1_000_000.0;
+  }
+
+  private interface StatusHandler {
+    void handle(int status);
+  }
+}
@@ -20,6 +20,7 @@ import static io.restassured.RestAssured.get;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.entry;
 import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNot.not;
 
 /**
  * Check the behavior of the application when running in OpenShift.
@@ -48,7 +49,7 @@ public class OpenShiftIT {
   public void testRetrieveWhenNoFruits() {
     get()
       .then()
-      .assertThat().statusCode(200).body(is("[ ]"));
+      .assertThat().statusCode(200).body(is("[]"));
   }
 
   @Test
@@ -337,7 +338,7 @@ public class OpenShiftIT {
 
     get()
       .then()
-      .assertThat().statusCode(200).body(is("[ ]"));
+      .assertThat().statusCode(200).body(is("[]"));
   }
 
   @Test
@@ -347,7 +348,252 @@ public class OpenShiftIT {
 
     get()
       .then()
-      .assertThat().statusCode(200).body(is("[ ]"));
+      .assertThat().statusCode(200).body(is("[]"));
   }
 
+  @Test
+  public void testPaginatingFruits() {
+    for (String name : new String[] {"apple", "pear", "banana"}) {
+      given()
+        .body(new JsonObject().put("name", name).put("stock", 5).encode())
+        .post()
+        .then().assertThat().statusCode(201);
+    }
+
+    Response response = given()
+      .queryParam("limit", 2)
+      .get()
+      .then().assertThat().statusCode(200).extract().response();
+    JsonArray page = new JsonArray(response.asString());
+    assertThat(page).hasSize(2);
+    assertThat(page.getJsonObject(0).getString("name")).isEqualTo("apple");
+    String cursor = response.header("X-Next-Cursor");
+    assertThat(cursor).isEqualTo(String.valueOf(page.getJsonObject(1).getLong("id")));
+
+    response = given()
+      .queryParam("after", cursor)
+      .queryParam("limit", 2)
+      .get()
+      .then().assertThat().statusCode(200).extract().response();
+    page = new JsonArray(response.asString());
+    assertThat(page).hasSize(1);
+    assertThat(page.getJsonObject(0).getString("name")).isEqualTo("banana");
+    assertThat(response.header("X-Next-Cursor")).isNull();
+  }
+
+  @Test
+  public void testPaginatingWithInvalidLimit() {
+    given()
+      .queryParam("limit", 0)
+      .get()
+      .then().assertThat().statusCode(400);
+  }
+
+  @Test
+  public void testStreamingFruits() {
+    given()
+      .queryParam("stream", true)
+      .get()
+      .then().assertThat().statusCode(200).body(is("[]"));
+
+    given()
+      .body(new JsonObject().put("name", "apple").put("stock", 5).encode())
+      .post()
+      .then().assertThat().statusCode(201);
+
+    String payload = given()
+      .queryParam("stream", true)
+      .get()
+      .then().assertThat().statusCode(200).extract().asString();
+    JsonArray json = new JsonArray(payload);
+    assertThat(json).hasSize(1);
+    assertThat(json.getJsonObject(0).getMap()).contains(entry("name", "apple"), entry("stock", 5));
+  }
+
+  @Test
+  public void testBulkOperations() {
+    Response response = given()
+      .body(new JsonObject().put("name", "apple").put("stock", 5).encode())
+      .post()
+      .then().assertThat().statusCode(201).extract().response();
+    long id = new JsonObject(response.asString()).getLong("id");
+
+    JsonArray operations = new JsonArray()
+      .add(new JsonObject().put("op", "create").put("item", new JsonObject().put("name", "pear").put("stock", 3)))
+      .add(new JsonObject().put("op", "create").put("item", new JsonObject().put("name", "banana")))
+      .add(new JsonObject().put("op", "update").put("id", id)
+        .put("item", new JsonObject().put("name", "apple").put("stock", 7)))
+      .add(new JsonObject().put("op", "delete").put("id", 99999));
+
+    String payload = given()
+      .body(operations.encode())
+      .post("/_bulk")
+      .then().assertThat().statusCode(200).extract().asString();
+    JsonArray results = new JsonArray(payload);
+    assertThat(results).hasSize(4);
+    assertThat(results.getJsonObject(0).getInteger("status")).isEqualTo(201);
+    assertThat(results.getJsonObject(1).getInteger("status")).isEqualTo(422);
+    assertThat(results.getJsonObject(2).getInteger("status")).isEqualTo(200);
+    assertThat(results.getJsonObject(3).getInteger("status")).isEqualTo(404);
+
+    JsonArray json = new JsonArray(get().asString());
+    assertThat(json).hasSize(2);
+
+    payload = get("/" + id).then().assertThat().statusCode(200).extract().asString();
+    assertThat(new JsonObject(payload).getInteger("stock")).isEqualTo(7);
+  }
+
+  @Test
+  public void testBulkOperationsWithNdjson() {
+    String payload = given()
+      .contentType("application/x-ndjson")
+      .body("{\"op\":\"create\",\"item\":{\"name\":\"apple\",\"stock\":1}}\n"
+        + "{\"op\":\"create\",\"item\":{\"name\":\"pear\",\"stock\":2}}\n")
+      .post("/_bulk")
+      .then().assertThat().statusCode(200).extract().asString();
+    JsonArray results = new JsonArray(payload);
+    assertThat(results).hasSize(2);
+    assertThat(results.getJsonObject(1).getInteger("status")).isEqualTo(201);
+
+    JsonArray json = new JsonArray(get().asString());
+    assertThat(json).hasSize(2);
+  }
+
+  @Test
+  public void testPrettyPrinting() {
+    given()
+      .body(new JsonObject().put("name", "apple").put("stock", 5).encode())
+      .post()
+      .then().assertThat().statusCode(201);
+
+    assertThat(get().asString()).doesNotContain("\n");
+    assertThat(given().queryParam("pretty", true).get().asString()).contains("\n");
+    assertThat(given().header("X-Pretty-Print", "true").get().asString()).contains("\n");
+  }
+
+  @Test
+  public void testCompressingLargeLists() {
+    for (int i = 0; i < 50; i++) {
+      given()
+        .body(new JsonObject().put("name", "fruit-" + i).put("stock", i).encode())
+        .post()
+        .then().assertThat().statusCode(201);
+    }
+
+    given()
+      .header("Accept-Encoding", "gzip")
+      .get()
+      .then().assertThat().statusCode(200).header("Content-Encoding", "gzip");
+  }
+
+  @Test
+  public void testConditionalRead() {
+    Response response = given()
+      .body(new JsonObject().put("name", "apple").put("stock", 5).encode())
+      .post()
+      .then().assertThat().statusCode(201).extract().response();
+    String location = response.header("Location");
+    String id = location.substring(location.lastIndexOf('/'));
+
+    String etag = get(id).then().assertThat().statusCode(200).extract().header("ETag");
+    assertThat(etag).isNotNull();
+
+    given()
+      .header("If-None-Match", etag)
+      .get(id)
+      .then().assertThat().statusCode(304).body(is(""));
+
+    given()
+      .body(new JsonObject().put("name", "apple").put("stock", 6).encode())
+      .put(id)
+      .then().assertThat().statusCode(200);
+
+    given()
+      .header("If-None-Match", etag)
+      .get(id)
+      .then().assertThat().statusCode(200).header("ETag", not(etag));
+  }
+
+  @Test
+  public void testAdjustingTheStock() {
+    String location = given()
+      .body(new JsonObject().put("name", "apple").put("stock", 5).encode())
+      .post()
+      .then().assertThat().statusCode(201).extract().header("Location");
+    String id = location.substring(location.lastIndexOf('/'));
+
+    String payload = given()
+      .body(new JsonObject().put("delta", -3).encode())
+      .patch(id + "/stock")
+      .then().assertThat().statusCode(200).extract().asString();
+    assertThat(new JsonObject(payload).getInteger("stock")).isEqualTo(2);
+
+    given()
+      .body(new JsonObject().put("delta", -3).encode())
+      .patch(id + "/stock")
+      .then().assertThat().statusCode(409);
+
+    given()
+      .body(new JsonObject().put("delta", "three").encode())
+      .patch(id + "/stock")
+      .then().assertThat().statusCode(422);
+
+    given()
+      .body(new JsonObject().put("delta", 1).encode())
+      .patch("/999999/stock")
+      .then().assertThat().statusCode(404);
+  }
+
+  @Test
+  public void testConditionalUpdate() {
+    String location = given()
+      .body(new JsonObject().put("name", "apple").put("stock", 5).encode())
+      .post()
+      .then().assertThat().statusCode(201).extract().header("Location");
+    String id = location.substring(location.lastIndexOf('/'));
+    long version = new JsonObject(get(id).asString()).getLong("version");
+
+    given()
+      .header("If-Match", "\"" + version + "\"")
+      .body(new JsonObject().put("name", "apple").put("stock", 6).encode())
+      .put(id)
+      .then().assertThat().statusCode(200);
+
+    // the version changed with the previous update
+    given()
+      .header("If-Match", "\"" + version + "\"")
+      .body(new JsonObject().put("name", "apple").put("stock", 7).encode())
+      .put(id)
+      .then().assertThat().statusCode(412);
+
+    assertThat(new JsonObject(get(id).asString()).getInteger("stock")).isEqualTo(6);
+  }
+
+  @Test
+  public void testSearchingFruits() {
+    String[] names = {"banana", "blueberry", "apricot", "cherry"};
+    for (int i = 0; i < names.length; i++) {
+      given()
+        .body(new JsonObject().put("name", names[i]).put("stock", i).encode())
+        .post()
+        .then().assertThat().statusCode(201);
+    }
+
+    JsonArray json = new JsonArray(given().queryParam("name", "b").get().asString());
+    assertThat(json).hasSize(2);
+
+    json = new JsonArray(given().queryParam("contains", "ERR").get().asString());
+    assertThat(json).hasSize(2);
+
+    json = new JsonArray(given().queryParam("minStock", 1).queryParam("maxStock", 2).get().asString());
+    assertThat(json).hasSize(2);
+
+    json = new JsonArray(given().queryParam("sort", "-stock").queryParam("limit", 1).get().asString());
+    assertThat(json.getJsonObject(0).getString("name")).isEqualTo("cherry");
+
+    given()
+      .queryParam("sort", "color")
+      .get()
+      .then().assertThat().statusCode(400);
+  }
 }
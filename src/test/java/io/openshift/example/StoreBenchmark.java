@@ -0,0 +1,119 @@
+package io.openshift.example;
+
+import io.openshift.example.service.Store;
+import io.openshift.example.service.impl.InMemoryProductStore;
+import io.openshift.example.service.impl.JdbcProductStore;
+import io.openshift.example.service.impl.PgProductStore;
+import io.vertx.core.json.JsonObject;
+import io.vertx.pgclient.PgConnectOptions;
+import io.vertx.rxjava.core.Vertx;
+import io.vertx.rxjava.ext.jdbc.JDBCClient;
+import io.vertx.rxjava.pgclient.PgPool;
+import io.vertx.sqlclient.PoolOptions;
+import rx.Observable;
+import rx.Single;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the throughput and latency of the {@link JdbcProductStore} and the {@link PgProductStore} on the same
+ * database, with a mix of 90% reads and 10% updates. The {@link InMemoryProductStore} gives the baseline, without any
+ * database.
+ * <p>
+ * It needs a running database (see the README), and is launched with:
+ * <pre>
+ * mvn test-compile exec:java -Dexec.mainClass=io.openshift.example.StoreBenchmark -Dexec.classpathScope=test
+ * </pre>
+ * The {@code requests}, {@code concurrency} and {@code poolSize} system properties tune the run.
+ */
+public class StoreBenchmark {
+
+  public static void main(String[] args) {
+    int requests = Integer.getInteger("requests", 50_000);
+    int concurrency = Integer.getInteger("concurrency", 64);
+    int poolSize = Integer.getInteger("poolSize", 4);
+
+    Vertx vertx = Vertx.vertx();
+    JDBCClient jdbc = JDBCClient.createShared(vertx, new JsonObject()
+      .put("url", "jdbc:postgresql://" + getEnv("MY_DATABASE_SERVICE_HOST", "localhost") + ":5432/my_data")
+      .put("driver_class", "org.postgresql.Driver")
+      .put("user", getEnv("DB_USERNAME", "user"))
+      .put("password", getEnv("DB_PASSWORD", "password"))
+      .put("max_pool_size", poolSize)
+    );
+    PgPool pool = PgPool.pool(vertx,
+      new PgConnectOptions()
+        .setHost(getEnv("MY_DATABASE_SERVICE_HOST", "localhost"))
+        .setPort(5432)
+        .setDatabase("my_data")
+        .setUser(getEnv("DB_USERNAME", "user"))
+        .setPassword(getEnv("DB_PASSWORD", "password"))
+        .setPipeliningLimit(256),
+      new PoolOptions().setMaxSize(poolSize));
+
+    try {
+      DBInitHelper.migrate(vertx, jdbc, true).toBlocking().value();
+      run("jdbc", new JdbcProductStore(jdbc), requests, concurrency);
+      run("pg", new PgProductStore(pool), requests, concurrency);
+      run("memory", new InMemoryProductStore(null), requests, concurrency);
+    } finally {
+      vertx.close();
+    }
+  }
+
+  private static void run(String name, Store store, int requests, int concurrency) {
+    long id = store.create(new JsonObject().put("name", "benchmark").put("stock", 0))
+      .toBlocking().value()
+      .getLong("id");
+
+    // warm-up
+    measure(store, id, requests / 10, concurrency);
+
+    long begin = System.nanoTime();
+    long[] latencies = measure(store, id, requests, concurrency);
+    long elapsed = System.nanoTime() - begin;
+
+    Arrays.sort(latencies);
+    System.out.printf("%-6s %10.0f ops/s   p50 %8.3f ms   p99 %8.3f ms   max %8.3f ms%n",
+      name,
+      requests / (elapsed / 1e9),
+      percentile(latencies, 0.50),
+      percentile(latencies, 0.99),
+      percentile(latencies, 1.0));
+
+    store.delete(id).await();
+  }
+
+  private static long[] measure(Store store, long id, int requests, int concurrency) {
+    List<Long> latencies = Observable.range(0, requests)
+      .flatMap(i -> {
+        long start = System.nanoTime();
+        Single<?> op;
+        if (i % 10 == 0) {
+          op = store.update(id, new JsonObject().put("name", "benchmark").put("stock", i), Store.ANY_VERSION).toSingleDefault(id);
+        } else {
+          op = store.read(id);
+        }
+        return op.map(x -> System.nanoTime() - start).toObservable();
+      }, concurrency)
+      .toList()
+      .toBlocking()
+      .single();
+    return latencies.stream().mapToLong(Long::longValue).toArray();
+  }
+
+  private static double percentile(long[] sorted, double p) {
+    int index = (int) Math.ceil(p * sorted.length) - 1;
+    return sorted[Math.max(0, index)] / (double) TimeUnit.MILLISECONDS.toNanos(1);
+  }
+
+  private static String getEnv(String key, String dv) {
+    String s = System.getenv(key);
+    if (s == null) {
+      return dv;
+    }
+    return s;
+  }
+}
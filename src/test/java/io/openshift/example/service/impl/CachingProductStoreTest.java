@@ -0,0 +1,203 @@
+package io.openshift.example.service.impl;
+
+import io.openshift.example.service.ProductQuery;
+import io.openshift.example.service.Store;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import io.vertx.rxjava.core.Vertx;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import rx.Completable;
+import rx.Observable;
+import rx.Single;
+
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Check the behavior of the cache, and the invalidations exchanged between several caches sharing a store.
+ */
+@RunWith(VertxUnitRunner.class)
+public class CachingProductStoreTest {
+
+  private Vertx vertx;
+
+  private CountingStore backend;
+
+  @Before
+  public void setup() {
+    vertx = Vertx.vertx();
+    backend = new CountingStore();
+    backend.items.put(1L, new JsonObject().put("id", 1L).put("name", "apple").put("stock", 10));
+  }
+
+  @After
+  public void tearDown(TestContext tc) {
+    vertx.close(tc.asyncAssertSuccess());
+  }
+
+  @Test
+  public void testReadsAreCached(TestContext tc) {
+    CachingProductStore cache = new CachingProductStore(backend, 10, 60_000);
+
+    cache.read(1).toBlocking().value();
+    JsonObject json = cache.read(1).toBlocking().value();
+
+    tc.assertEquals("apple", json.getString("name"));
+    tc.assertEquals(1, backend.reads.get());
+    tc.assertEquals(1L, cache.stats().getLong("hits"));
+    tc.assertEquals(1L, cache.stats().getLong("misses"));
+  }
+
+  @Test
+  public void testLeastRecentlyUsedItemIsEvicted(TestContext tc) {
+    backend.items.put(2L, new JsonObject().put("id", 2L).put("name", "pear").put("stock", 10));
+    CachingProductStore cache = new CachingProductStore(backend, 1, 60_000);
+
+    cache.read(1).toBlocking().value();
+    cache.read(2).toBlocking().value();
+    cache.read(1).toBlocking().value();
+
+    tc.assertEquals(3, backend.reads.get());
+    tc.assertEquals(1, cache.stats().getInteger("size"));
+    tc.assertEquals(2L, cache.stats().getLong("evictions"));
+  }
+
+  @Test
+  public void testExpiredItemIsReadAgain(TestContext tc) throws InterruptedException {
+    CachingProductStore cache = new CachingProductStore(backend, 10, 10);
+
+    cache.read(1).toBlocking().value();
+    Thread.sleep(20);
+    cache.read(1).toBlocking().value();
+
+    tc.assertEquals(2, backend.reads.get());
+  }
+
+  @Test
+  public void testUpdateInvalidatesTheLocalCache(TestContext tc) {
+    CachingProductStore cache = new CachingProductStore(backend, 10, 60_000);
+
+    cache.read(1).toBlocking().value();
+    cache.update(1, new JsonObject().put("name", "apple").put("stock", 5), Store.ANY_VERSION).await();
+
+    tc.assertEquals(5, cache.read(1).toBlocking().value().getInteger("stock"));
+    tc.assertEquals(2, backend.reads.get());
+  }
+
+  @Test
+  public void testAdjustStockInvalidatesTheLocalCache(TestContext tc) {
+    CachingProductStore cache = new CachingProductStore(backend, 10, 60_000);
+
+    cache.read(1).toBlocking().value();
+    cache.adjustStock(1, -3, true).toBlocking().value();
+
+    tc.assertEquals(7, cache.read(1).toBlocking().value().getInteger("stock"));
+    tc.assertEquals(2, backend.reads.get());
+  }
+
+  @Test
+  public void testUpdateInvalidatesTheOtherCaches(TestContext tc) {
+    CachingProductStore first = new CachingProductStore(backend, 10, 60_000, vertx.eventBus());
+    CachingProductStore second = new CachingProductStore(backend, 10, 60_000, vertx.eventBus());
+
+    first.read(1).toBlocking().value();
+    second.read(1).toBlocking().value();
+
+    first.update(1, new JsonObject().put("name", "apple").put("stock", 5), Store.ANY_VERSION).await();
+
+    // the invalidation is delivered asynchronously
+    Async async = tc.async();
+    vertx.setPeriodic(10, id -> {
+      if (second.stats().getLong("remoteInvalidations") == 1) {
+        vertx.cancelTimer(id);
+        second.read(1).subscribe(json -> {
+          tc.assertEquals(5, json.getInteger("stock"));
+          tc.assertEquals(3, backend.reads.get());
+          async.complete();
+        }, tc::fail);
+      }
+    });
+  }
+
+  /**
+   * A map based store counting the reads reaching it.
+   */
+  private static class CountingStore implements Store {
+
+    private final Map<Long, JsonObject> items = new ConcurrentHashMap<>();
+
+    private final AtomicInteger reads = new AtomicInteger();
+
+    @Override
+    public Single<JsonObject> create(JsonObject item) {
+      long id = items.size() + 1;
+      items.put(id, item.copy().put("id", id));
+      return Single.just(item.put("id", id));
+    }
+
+    @Override
+    public Single<JsonObject> create(long id, JsonObject item) {
+      items.put(id, item.copy().put("id", id));
+      return Single.just(item.put("id", id));
+    }
+
+    @Override
+    public Observable<JsonObject> readAll() {
+      return Observable.from(items.values());
+    }
+
+    @Override
+    public Observable<JsonObject> readAll(long after, int limit) {
+      return readAll().filter(json -> json.getLong("id") > after).limit(limit);
+    }
+
+    @Override
+    public Observable<JsonObject> search(ProductQuery query) {
+      return Observable.error(new UnsupportedOperationException());
+    }
+
+    @Override
+    public Single<JsonObject> read(long id) {
+      reads.incrementAndGet();
+      JsonObject json = items.get(id);
+      if (json == null) {
+        return Single.error(new NoSuchElementException("Item '" + id + "' not found"));
+      }
+      return Single.just(json.copy());
+    }
+
+    @Override
+    public Completable update(long id, JsonObject item, long version) {
+      items.put(id, item.copy().put("id", id));
+      return Completable.complete();
+    }
+
+    @Override
+    public Single<JsonObject> adjustStock(long id, long delta, boolean floor) {
+      JsonObject json = items.computeIfPresent(id, (k, v) -> v.copy().put("stock", v.getInteger("stock") + (int) delta));
+      if (json == null) {
+        return Single.error(new NoSuchElementException("Item '" + id + "' not found"));
+      }
+      return Single.just(json.copy());
+    }
+
+    @Override
+    public Completable delete(long id) {
+      items.remove(id);
+      return Completable.complete();
+    }
+
+    @Override
+    public Single<List<JsonObject>> bulk(List<JsonObject> operations) {
+      return Single.error(new UnsupportedOperationException());
+    }
+  }
+}
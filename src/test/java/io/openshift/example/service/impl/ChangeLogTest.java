@@ -0,0 +1,70 @@
+package io.openshift.example.service.impl;
+
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import io.vertx.rxjava.core.Vertx;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.List;
+
+/**
+ * Check the positions of the change log and the resumption from a position.
+ */
+@RunWith(VertxUnitRunner.class)
+public class ChangeLogTest {
+
+  private Vertx vertx;
+
+  private ChangeLog log;
+
+  @Before
+  public void setup() {
+    vertx = Vertx.vertx();
+    log = new ChangeLog(vertx.eventBus(), 2);
+  }
+
+  @After
+  public void tearDown(TestContext tc) {
+    vertx.close(tc.asyncAssertSuccess());
+  }
+
+  @Test
+  public void testChangesArePublishedInOrder(TestContext tc) {
+    Async async = tc.async(3);
+    long[] last = {0};
+    vertx.eventBus().<JsonObject>localConsumer(ChangeLog.ADDRESS, msg -> {
+      long sequence = log.sequence(msg.body().getString("position"));
+      tc.assertEquals(last[0] + 1, sequence);
+      last[0] = sequence;
+      async.countDown();
+    }).completionHandler(tc.asyncAssertSuccess(v -> {
+      log.append(ChangeLog.CREATED, 1, new JsonObject().put("id", 1));
+      log.append(ChangeLog.UPDATED, 1, new JsonObject().put("id", 1));
+      log.append(ChangeLog.DELETED, 1, null);
+    }));
+  }
+
+  @Test
+  public void testResumingFromAPosition(TestContext tc) {
+    String start = log.position();
+    log.append(ChangeLog.CREATED, 1, new JsonObject().put("id", 1));
+    String first = log.position();
+    log.append(ChangeLog.UPDATED, 1, new JsonObject().put("id", 1));
+    log.append(ChangeLog.DELETED, 1, null);
+
+    List<JsonObject> changes = log.since(first);
+    tc.assertEquals(2, changes.size());
+    tc.assertEquals(ChangeLog.UPDATED, changes.get(0).getString("type"));
+    tc.assertEquals(0, log.since(log.position()).size());
+    // the first change is not kept anymore
+    tc.assertNull(log.since(start));
+    // a position of another log, or of a previous process
+    tc.assertNull(log.since("0badcafe-1"));
+    tc.assertNull(log.since("garbage"));
+  }
+}
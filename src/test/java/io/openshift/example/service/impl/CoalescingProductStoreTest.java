@@ -0,0 +1,247 @@
+package io.openshift.example.service.impl;
+
+import io.openshift.example.service.ProductQuery;
+import io.openshift.example.service.Store;
+import io.openshift.example.service.VersionMismatchException;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import io.vertx.rxjava.core.Vertx;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import rx.Completable;
+import rx.Observable;
+import rx.Single;
+import rx.observers.TestSubscriber;
+import rx.subjects.PublishSubject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Check that the stock adjustments are merged, and only acknowledged once written.
+ */
+@RunWith(VertxUnitRunner.class)
+public class CoalescingProductStoreTest {
+
+  private Vertx vertx;
+
+  private StockStore backend;
+
+  @Before
+  public void setup() {
+    vertx = Vertx.vertx();
+    backend = new StockStore();
+    backend.stocks.put(1L, 10L);
+  }
+
+  @After
+  public void tearDown(TestContext tc) {
+    vertx.close(tc.asyncAssertSuccess());
+  }
+
+  @Test
+  public void testAdjustmentsAreMerged(TestContext tc) {
+    CoalescingProductStore store = new CoalescingProductStore(backend, vertx, 50, 1000);
+
+    List<Single<JsonObject>> adjustments = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      adjustments.add(store.adjustStock(1, -1, true).cache());
+      adjustments.get(i).subscribe();
+    }
+    // not written yet, so not visible
+    tc.assertEquals(0, backend.adjustments.get());
+    tc.assertEquals(10L, store.read(1).toBlocking().value().getLong("stock"));
+
+    for (Single<JsonObject> adjustment : adjustments) {
+      tc.assertEquals(5L, adjustment.toBlocking().value().getLong("stock"));
+    }
+    tc.assertEquals(1, backend.adjustments.get());
+    tc.assertEquals(5L, backend.stocks.get(1L));
+  }
+
+  @Test
+  public void testAdjustmentsAreWrittenWhenTooManyArePending(TestContext tc) {
+    CoalescingProductStore store = new CoalescingProductStore(backend, vertx, 60_000, 2);
+
+    Single<JsonObject> first = store.adjustStock(1, 1, true).cache();
+    first.subscribe();
+    tc.assertEquals(12L, store.adjustStock(1, 1, true).toBlocking().value().getLong("stock"));
+    tc.assertEquals(12L, first.toBlocking().value().getLong("stock"));
+    tc.assertEquals(1, backend.adjustments.get());
+  }
+
+  @Test
+  public void testOnlyTheAdjustmentsCrossingTheFloorFail(TestContext tc) {
+    CoalescingProductStore store = new CoalescingProductStore(backend, vertx, 50, 1000);
+
+    Single<JsonObject> first = store.adjustStock(1, -8, true).cache();
+    Single<JsonObject> second = store.adjustStock(1, -8, true).cache();
+    first.subscribe(x -> { }, err -> { });
+    second.subscribe(x -> { }, err -> { });
+
+    tc.assertEquals(2L, first.toBlocking().value().getLong("stock"));
+    try {
+      second.toBlocking().value();
+      tc.fail("the second adjustment crosses the floor");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+    tc.assertEquals(2L, backend.stocks.get(1L));
+  }
+
+  @Test
+  public void testUpdateWritesThePendingAdjustmentsFirst(TestContext tc) {
+    CoalescingProductStore store = new CoalescingProductStore(backend, vertx, 60_000, 1000);
+
+    Single<JsonObject> adjustment = store.adjustStock(1, 5, true).cache();
+    adjustment.subscribe();
+    store.update(1, new JsonObject().put("name", "apple").put("stock", 3), Store.ANY_VERSION).await();
+
+    tc.assertEquals(15L, adjustment.toBlocking().value().getLong("stock"));
+    tc.assertEquals(3L, store.read(1).toBlocking().value().getLong("stock"));
+  }
+
+  @Test
+  public void testReadsWaitForTheAdjustmentsBeingWritten(TestContext tc) {
+    CoalescingProductStore store = new CoalescingProductStore(backend, vertx, 60_000, 1);
+    PublishSubject<Void> gate = PublishSubject.create();
+    backend.gate = gate.toCompletable();
+
+    // written at once, but held by the backend
+    Single<JsonObject> adjustment = store.adjustStock(1, -3, true).cache();
+    adjustment.subscribe();
+    TestSubscriber<JsonObject> read = new TestSubscriber<>();
+    store.read(1).subscribe(read);
+    TestSubscriber<JsonObject> list = new TestSubscriber<>();
+    store.readAll().subscribe(list);
+    read.assertNoValues();
+    list.assertNoValues();
+
+    gate.onCompleted();
+    tc.assertEquals(7L, adjustment.toBlocking().value().getLong("stock"));
+    read.awaitTerminalEvent();
+    tc.assertEquals(7L, read.getOnNextEvents().get(0).getLong("stock"));
+    list.awaitTerminalEvent();
+    tc.assertEquals(7L, list.getOnNextEvents().get(0).getLong("stock"));
+  }
+
+  @Test
+  public void testTheVersionReadDescribesTheStockRead(TestContext tc) {
+    CoalescingProductStore store = new CoalescingProductStore(new InMemoryProductStore(null), vertx, 60_000, 1000);
+    long id = store.create(new JsonObject().put("name", "apple").put("stock", 10)).toBlocking().value().getLong("id");
+
+    Single<JsonObject> adjustment = store.adjustStock(id, -3, true).cache();
+    adjustment.subscribe();
+    // the item read while the delta is pending is the written one, so a client holding it still has the current tag
+    JsonObject pending = store.read(id).toBlocking().value();
+    tc.assertEquals(10L, pending.getLong("stock"));
+    tc.assertEquals(0L, pending.getLong("version"));
+
+    // the update writes the pending delta first, so the item changed since it was read
+    try {
+      store.update(id, new JsonObject().put("name", "apple").put("stock", 20), 0).await();
+      tc.fail("the item changed since it was read");
+    } catch (VersionMismatchException e) {
+      // expected
+    }
+    tc.assertEquals(7L, adjustment.toBlocking().value().getLong("stock"));
+
+    JsonObject written = store.read(id).toBlocking().value();
+    tc.assertEquals(7L, written.getLong("stock"));
+    tc.assertEquals(1L, written.getLong("version"));
+    store.update(id, new JsonObject().put("name", "apple").put("stock", 20), 1).await();
+    tc.assertEquals(20L, store.read(id).toBlocking().value().getLong("stock"));
+  }
+
+  /**
+   * A store keeping the stock of the items only, and counting the adjustments it receives.
+   */
+  private static class StockStore implements Store {
+
+    private final Map<Long, Long> stocks = new ConcurrentHashMap<>();
+
+    private final AtomicInteger adjustments = new AtomicInteger();
+
+    /**
+     * Completed when the adjustments may be written.
+     */
+    private Completable gate = Completable.complete();
+
+    private JsonObject toJson(long id) {
+      return new JsonObject().put("id", id).put("name", "apple").put("stock", stocks.get(id));
+    }
+
+    @Override
+    public Single<JsonObject> create(JsonObject item) {
+      return Single.error(new UnsupportedOperationException());
+    }
+
+    @Override
+    public Single<JsonObject> create(long id, JsonObject item) {
+      return Single.error(new UnsupportedOperationException());
+    }
+
+    @Override
+    public Observable<JsonObject> readAll() {
+      return Observable.from(stocks.keySet()).map(this::toJson);
+    }
+
+    @Override
+    public Observable<JsonObject> readAll(long after, int limit) {
+      return readAll().filter(json -> json.getLong("id") > after).limit(limit);
+    }
+
+    @Override
+    public Observable<JsonObject> search(ProductQuery query) {
+      return Observable.error(new UnsupportedOperationException());
+    }
+
+    @Override
+    public Single<JsonObject> read(long id) {
+      if (!stocks.containsKey(id)) {
+        return Single.error(new NoSuchElementException("Item '" + id + "' not found"));
+      }
+      return Single.just(toJson(id));
+    }
+
+    @Override
+    public Completable update(long id, JsonObject item, long version) {
+      return Completable.fromAction(() -> stocks.put(id, item.getLong("stock")));
+    }
+
+    @Override
+    public Single<JsonObject> adjustStock(long id, long delta, boolean floor) {
+      return gate.andThen(Single.defer(() -> {
+        synchronized (this) {
+          adjustments.incrementAndGet();
+          Long stock = stocks.get(id);
+          if (stock == null) {
+            return Single.error(new NoSuchElementException("Item '" + id + "' not found"));
+          }
+          if (floor && stock + delta < 0) {
+            return Single.error(new IllegalStateException("Not enough stock for item '" + id + "'"));
+          }
+          stocks.put(id, stock + delta);
+          return Single.just(toJson(id));
+        }
+      }));
+    }
+
+    @Override
+    public Completable delete(long id) {
+      return Completable.fromAction(() -> stocks.remove(id));
+    }
+
+    @Override
+    public Single<List<JsonObject>> bulk(List<JsonObject> operations) {
+      return Single.error(new UnsupportedOperationException());
+    }
+  }
+}
@@ -0,0 +1,213 @@
+package io.openshift.example.service.impl;
+
+import io.openshift.example.service.ProductQuery;
+import io.openshift.example.service.Store;
+import io.openshift.example.service.StoreTimeoutException;
+import io.openshift.example.service.StoreUnavailableException;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import io.vertx.rxjava.core.Vertx;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import rx.Completable;
+import rx.Observable;
+import rx.Single;
+
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Check the deadlines of the calls, and the circuit breaker opening, then closing, around a store.
+ */
+@RunWith(VertxUnitRunner.class)
+public class GuardedProductStoreTest {
+
+  private Vertx vertx;
+
+  private ScriptedStore backend;
+
+  @Before
+  public void setup() {
+    vertx = Vertx.vertx();
+    backend = new ScriptedStore();
+  }
+
+  @After
+  public void tearDown(TestContext tc) {
+    vertx.close(tc.asyncAssertSuccess());
+  }
+
+  @Test
+  public void testSlowCallsAreCancelled(TestContext tc) {
+    GuardedProductStore store = new GuardedProductStore(backend, new CircuitBreaker(5, 60_000), vertx, 50, 50, 50);
+    backend.outcome = Outcome.HANG;
+
+    try {
+      store.read(1).toBlocking().value();
+      tc.fail("the read should time out");
+    } catch (StoreUnavailableException e) {
+      tc.assertEquals(50L, e.getRetryAfter());
+    }
+    tc.assertEquals(1, backend.cancelled.get());
+  }
+
+  @Test
+  public void testSlowWritesAreNotReportedAsUnavailable(TestContext tc) {
+    GuardedProductStore store = new GuardedProductStore(backend, new CircuitBreaker(5, 60_000), vertx, 50, 50, 50);
+    backend.outcome = Outcome.HANG;
+
+    try {
+      store.update(1, new JsonObject(), Store.ANY_VERSION).await();
+      tc.fail("the update should time out");
+    } catch (StoreTimeoutException e) {
+      // the update may still be applied
+    }
+    tc.assertEquals(1, backend.cancelled.get());
+  }
+
+  @Test
+  public void testBreakerOpensAfterConsecutiveFailures(TestContext tc) {
+    CircuitBreaker breaker = new CircuitBreaker(3, 60_000);
+    GuardedProductStore store = new GuardedProductStore(backend, breaker, vertx, 1000, 1000, 1000);
+    backend.outcome = Outcome.FAIL;
+
+    for (int i = 0; i < 3; i++) {
+      try {
+        store.read(1).toBlocking().value();
+        tc.fail("the read should fail");
+      } catch (RuntimeException e) {
+        // the failure of the store is reported as is
+        tc.assertEquals("connection refused", e.getMessage());
+      }
+    }
+    tc.assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+
+    backend.outcome = Outcome.SUCCEED;
+    try {
+      store.read(1).toBlocking().value();
+      tc.fail("the breaker is open");
+    } catch (StoreUnavailableException e) {
+      tc.assertTrue(e.getRetryAfter() > 0);
+    }
+    tc.assertEquals(3, backend.calls.get());
+  }
+
+  @Test
+  public void testUnknownItemsAreNotFailures(TestContext tc) {
+    CircuitBreaker breaker = new CircuitBreaker(1, 60_000);
+    GuardedProductStore store = new GuardedProductStore(backend, breaker, vertx, 1000, 1000, 1000);
+    backend.outcome = Outcome.MISSING;
+
+    for (int i = 0; i < 3; i++) {
+      try {
+        store.read(1).toBlocking().value();
+        tc.fail("the item does not exist");
+      } catch (NoSuchElementException e) {
+        // expected
+      }
+    }
+    tc.assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+  }
+
+  @Test
+  public void testProbeClosesTheBreaker(TestContext tc) throws Exception {
+    CircuitBreaker breaker = new CircuitBreaker(1, 50);
+    GuardedProductStore store = new GuardedProductStore(backend, breaker, vertx, 1000, 1000, 1000);
+    backend.outcome = Outcome.FAIL;
+    store.read(1).toCompletable().onErrorComplete().await();
+    tc.assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+
+    Thread.sleep(100);
+    tc.assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state());
+    // a failed probe opens the breaker again
+    store.read(1).toCompletable().onErrorComplete().await();
+    tc.assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+
+    Thread.sleep(100);
+    backend.outcome = Outcome.SUCCEED;
+    tc.assertEquals(1L, store.read(1).toBlocking().value().getLong("id"));
+    tc.assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+  }
+
+  private enum Outcome {
+    SUCCEED, FAIL, MISSING, HANG
+  }
+
+  /**
+   * A store answering the reads as told, and counting the calls it receives.
+   */
+  private static class ScriptedStore implements Store {
+
+    private volatile Outcome outcome = Outcome.SUCCEED;
+
+    private final AtomicInteger calls = new AtomicInteger();
+
+    private final AtomicInteger cancelled = new AtomicInteger();
+
+    @Override
+    public Single<JsonObject> read(long id) {
+      return Single.defer(() -> {
+        calls.incrementAndGet();
+        switch (outcome) {
+          case SUCCEED:
+            return Single.just(new JsonObject().put("id", id));
+          case FAIL:
+            return Single.error(new RuntimeException("connection refused"));
+          case MISSING:
+            return Single.error(new NoSuchElementException("Item '" + id + "' not found"));
+          default:
+            return Observable.<JsonObject>never().doOnUnsubscribe(cancelled::incrementAndGet).toSingle();
+        }
+      });
+    }
+
+    @Override
+    public Single<JsonObject> create(JsonObject item) {
+      return Single.error(new UnsupportedOperationException());
+    }
+
+    @Override
+    public Single<JsonObject> create(long id, JsonObject item) {
+      return Single.error(new UnsupportedOperationException());
+    }
+
+    @Override
+    public Observable<JsonObject> readAll() {
+      return Observable.error(new UnsupportedOperationException());
+    }
+
+    @Override
+    public Observable<JsonObject> readAll(long after, int limit) {
+      return Observable.error(new UnsupportedOperationException());
+    }
+
+    @Override
+    public Observable<JsonObject> search(ProductQuery query) {
+      return Observable.error(new UnsupportedOperationException());
+    }
+
+    @Override
+    public Completable update(long id, JsonObject item, long version) {
+      return read(id).toCompletable();
+    }
+
+    @Override
+    public Single<JsonObject> adjustStock(long id, long delta, boolean floor) {
+      return Single.error(new UnsupportedOperationException());
+    }
+
+    @Override
+    public Completable delete(long id) {
+      return Completable.error(new UnsupportedOperationException());
+    }
+
+    @Override
+    public Single<List<JsonObject>> bulk(List<JsonObject> operations) {
+      return Single.error(new UnsupportedOperationException());
+    }
+  }
+}
@@ -0,0 +1,31 @@
+package io.openshift.example.service.impl;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Check that the generated ids grow, never repeat, fit in the numbers of JSON, and differ between nodes.
+ */
+public class IdGeneratorTest {
+
+  @Test
+  public void testIdsAreUniqueAndGrow() {
+    IdGenerator first = new IdGenerator(1);
+    IdGenerator second = new IdGenerator(2);
+    Set<Long> ids = new HashSet<>();
+    long previous = 0;
+    // more than the ids of a millisecond
+    for (int i = 0; i < 100_000; i++) {
+      long id = first.next();
+      assertThat(id).isGreaterThan(previous).isLessThan(1L << 53);
+      previous = id;
+      ids.add(id);
+      ids.add(second.next());
+    }
+    assertThat(ids).hasSize(200_000);
+  }
+}
@@ -0,0 +1,168 @@
+package io.openshift.example.service.impl;
+
+import io.openshift.example.service.ProductQuery;
+import io.openshift.example.service.Store;
+import io.openshift.example.service.VersionMismatchException;
+import io.vertx.core.json.JsonObject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Check the behavior of the in-memory store, and the replay of its snapshot file.
+ */
+public class InMemoryProductStoreTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private static JsonObject item(String name, int stock) {
+    return new JsonObject().put("name", name).put("stock", stock);
+  }
+
+  @Test
+  public void testCrud() {
+    InMemoryProductStore store = new InMemoryProductStore(null);
+
+    long id = store.create(item("apple", 10)).toBlocking().value().getLong("id");
+    assertThat(store.read(id).toBlocking().value().getString("name")).isEqualTo("apple");
+
+    store.update(id, item("pear", 5), Store.ANY_VERSION).await();
+    JsonObject json = store.read(id).toBlocking().value();
+    assertThat(json.getString("name")).isEqualTo("pear");
+    assertThat(json.getLong("version")).isEqualTo(1L);
+
+    store.delete(id).await();
+    assertThatThrownBy(() -> store.read(id).toBlocking().value()).isInstanceOf(NoSuchElementException.class);
+    assertThatThrownBy(() -> store.delete(id).await()).isInstanceOf(NoSuchElementException.class);
+  }
+
+  @Test
+  public void testVersionedUpdate() {
+    InMemoryProductStore store = new InMemoryProductStore(null);
+    long id = store.create(item("apple", 10)).toBlocking().value().getLong("id");
+
+    store.update(id, item("apple", 5), 0).await();
+    assertThatThrownBy(() -> store.update(id, item("apple", 6), 0).await())
+      .isInstanceOf(VersionMismatchException.class);
+    assertThat(store.read(id).toBlocking().value().getLong("stock")).isEqualTo(5L);
+  }
+
+  @Test
+  public void testAdjustStock() {
+    InMemoryProductStore store = new InMemoryProductStore(null);
+    long id = store.create(item("apple", 10)).toBlocking().value().getLong("id");
+
+    assertThat(store.adjustStock(id, -4, true).toBlocking().value().getLong("stock")).isEqualTo(6L);
+    assertThatThrownBy(() -> store.adjustStock(id, -7, true).toBlocking().value())
+      .isInstanceOf(IllegalStateException.class);
+    assertThat(store.adjustStock(id, -7, false).toBlocking().value().getLong("stock")).isEqualTo(-1L);
+  }
+
+  @Test
+  public void testPagesAndSearches() {
+    InMemoryProductStore store = new InMemoryProductStore(null);
+    for (String name : new String[] {"banana", "blueberry", "apricot", "cherry"}) {
+      store.create(item(name, name.length())).toBlocking().value();
+    }
+
+    assertThat(names(store.readAll(1, 2).toList().toBlocking().single())).containsExactly("blueberry", "apricot");
+    assertThat(names(store.search(new ProductQuery().setNamePrefix("b")).toList().toBlocking().single()))
+      .containsExactly("banana", "blueberry");
+    assertThat(names(store.search(new ProductQuery().setNameContains("ERR")).toList().toBlocking().single()))
+      .containsExactly("blueberry", "cherry");
+    assertThat(names(store.search(new ProductQuery().setMinStock(6L).setMaxStock(7L)
+      .setSort(ProductQuery.Sort.STOCK).setDescending(true)).toList().toBlocking().single()))
+      .containsExactly("apricot", "cherry", "banana");
+    assertThat(names(store.search(new ProductQuery().setDescending(true).setAfter(4L).setLimit(2))
+      .toList().toBlocking().single()))
+      .containsExactly("apricot", "blueberry");
+    // after apricot, then cherry, both of the items with a stock of 6 following apricot, in the descending order
+    ProductQuery byStock = new ProductQuery().setSort(ProductQuery.Sort.STOCK).setDescending(true);
+    assertThat(names(store.search(byStock.setAfterValue(7L).setAfter(3L)).toList().toBlocking().single()))
+      .containsExactly("cherry", "banana");
+    assertThat(names(store.search(byStock.setAfterValue(6L).setAfter(4L)).toList().toBlocking().single()))
+      .containsExactly("banana");
+  }
+
+  @Test
+  public void testBulk() {
+    InMemoryProductStore store = new InMemoryProductStore(null);
+    long apple = store.create(item("apple", 1)).toBlocking().value().getLong("id");
+    long pear = store.create(item("pear", 2)).toBlocking().value().getLong("id");
+
+    List<JsonObject> results = store.bulk(Arrays.asList(
+      new JsonObject().put("op", "create").put("item", item("kiwi", 3)),
+      new JsonObject().put("op", "create").put("item", item("lime", 4)),
+      new JsonObject().put("op", "update").put("id", apple).put("item", item("green apple", 5)),
+      new JsonObject().put("op", "delete").put("id", pear),
+      new JsonObject().put("op", "delete").put("id", 42L),
+      new JsonObject().put("op", "update").put("id", apple),
+      new JsonObject().put("op", "create").put("item", item("", 6)))).toBlocking().value();
+
+    assertThat(results).extracting(result -> result.getInteger("status"))
+      .containsExactly(201, 201, 200, 204, 404, 422, 422);
+    assertThat(results.get(5).getString("error")).isEqualTo("The item is required!");
+    assertThat(store.read(results.get(1).getLong("id")).toBlocking().value().getString("name")).isEqualTo("lime");
+    assertThat(store.read(apple).toBlocking().value().getString("name")).isEqualTo("green apple");
+    assertThat(names(store.readAll().toList().toBlocking().single()))
+      .containsExactlyInAnyOrder("green apple", "kiwi", "lime");
+  }
+
+  @Test
+  public void testSnapshotIsReplayed() throws Exception {
+    File snapshot = new File(folder.getRoot(), "products.snapshot");
+    InMemoryProductStore store = new InMemoryProductStore(snapshot.getPath());
+    long apple = store.create(item("apple", 10)).toBlocking().value().getLong("id");
+    long pear = store.create(item("pear", 10)).toBlocking().value().getLong("id");
+    store.adjustStock(apple, -3, true).toBlocking().value();
+    store.delete(pear).await();
+
+    // the records are appended in the background
+    long deadline = System.currentTimeMillis() + 5000;
+    while (Files.readAllLines(snapshot.toPath()).size() < 4 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+
+    InMemoryProductStore replayed = new InMemoryProductStore(snapshot.getPath());
+    assertThat(replayed.read(apple).toBlocking().value().getLong("stock")).isEqualTo(7L);
+    assertThatThrownBy(() -> replayed.read(pear).toBlocking().value()).isInstanceOf(NoSuchElementException.class);
+    // the file is compacted
+    assertThat(Files.readAllLines(snapshot.toPath())).hasSize(1);
+    // the ids are not reused
+    assertThat(replayed.create(item("cherry", 1)).toBlocking().value().getLong("id")).isGreaterThan(pear);
+  }
+
+  @Test
+  public void testTruncatedLastRecordIsSkipped() throws Exception {
+    File snapshot = new File(folder.getRoot(), "products.snapshot");
+    Files.write(snapshot.toPath(), Arrays.asList(
+      "{\"id\":1,\"name\":\"apple\",\"stock\":10,\"version\":0,\"op\":\"put\"}",
+      "{\"id\":1,\"name\":\"apple\",\"stock\":7,\"version\":1,\"op\":\"put\"}",
+      "{\"id\":2,\"name\":\"pe"));
+
+    InMemoryProductStore replayed = new InMemoryProductStore(snapshot.getPath());
+    assertThat(replayed.read(1).toBlocking().value().getLong("stock")).isEqualTo(7L);
+    assertThatThrownBy(() -> replayed.read(2).toBlocking().value()).isInstanceOf(NoSuchElementException.class);
+    assertThat(Files.readAllLines(snapshot.toPath())).hasSize(1);
+
+    // a record in the middle of the file is not the last one being appended
+    Files.write(snapshot.toPath(), Arrays.asList("{\"id\":2,\"name\":\"pe", "{\"id\":3,\"op\":\"delete\"}"));
+    assertThatThrownBy(() -> new InMemoryProductStore(snapshot.getPath())).isInstanceOf(UncheckedIOException.class);
+  }
+
+  private static List<String> names(List<JsonObject> items) {
+    return items.stream().map(json -> json.getString("name")).collect(Collectors.toList());
+  }
+}
@@ -0,0 +1,262 @@
+package io.openshift.example.service.impl;
+
+import io.openshift.example.DBInitHelper;
+import io.openshift.example.service.ProductQuery;
+import io.vertx.core.json.JsonObject;
+import io.vertx.rxjava.core.Vertx;
+import io.vertx.rxjava.ext.jdbc.JDBCClient;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import rx.observers.TestSubscriber;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Check the JDBC store against an in-memory H2 database, watching the JDBC calls it makes.
+ */
+public class JdbcProductStoreTest {
+
+  private static final AtomicInteger DATABASES = new AtomicInteger();
+
+  private Vertx vertx;
+
+  private JDBCClient jdbc;
+
+  private JdbcProductStore store;
+
+  /**
+   * The fetch size and the autocommit mode of each query, as {@code "<fetch size>/<autocommit>"}.
+   */
+  private final Queue<String> queries = new ConcurrentLinkedQueue<>();
+
+  /**
+   * The number of rows read from the results of the queries.
+   */
+  private final AtomicInteger rows = new AtomicInteger();
+
+  @Before
+  public void setup() {
+    vertx = Vertx.vertx();
+    JdbcDataSource h2 = new JdbcDataSource();
+    h2.setURL("jdbc:h2:mem:jdbc-store-" + DATABASES.incrementAndGet()
+      + ";MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1");
+    h2.setUser("sa");
+    jdbc = JDBCClient.newInstance(io.vertx.ext.jdbc.JDBCClient.create(vertx.getDelegate(), watched(h2)));
+    DBInitHelper.migrate(vertx, jdbc, false).toBlocking().value();
+    store = new JdbcProductStore(jdbc);
+  }
+
+  @After
+  public void tearDown() {
+    jdbc.close();
+    vertx.close();
+  }
+
+  @Test
+  public void testStreamedListsAreFetchedOnDemand() throws Exception {
+    jdbc.rxUpdate("INSERT INTO products (name, stock) SELECT 'fruit-' || \"X\", \"X\" FROM system_range(1, 2000)")
+      .toBlocking().value();
+    queries.clear();
+    rows.set(0);
+
+    TestSubscriber<JsonObject> subscriber = new TestSubscriber<>(3);
+    store.readAll().subscribe(subscriber);
+    subscriber.awaitValueCount(3, 5, TimeUnit.SECONDS);
+    // give the stream the time to read ahead, if it did
+    Thread.sleep(200);
+    subscriber.assertValueCount(3);
+
+    // in a transaction with a fetch size, the PostgreSQL driver reads the result with a cursor
+    assertThat(queries).containsExactly(JdbcProductStore.STREAM_FETCH_SIZE + "/false");
+    // and the store only reads a few batches of rows ahead of the subscriber
+    assertThat(rows.get()).isLessThanOrEqualTo(4 * JdbcProductStore.STREAM_FETCH_SIZE);
+
+    subscriber.requestMore(Long.MAX_VALUE);
+    subscriber.awaitTerminalEvent(5, TimeUnit.SECONDS);
+    subscriber.assertCompleted();
+    subscriber.assertValueCount(2000);
+
+    // the connection is back in autocommit mode
+    queries.clear();
+    assertThat(store.read(1).toBlocking().value().getString("name")).isEqualTo("fruit-1");
+    assertThat(queries).hasSize(1).allMatch(query -> query.endsWith("/true"));
+  }
+
+  @Test
+  public void testCancelledStreamReleasesItsConnection() {
+    jdbc.rxUpdate("INSERT INTO products (name, stock) SELECT 'fruit-' || \"X\", \"X\" FROM system_range(1, 500)")
+      .toBlocking().value();
+
+    TestSubscriber<JsonObject> subscriber = new TestSubscriber<>(1);
+    store.readAll().subscribe(subscriber);
+    subscriber.awaitValueCount(1, 5, TimeUnit.SECONDS);
+    subscriber.unsubscribe();
+
+    assertThat(store.readAll(0, 10).count().toBlocking().single()).isEqualTo(10);
+  }
+
+  @Test
+  public void testBulkExecutesTheRunsInOrder() {
+    // the sequence named as PostgreSQL names the one of the id column
+    jdbc.rxUpdate("CREATE SEQUENCE products_id_seq START WITH 1000").toBlocking().value();
+    long apple = store.create(item("apple", 1)).toBlocking().value().getLong("id");
+    long pear = store.create(item("pear", 2)).toBlocking().value().getLong("id");
+
+    List<JsonObject> results = store.bulk(Arrays.asList(
+      create(item("kiwi", 3)),
+      create(item("lime", 4)),
+      new JsonObject().put("op", "update").put("id", apple).put("item", item("green apple", 5)),
+      new JsonObject().put("op", "delete").put("id", pear),
+      new JsonObject().put("op", "delete").put("id", 42L),
+      new JsonObject().put("op", "remove").put("id", apple),
+      create(new JsonObject().put("stock", 6)),
+      create(item("plum", 7)))).toBlocking().value();
+
+    assertThat(results).extracting(result -> result.getInteger("status"))
+      .containsExactly(201, 201, 200, 204, 404, 422, 422, 201);
+    assertThat(results.get(6).getString("error")).isEqualTo("The name is required!");
+    assertThat(store.read(results.get(0).getLong("id")).toBlocking().value().getString("name")).isEqualTo("kiwi");
+    assertThat(store.read(results.get(7).getLong("id")).toBlocking().value().getString("name")).isEqualTo("plum");
+    assertThat(store.read(apple).toBlocking().value().getString("name")).isEqualTo("green apple");
+    assertThat(store.readAll().count().toBlocking().single()).isEqualTo(4);
+  }
+
+  @Test
+  public void testBulkIsRolledBackWhenAStatementFails() {
+    long apple = store.create(item("apple", 1)).toBlocking().value().getLong("id");
+
+    // the name is longer than the column
+    assertThatThrownBy(() -> store.bulk(Arrays.asList(
+      new JsonObject().put("op", "update").put("id", apple).put("item", item("green apple", 5)),
+      create(item("apple", 1)).put("id", 100L),
+      create(item(String.join("", Collections.nCopies(50, "a")), 1)).put("id", 101L))).toBlocking().value())
+      .isInstanceOf(RuntimeException.class);
+
+    assertThat(store.read(apple).toBlocking().value().getString("name")).isEqualTo("apple");
+    assertThat(store.readAll().count().toBlocking().single()).isEqualTo(1);
+  }
+
+  @Test
+  public void testAdjustStock() {
+    long apple = store.create(item("apple", 10)).toBlocking().value().getLong("id");
+
+    JsonObject adjusted = store.adjustStock(apple, -3, true).toBlocking().value();
+    assertThat(adjusted.getLong("stock")).isEqualTo(7L);
+    assertThat(adjusted.getLong("version")).isEqualTo(1L);
+    assertThatThrownBy(() -> store.adjustStock(apple, -8, true).toBlocking().value())
+      .isInstanceOf(IllegalStateException.class);
+    assertThat(store.adjustStock(apple, -8, false).toBlocking().value().getLong("stock")).isEqualTo(-1L);
+    assertThatThrownBy(() -> store.adjustStock(42, 1, true).toBlocking().value())
+      .isInstanceOf(NoSuchElementException.class);
+  }
+
+  @Test
+  public void testSearchesArePagedByTheSortedField() {
+    for (String name : new String[] {"kiwi", "apple", "pear", "fig", "lime", "plum", "date"}) {
+      store.create(item(name, name.length() % 3)).toBlocking().value();
+    }
+    jdbc.rxUpdate("INSERT INTO products (name, stock) VALUES ('lemon', NULL), ('melon', NULL)").toBlocking().value();
+
+    for (ProductQuery.Sort sort : ProductQuery.Sort.values()) {
+      for (boolean descending : new boolean[] {false, true}) {
+        ProductQuery query = new ProductQuery().setSort(sort).setDescending(descending);
+        List<JsonObject> all = store.search(query).toList().toBlocking().single();
+        assertThat(all).hasSize(9);
+
+        List<JsonObject> paged = new ArrayList<>();
+        query.setLimit(2);
+        List<JsonObject> page = store.search(query).toList().toBlocking().single();
+        while (!page.isEmpty()) {
+          paged.addAll(page);
+          JsonObject last = page.get(page.size() - 1);
+          query.setAfter(last.getLong("id")).setAfterValue(last.getValue(sort.column()));
+          page = store.search(query).toList().toBlocking().single();
+        }
+        assertThat(paged).as("sorted by %s, descending: %s", sort, descending).isEqualTo(all);
+      }
+    }
+  }
+
+  private static JsonObject item(String name, int stock) {
+    return new JsonObject().put("name", name).put("stock", stock);
+  }
+
+  private static JsonObject create(JsonObject item) {
+    return new JsonObject().put("op", "create").put("item", item);
+  }
+
+  /**
+   * Records the queries and the rows read through the connections of the given data source.
+   */
+  private DataSource watched(DataSource dataSource) {
+    return proxy(DataSource.class, dataSource, (method, args, result) ->
+      result instanceof Connection ? watched((Connection) result) : result);
+  }
+
+  private Connection watched(Connection connection) {
+    return proxy(Connection.class, connection, (method, args, result) -> {
+      if (result instanceof PreparedStatement) {
+        return watched(connection, (PreparedStatement) result);
+      }
+      return result;
+    });
+  }
+
+  private PreparedStatement watched(Connection connection, PreparedStatement statement) {
+    return proxy(PreparedStatement.class, statement, (method, args, result) -> {
+      if (method.startsWith("execute")) {
+        queries.add(statement.getFetchSize() + "/" + connection.getAutoCommit());
+      }
+      if (result instanceof ResultSet) {
+        return proxy(ResultSet.class, (ResultSet) result, (name, nextArgs, next) -> {
+          if (name.equals("next") && Boolean.TRUE.equals(next)) {
+            rows.incrementAndGet();
+          }
+          return next;
+        });
+      }
+      return result;
+    });
+  }
+
+  private interface Wrapper {
+    Object wrap(String method, Object[] args, Object result) throws Exception;
+  }
+
+  private static <T> T proxy(Class<T> type, T target, Wrapper wrapper) {
+    InvocationHandler handler = (proxy, method, args) -> {
+      Object result;
+      try {
+        result = method.invoke(target, args);
+      } catch (InvocationTargetException e) {
+        throw e.getCause();
+      }
+      if (method.getName().equals("unwrap") || method.getName().equals("isWrapperFor")) {
+        return result;
+      }
+      return wrapper.wrap(method.getName(), args, result);
+    };
+    return type.cast(Proxy.newProxyInstance(JdbcProductStoreTest.class.getClassLoader(), new Class<?>[]{type},
+      handler));
+  }
+}
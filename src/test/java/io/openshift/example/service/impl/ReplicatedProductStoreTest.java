@@ -0,0 +1,202 @@
+package io.openshift.example.service.impl;
+
+import io.openshift.example.service.ProductQuery;
+import io.openshift.example.service.Store;
+import io.vertx.core.json.JsonObject;
+import io.vertx.rxjava.core.Vertx;
+import org.junit.Test;
+import rx.Completable;
+import rx.Observable;
+import rx.Single;
+import rx.observers.TestSubscriber;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Check that the reads are spread over the replicas, skipping the failing ones, and that the reads following a write
+ * go to the primary.
+ */
+public class ReplicatedProductStoreTest {
+
+  private final NamedStore primary = new NamedStore("primary");
+
+  private final NamedStore first = new NamedStore("first");
+
+  private final NamedStore second = new NamedStore("second");
+
+  private ReplicatedProductStore store(int maxFailures, ReplicatedProductStore.Writes writes) {
+    return new ReplicatedProductStore(primary, Arrays.asList(first, second),
+      Arrays.asList(new CircuitBreaker(maxFailures, 60_000), new CircuitBreaker(maxFailures, 60_000)), writes);
+  }
+
+  @Test
+  public void testWritesOfTheOtherProcessesAreRecorded() throws Exception {
+    Vertx vertx = Vertx.vertx();
+    try {
+      // the writes of another pod, on the same event bus
+      ReplicatedProductStore.Writes remote = new ReplicatedProductStore.Writes(60_000, 60_000);
+      remote.exchange(vertx.eventBus());
+      ReplicatedProductStore.Writes writes = new ReplicatedProductStore.Writes(60_000, 60_000);
+      writes.exchange(vertx.eventBus());
+      ReplicatedProductStore store = store(5, writes);
+
+      remote.written(1);
+      for (int i = 0; i < 500 && !writes.recent(1); i++) {
+        Thread.sleep(10);
+      }
+      assertThat(store.read(1).toBlocking().value().getString("server")).isEqualTo("primary");
+      assertThat(store.read(2).toBlocking().value().getString("server")).isEqualTo("first");
+    } finally {
+      vertx.close();
+    }
+  }
+
+  @Test
+  public void testReadsGoToTheReplicasInTurn() {
+    ReplicatedProductStore store = store(5, new ReplicatedProductStore.Writes(60_000, 60_000));
+
+    List<String> servers = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      servers.add(store.read(1).toBlocking().value().getString("server"));
+    }
+    assertThat(servers).containsExactly("first", "second", "first", "second");
+    assertThat(store.readAll(0, 10).toBlocking().single().getString("server")).isEqualTo("first");
+    assertThat(primary.calls).isZero();
+  }
+
+  @Test
+  public void testReadsFollowingAWriteGoToThePrimary() {
+    ReplicatedProductStore store = store(5, new ReplicatedProductStore.Writes(60_000, 60_000));
+    store.update(1, new JsonObject().put("name", "apple").put("stock", 1), Store.ANY_VERSION).await();
+    assertThat(primary.calls).isEqualTo(1);
+
+    assertThat(store.read(1).toBlocking().value().getString("server")).isEqualTo("primary");
+    assertThat(store.readAll().toBlocking().single().getString("server")).isEqualTo("primary");
+    // the other items are still read from the replicas
+    assertThat(store.read(2).toBlocking().value().getString("server")).isEqualTo("first");
+
+    // the created items too
+    store.create(new JsonObject().put("name", "pear").put("stock", 1)).toBlocking().value();
+    assertThat(store.read(42).toBlocking().value().getString("server")).isEqualTo("primary");
+  }
+
+  @Test
+  public void testListsGoToTheReplicasWithoutListWindow() {
+    ReplicatedProductStore store = store(5, new ReplicatedProductStore.Writes(60_000, 0));
+    store.delete(1).await();
+
+    assertThat(store.read(1).toBlocking().value().getString("server")).isEqualTo("primary");
+    assertThat(store.search(new ProductQuery()).toBlocking().single().getString("server")).isEqualTo("first");
+  }
+
+  @Test
+  public void testFailingReplicasAreSkipped() {
+    ReplicatedProductStore store = store(1, new ReplicatedProductStore.Writes(60_000, 60_000));
+    first.failing = true;
+
+    assertThat(store.read(1).toBlocking().value().getString("server")).isEqualTo("second");
+    assertThat(store.read(1).toBlocking().value().getString("server")).isEqualTo("second");
+    // the breaker of the first replica is open, it is not called anymore
+    store.read(1).toBlocking().value();
+    assertThat(first.calls).isEqualTo(1);
+
+    // then the primary serves the reads
+    second.failing = true;
+    assertThat(store.readAll().toBlocking().single().getString("server")).isEqualTo("primary");
+  }
+
+  @Test
+  public void testMissingItemsAreNotFailures() {
+    ReplicatedProductStore store = store(1, new ReplicatedProductStore.Writes(60_000, 60_000));
+    first.missing = true;
+
+    TestSubscriber<JsonObject> subscriber = new TestSubscriber<>();
+    store.read(1).subscribe(subscriber);
+    subscriber.assertError(NoSuchElementException.class);
+    assertThat(second.calls).isZero();
+  }
+
+  /**
+   * A store answering with its name, or failing.
+   */
+  private static class NamedStore implements Store {
+
+    private final String name;
+
+    private int calls;
+
+    private boolean failing;
+
+    private boolean missing;
+
+    private NamedStore(String name) {
+      this.name = name;
+    }
+
+    private Observable<JsonObject> answer(long id) {
+      calls++;
+      if (failing) {
+        return Observable.error(new RuntimeException("connection refused"));
+      }
+      if (missing) {
+        return Observable.error(new NoSuchElementException("No item with id " + id));
+      }
+      return Observable.just(new JsonObject().put("id", id).put("server", name));
+    }
+
+    @Override
+    public Single<JsonObject> create(JsonObject item) {
+      return answer(42).toSingle();
+    }
+
+    @Override
+    public Single<JsonObject> create(long id, JsonObject item) {
+      return answer(id).toSingle();
+    }
+
+    @Override
+    public Observable<JsonObject> readAll() {
+      return answer(1);
+    }
+
+    @Override
+    public Observable<JsonObject> readAll(long after, int limit) {
+      return answer(after + 1);
+    }
+
+    @Override
+    public Observable<JsonObject> search(ProductQuery query) {
+      return answer(1);
+    }
+
+    @Override
+    public Single<JsonObject> read(long id) {
+      return answer(id).toSingle();
+    }
+
+    @Override
+    public Completable update(long id, JsonObject item, long version) {
+      return answer(id).toCompletable();
+    }
+
+    @Override
+    public Single<JsonObject> adjustStock(long id, long delta, boolean floor) {
+      return answer(id).toSingle();
+    }
+
+    @Override
+    public Completable delete(long id) {
+      return answer(id).toCompletable();
+    }
+
+    @Override
+    public Single<List<JsonObject>> bulk(List<JsonObject> operations) {
+      return answer(0).toList().toSingle();
+    }
+  }
+}
@@ -0,0 +1,184 @@
+package io.openshift.example.service.impl;
+
+import io.openshift.example.service.ProductQuery;
+import io.openshift.example.service.Store;
+import io.openshift.example.service.StoreUnavailableException;
+import io.vertx.core.json.JsonObject;
+import org.junit.Before;
+import org.junit.Test;
+import rx.Observable;
+import rx.Single;
+import rx.observers.TestSubscriber;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Check that the items are spread over the shards with ids unique across them, and that the lists of the shards are
+ * merged in order.
+ */
+public class ShardedProductStoreTest {
+
+  private final List<InMemoryProductStore> shards = Arrays.asList(
+    new InMemoryProductStore(null), new InMemoryProductStore(null), new InMemoryProductStore(null));
+
+  private final List<CircuitBreaker> breakers = Arrays.asList(
+    new CircuitBreaker(1, 60_000), new CircuitBreaker(1, 60_000), new CircuitBreaker(1, 60_000));
+
+  private ShardedProductStore store;
+
+  private final List<Long> ids = new ArrayList<>();
+
+  @Before
+  public void setup() {
+    store = new ShardedProductStore(new ArrayList<>(shards), breakers, new IdGenerator(1));
+    for (int i = 0; i < 60; i++) {
+      JsonObject item = new JsonObject().put("name", "fruit-" + (char) ('a' + i % 26)).put("stock", i % 7);
+      ids.add(store.create(item).toBlocking().value().getLong("id"));
+    }
+  }
+
+  @Test
+  public void testItemsAreSpreadOverTheShards() {
+    assertThat(new HashSet<>(ids)).hasSize(60);
+    for (InMemoryProductStore shard : shards) {
+      assertThat(shard.readAll().count().toBlocking().single()).isBetween(5, 40);
+    }
+    for (long id : ids) {
+      JsonObject item = store.read(id).toBlocking().value();
+      assertThat(item.getLong("id")).isEqualTo(id);
+      assertThat(shards.get(store.shardOf(id)).read(id).toBlocking().value()).isEqualTo(item);
+    }
+  }
+
+  @Test
+  public void testListsAreMergedInOrder() {
+    List<Long> all = store.readAll().map(item -> item.getLong("id")).toList().toBlocking().single();
+    assertThat(all).isEqualTo(ids.stream().sorted().collect(Collectors.toList()));
+
+    List<Long> page = store.readAll(ids.get(9), 10).map(item -> item.getLong("id")).toList().toBlocking().single();
+    assertThat(page).isEqualTo(ids.subList(10, 20));
+
+    ProductQuery query = new ProductQuery().setSort(ProductQuery.Sort.STOCK).setDescending(true).setLimit(25);
+    List<JsonObject> found = store.search(query).toList().toBlocking().single();
+    assertThat(found).hasSize(25).isSortedAccordingTo(ShardedProductStore.order(query));
+    assertThat(found.get(0).getInteger("stock")).isEqualTo(6);
+  }
+
+  @Test
+  public void testNamesAreMergedByCodePoint() {
+    Comparator<JsonObject> order = ShardedProductStore.order(new ProductQuery().setSort(ProductQuery.Sort.NAME));
+    JsonObject replacement = new JsonObject().put("id", 1L).put("name", "\uFFFD");
+    // U+1F34E, after U+FFFD as a code point, but not as UTF-16 chars
+    JsonObject apple = new JsonObject().put("id", 2L).put("name", "\uD83C\uDF4E");
+    JsonObject plain = new JsonObject().put("id", 3L).put("name", "apple");
+
+    List<JsonObject> items = new ArrayList<>(Arrays.asList(apple, replacement, plain));
+    items.sort(order);
+    assertThat(items).containsExactly(plain, replacement, apple);
+  }
+
+  @Test
+  public void testMergeFollowsTheSubscriber() {
+    TestSubscriber<JsonObject> subscriber = new TestSubscriber<>(0);
+    store.readAll().subscribe(subscriber);
+    subscriber.assertNoValues();
+
+    subscriber.requestMore(3);
+    subscriber.assertValueCount(3);
+    subscriber.unsubscribe();
+    subscriber.assertNotCompleted();
+  }
+
+  @Test
+  public void testBulkOperationsAreSplitByShard() {
+    List<JsonObject> operations = Arrays.asList(
+      new JsonObject().put("op", "create").put("item", new JsonObject().put("name", "kiwi").put("stock", 1)),
+      new JsonObject().put("op", "update").put("id", ids.get(0)).put("item",
+        new JsonObject().put("name", "apple").put("stock", 2)),
+      new JsonObject().put("op", "delete").put("id", ids.get(1)),
+      new JsonObject().put("op", "delete").put("id", 42L),
+      new JsonObject().put("op", "remove"));
+
+    List<JsonObject> results = store.bulk(operations).toBlocking().value();
+    assertThat(results).extracting(result -> result.getInteger("status")).containsExactly(201, 200, 204, 404, 422);
+    assertThat(store.read(results.get(0).getLong("id")).toBlocking().value().getString("name")).isEqualTo("kiwi");
+    assertThat(store.read(ids.get(0)).toBlocking().value().getString("name")).isEqualTo("apple");
+  }
+
+  @Test
+  public void testItemsNotMovedToAnAppendedShardAreFound() {
+    List<Store> stores = new ArrayList<>(shards);
+    stores.add(new InMemoryProductStore(null));
+    ShardedProductStore appended = new ShardedProductStore(stores, Arrays.asList(breakers.get(0), breakers.get(1),
+      breakers.get(2), new CircuitBreaker(1, 60_000)), new IdGenerator(1));
+    List<Long> moved = ids.stream().filter(id -> appended.shardOf(id) == 3).collect(Collectors.toList());
+    assertThat(moved).isNotEmpty();
+
+    long id = moved.get(0);
+    assertThat(appended.read(id).toBlocking().value().getLong("id")).isEqualTo(id);
+    appended.update(id, new JsonObject().put("name", "apple").put("stock", 5), 0).await();
+    assertThat(appended.adjustStock(id, 2, true).toBlocking().value().getLong("stock")).isEqualTo(7L);
+    appended.delete(id).await();
+
+    TestSubscriber<JsonObject> read = new TestSubscriber<>();
+    appended.read(id).subscribe(read);
+    read.assertError(NoSuchElementException.class);
+    assertThat(appended.readAll().count().toBlocking().single()).isEqualTo(59);
+  }
+
+  @Test
+  public void testFailingShardOnlyFailsItsItems() {
+    Set<Integer> used = new HashSet<>();
+    long failing = ids.get(0);
+    int broken = store.shardOf(failing);
+    List<Store> stores = new ArrayList<>(shards);
+    stores.set(broken, new BrokenStore());
+    ShardedProductStore partial = new ShardedProductStore(stores, breakers, new IdGenerator(1));
+
+    for (long id : ids) {
+      if (partial.shardOf(id) != broken) {
+        partial.read(id).toBlocking().value();
+        used.add(partial.shardOf(id));
+      }
+    }
+    assertThat(used).hasSize(2);
+
+    TestSubscriber<JsonObject> read = new TestSubscriber<>();
+    partial.read(failing).subscribe(read);
+    read.assertError(RuntimeException.class);
+    // the breaker of the shard is open
+    TestSubscriber<JsonObject> list = new TestSubscriber<>();
+    partial.readAll(0, 10).subscribe(list);
+    list.assertError(StoreUnavailableException.class);
+    assertThat(breakers.get(broken).state()).isEqualTo(CircuitBreaker.State.OPEN);
+  }
+
+  /**
+   * A shard whose database is down.
+   */
+  private static class BrokenStore extends InMemoryProductStore {
+
+    private BrokenStore() {
+      super(null);
+    }
+
+    @Override
+    public Single<JsonObject> read(long id) {
+      return Single.error(new RuntimeException("connection refused"));
+    }
+
+    @Override
+    public Observable<JsonObject> readAll(long after, int limit) {
+      return Observable.error(new RuntimeException("connection refused"));
+    }
+  }
+}
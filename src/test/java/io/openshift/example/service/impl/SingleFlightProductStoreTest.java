@@ -0,0 +1,172 @@
+package io.openshift.example.service.impl;
+
+import io.openshift.example.service.ProductQuery;
+import io.openshift.example.service.Store;
+import io.vertx.core.json.JsonObject;
+import org.junit.Before;
+import org.junit.Test;
+import rx.Completable;
+import rx.Observable;
+import rx.Single;
+import rx.Subscription;
+import rx.observers.TestSubscriber;
+import rx.subjects.PublishSubject;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Check that the concurrent reads of the same data share one read of the other store, and only while it is in flight.
+ */
+public class SingleFlightProductStoreTest {
+
+  private PendingStore backend;
+
+  private SingleFlightProductStore store;
+
+  @Before
+  public void setup() {
+    backend = new PendingStore();
+    store = new SingleFlightProductStore(backend);
+  }
+
+  @Test
+  public void testConcurrentReadsShareOneQuery() {
+    TestSubscriber<JsonObject> first = new TestSubscriber<>();
+    TestSubscriber<JsonObject> second = new TestSubscriber<>();
+    store.read(1).subscribe(first);
+    store.read(1).subscribe(second);
+    store.read(2).subscribe(new TestSubscriber<>());
+    assertThat(backend.reads.get()).isEqualTo(2);
+
+    backend.results.onNext(new JsonObject().put("id", 1L).put("stock", 10));
+    backend.results.onCompleted();
+
+    // each caller gets its own copy
+    first.getOnNextEvents().get(0).put("stock", 0);
+    assertThat(second.getOnNextEvents().get(0).getInteger("stock")).isEqualTo(10);
+
+    // the read is done, the next one queries the store again
+    store.read(1).subscribe(new TestSubscriber<>());
+    assertThat(backend.reads.get()).isEqualTo(3);
+  }
+
+  @Test
+  public void testWritesForgetTheReadsInFlight() {
+    store.read(1).subscribe(new TestSubscriber<>());
+    store.update(1, new JsonObject().put("name", "apple").put("stock", 1), Store.ANY_VERSION).await();
+
+    store.read(1).subscribe(new TestSubscriber<>());
+    assertThat(backend.reads.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void testIdenticalPagesShareOneQuery() {
+    store.readAll(0, 10).subscribe(new TestSubscriber<>());
+    store.readAll(0, 10).subscribe(new TestSubscriber<>());
+    store.readAll(10, 10).subscribe(new TestSubscriber<>());
+    store.search(new ProductQuery().setNamePrefix("a")).subscribe(new TestSubscriber<>());
+    store.search(new ProductQuery().setNamePrefix("a")).subscribe(new TestSubscriber<>());
+
+    assertThat(backend.lists.get()).isEqualTo(3);
+  }
+
+  @Test
+  public void testOnlyTheBufferedFullListsShareOneQuery() {
+    store.readAll().subscribe(new TestSubscriber<>());
+    store.readAll().subscribe(new TestSubscriber<>());
+    assertThat(backend.lists.get()).isEqualTo(1);
+
+    // each streamed list is read at the pace of its caller
+    store.streamAll().subscribe(new TestSubscriber<>());
+    store.streamAll().subscribe(new TestSubscriber<>());
+    assertThat(backend.lists.get()).isEqualTo(3);
+  }
+
+  @Test
+  public void testReadIsCancelledWhenAllCallersAreGone() {
+    Subscription first = store.read(1).subscribe(new TestSubscriber<>());
+    Subscription second = store.read(1).subscribe(new TestSubscriber<>());
+
+    first.unsubscribe();
+    assertThat(backend.results.hasObservers()).isTrue();
+    second.unsubscribe();
+    assertThat(backend.results.hasObservers()).isFalse();
+  }
+
+  /**
+   * A store whose reads are pending until results are pushed, counting the reads it receives.
+   */
+  private static class PendingStore implements Store {
+
+    private final PublishSubject<JsonObject> results = PublishSubject.create();
+
+    private final AtomicInteger reads = new AtomicInteger();
+
+    private final AtomicInteger lists = new AtomicInteger();
+
+    @Override
+    public Single<JsonObject> read(long id) {
+      return Single.defer(() -> {
+        reads.incrementAndGet();
+        return results.first().toSingle();
+      });
+    }
+
+    @Override
+    public Observable<JsonObject> readAll() {
+      return Observable.defer(() -> {
+        lists.incrementAndGet();
+        return results;
+      });
+    }
+
+    @Override
+    public Observable<JsonObject> readAll(long after, int limit) {
+      return Observable.defer(() -> {
+        lists.incrementAndGet();
+        return results;
+      });
+    }
+
+    @Override
+    public Observable<JsonObject> search(ProductQuery query) {
+      return Observable.defer(() -> {
+        lists.incrementAndGet();
+        return results;
+      });
+    }
+
+    @Override
+    public Single<JsonObject> create(JsonObject item) {
+      return Single.error(new UnsupportedOperationException());
+    }
+
+    @Override
+    public Single<JsonObject> create(long id, JsonObject item) {
+      return Single.error(new UnsupportedOperationException());
+    }
+
+    @Override
+    public Completable update(long id, JsonObject item, long version) {
+      return Completable.complete();
+    }
+
+    @Override
+    public Single<JsonObject> adjustStock(long id, long delta, boolean floor) {
+      return Single.error(new UnsupportedOperationException());
+    }
+
+    @Override
+    public Completable delete(long id) {
+      return Completable.complete();
+    }
+
+    @Override
+    public Single<List<JsonObject>> bulk(List<JsonObject> operations) {
+      return Single.error(new UnsupportedOperationException());
+    }
+  }
+}